@@ -1,21 +1,115 @@
 package com.skodin;
 
 import com.skodin.application.Application;
+import com.skodin.application.BatchApplication;
+import com.skodin.application.HttpApplication;
+import com.skodin.services.ApplicationService;
+import com.skodin.services.EmployeeService;
+import com.skodin.util.EmployeeWriter;
+import lombok.SneakyThrows;
 import lombok.extern.log4j.Log4j2;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
 @Log4j2
 public class Main {
+
+    private static final String USAGE = "Usage: java -jar StaffList-1.jar [--batch [script|-] | --http [port]]";
+
     public static void main(String[] args) {
 
         Thread.setDefaultUncaughtExceptionHandler(new CustomExceptionHandler());
 
         log.info("Application is running");
 
+        if (args.length > 0 && args[0].equals("--batch")) {
+            int failed = runBatch(args.length > 1 ? args[1] : "-");
+            log.info("Application is stopped");
+            System.exit(failed == 0 ? 0 : 1);
+        }
+
+        if (args.length > 0 && args[0].equals("--http")) {
+            int port = args.length > 1 ? parsePort(args[1]) : HttpApplication.DEFAULT_PORT;
+            if (port < 0) {
+                System.out.println(USAGE);
+                log.info("Application is stopped");
+                System.exit(1);
+            }
+
+            startHttp(port);
+            return;
+        }
+
         new Application().start();
 
         log.info("Application is stopped");
     }
 
+    /**
+     * @return -1 if the argument is not a port number
+     */
+    private static int parsePort(String port) {
+        try {
+            int number = Integer.parseInt(port);
+            if (number >= 0 && number <= 65535) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Message: " + e);
+        }
+        return -1;
+    }
+
+    /**
+     * @param script path of the script, - for the standard input
+     * @return number of operations that were not applied
+     */
+    @SneakyThrows
+    private static int runBatch(String script) {
+        EmployeeService employeeService = new EmployeeService(ApplicationService.STORAGE_OPTIONS);
+
+        try (BufferedReader reader = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(script))) {
+            return new BatchApplication(employeeService, ApplicationService.DATA_PATH).run(reader, System.out);
+        } finally {
+            employeeService.close();
+        }
+    }
+
+    /**
+     * Serves until the process is stopped
+     */
+    @SneakyThrows
+    private static void startHttp(int port) {
+        if (!Files.exists(ApplicationService.DATA_PATH)) {
+            Files.createFile(ApplicationService.DATA_PATH);
+        }
+        // an empty file is not a list, the first request would be refused
+        if (Files.size(ApplicationService.DATA_PATH) == 0L) {
+            new EmployeeWriter().writeXML(ApplicationService.DATA_PATH, List.of());
+        }
+
+        EmployeeService employeeService = new EmployeeService(ApplicationService.STORAGE_OPTIONS);
+        ExecutorService executor = HttpApplication.newExecutor();
+        HttpApplication application = new HttpApplication(employeeService, ApplicationService.DATA_PATH, port,
+                executor);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            application.stop();
+            executor.shutdown();
+            employeeService.close();
+            log.info("Application is stopped");
+        }));
+        application.start();
+    }
+
     static class CustomExceptionHandler implements Thread.UncaughtExceptionHandler {
         @Override
         public void uncaughtException(Thread t, Throwable e) {
@@ -34,10 +34,11 @@ public class Application {
                 2 - Add new employee
                 3 - Change the type of employee
                 4 - Assign an employee to a manager
-                5 - Sort the list by full name
-                6 - Sort the list by employment dates
+                5 - List of employees by full name
+                6 - List of employees by employment dates
                 7 - Delete an employee by id
-                8 - Close the application
+                8 - Search employees by full name
+                9 - Close the application
                 """;
     }
 
@@ -59,7 +60,9 @@ public class Application {
             case SORT_LIST_BY_FULL_NAMES -> applicationService.processSortListByFullName();
             case SORT_LIST_BY_HIRING_DATES -> applicationService.processSortListByHiringDate();
             case REMOVE_EMPLOYEE_BY_ID -> applicationService.processRemoveEmployeeById();
+            case SEARCH_EMPLOYEES -> applicationService.processSearchEmployees();
             case CLOSE_THE_APPLICATION -> {
+                applicationService.close();
                 write("Exit");
                 return false;
             }
@@ -0,0 +1,117 @@
+package com.skodin.application;
+
+import com.skodin.exceptions.InvalidInputDataExceptions;
+import com.skodin.services.EmployeeService;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedReader;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies a script of operations to the file, one operation a line, loading the file once
+ * and writing it once at the end. Empty lines and lines starting with # are skipped.
+ * <pre>
+ * add &lt;file&gt;                             employees of the file, a directory or a glob
+ * remove &lt;id&gt;
+ * changeType &lt;id&gt; &lt;type&gt; [description]
+ * assign &lt;managerId&gt; &lt;employeeId&gt;
+ * sort full_name|hiring_date
+ * </pre>
+ * A failed operation is reported with its line number and the script goes on.
+ */
+@Log4j2
+public class BatchApplication {
+
+    private final EmployeeService employeeService;
+    private final Path path;
+
+    public BatchApplication(EmployeeService employeeService, Path path) {
+        this.employeeService = employeeService;
+        this.path = path;
+    }
+
+    /**
+     * @return number of operations that were not applied
+     */
+    @SneakyThrows
+    public int run(BufferedReader script, PrintStream output) {
+        List<String> lines = new ArrayList<>();
+        for (String line = script.readLine(); line != null; line = script.readLine()) {
+            lines.add(line);
+        }
+
+        int[] counts = new int[2];
+        employeeService.batch(path, () -> {
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i).trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String failure;
+                try {
+                    failure = apply(line);
+                } catch (InvalidInputDataExceptions e) {
+                    failure = e.getMessage();
+                }
+
+                if (failure == null) {
+                    counts[0]++;
+                } else {
+                    counts[1]++;
+                    output.println("line %d: %s".formatted(i + 1, failure));
+                }
+            }
+        });
+
+        output.println("%d operations applied, %d failed".formatted(counts[0], counts[1]));
+        log.info("Batch of %d lines was applied to %s, %d operations failed".formatted(lines.size(), path, counts[1]));
+        return counts[1];
+    }
+
+    /**
+     * @return why the operation was not applied, null if it was
+     */
+    private String apply(String line) {
+        String[] words = line.split("\\s+", 4);
+        String operation = words[0];
+
+        if (operation.equals("add") && words.length >= 2) {
+            // the path may have spaces in it
+            String source = line.substring(operation.length()).trim();
+            if (EmployeeService.isBatchSource(source)) {
+                return employeeService.importEmployers(source, path).stream()
+                        .filter(result -> result.getMessage() != null)
+                        .map(Object::toString)
+                        .reduce((first, second) -> first + "; " + second)
+                        .orElse(null);
+            }
+            return employeeService.addNewEmployers(Path.of(source), path) ? null : "Employee is already exist";
+        } else if (operation.equals("remove") && words.length == 2) {
+            return employeeService.removeEmployerById(path, words[1]) ? null : "There is no employee with such id";
+        } else if (operation.equals("changeType") && words.length >= 3) {
+            String description = words.length == 4 ? words[3] : "";
+            return employeeService.changeEmployeeType(path, words[1], words[2], description)
+                    ? null
+                    : "There is no such employee";
+        } else if (operation.equals("assign") && words.length == 3) {
+            return employeeService.assignEmployeeToManager(path, words[1], words[2])
+                    ? null
+                    : "The employee is already assigned to the manager";
+        } else if (operation.equals("sort") && words.length == 2) {
+            switch (words[1].toLowerCase()) {
+                case "full_name" -> employeeService.sortByFullName(path);
+                case "hiring_date" -> employeeService.sortByHiringDate(path);
+                default -> {
+                    return "No such order, available: full_name, hiring_date";
+                }
+            }
+            return null;
+        }
+        return "No such operation";
+    }
+}
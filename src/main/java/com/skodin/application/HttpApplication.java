@@ -0,0 +1,228 @@
+package com.skodin.application;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skodin.application.dto.EmployeeDto;
+import com.skodin.entities.Employee;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.exceptions.DamagedFileException;
+import com.skodin.exceptions.FileNotFoundException;
+import com.skodin.exceptions.IncorrectContentException;
+import com.skodin.exceptions.InvalidInputDataExceptions;
+import com.skodin.services.EmployeeService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * JSON over HTTP front end, listening on the loopback address.
+ * Every request is handled on the executor, all of them share one service and so one loaded list.
+ * <pre>
+ * GET    /employees[?order=full_name|hiring_date]  list, the file keeps its order
+ * POST   /employees                                add a JSON array of employees
+ * POST   /employees/sort?order=full_name|hiring_date
+ * PUT    /employees/{id}/type                      {"type": ..., "description": ...}
+ * PUT    /employees/{id}/manager                   {"managerId": ...}
+ * DELETE /employees/{id}
+ * </pre>
+ */
+@Log4j2
+public class HttpApplication {
+
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final String CONTEXT = "/employees";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final EmployeeService employeeService;
+    private final Path path;
+    private final HttpServer server;
+
+    /**
+     * @param executor runs the requests, it is not shut down by the application
+     */
+    @SneakyThrows
+    public HttpApplication(EmployeeService employeeService, Path path, int port, ExecutorService executor) {
+        this.employeeService = employeeService;
+        this.path = path;
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(CONTEXT, this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * @return a virtual thread per request when the runtime has them, a pool of threads otherwise
+     */
+    public static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads are not available, requests run on a pool of threads");
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4);
+        }
+    }
+
+    public void start() {
+        server.start();
+        log.info("HTTP application is listening on " + server.getAddress());
+    }
+
+    /**
+     * @return the port actually bound, useful when started on port zero
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        log.info("HTTP application is stopped");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (FileNotFoundException e) {
+                send(exchange, 404, Map.of("error", e.getMessage()));
+            } catch (DamagedFileException | IncorrectContentException e) {
+                // the data file is not the client's input, it is broken on the server
+                log.error("Request %s %s failed".formatted(exchange.getRequestMethod(), exchange.getRequestURI()), e);
+                send(exchange, 500, Map.of("error", "Data file is damaged"));
+            } catch (InvalidInputDataExceptions e) {
+                send(exchange, 400, Map.of("error", e.getMessage()));
+            } catch (JacksonException e) {
+                log.warn("Message: " + e.getOriginalMessage());
+                send(exchange, 400, Map.of("error", "Body is not valid JSON of the expected shape"));
+            } catch (Exception e) {
+                log.error("Request %s %s failed".formatted(exchange.getRequestMethod(), exchange.getRequestURI()), e);
+                send(exchange, 500, Map.of("error", "Unexpected error"));
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        URI uri = exchange.getRequestURI();
+        String[] segments = uri.getPath().substring(CONTEXT.length()).split("/");
+        // the path starts with a slash, so the first segment is always empty
+        int count = segments.length - 1;
+
+        if (segments.length > 0 && !segments[0].isEmpty()) {
+            send(exchange, 404, Map.of("error", "No such operation"));
+        } else if (count <= 0 && method.equals("GET")) {
+            String order = getParameter(uri, "order");
+            List<Employee> employees = order == null
+                    ? employeeService.getAllEmployees(path)
+                    : employeeService.getAllEmployees(path, toOrder(order));
+            send(exchange, 200, employees.stream().map(EmployeeDto::of).toList());
+        } else if (count <= 0 && method.equals("POST")) {
+            List<EmployeeDto> body = read(exchange.getRequestBody(), new TypeReference<>() {
+            });
+            List<Employee> employees = body.stream().map(EmployeeDto::toEmployee).toList();
+            boolean isAdded = employeeService.addEmployers(employees, path);
+            send(exchange, isAdded ? 201 : 409, isAdded ? null : Map.of("error", "Employee is already exist"));
+        } else if (count == 1 && segments[1].equals("sort") && method.equals("POST")) {
+            EmployeeOrder order = toOrder(getParameter(uri, "order"));
+            if (order == EmployeeOrder.FULL_NAME) {
+                employeeService.sortByFullName(path);
+            } else {
+                employeeService.sortByHiringDate(path);
+            }
+            send(exchange, 204, null);
+        } else if (count == 1 && method.equals("DELETE")) {
+            boolean isRemoved = employeeService.removeEmployerById(path, segments[1]);
+            send(exchange, isRemoved ? 204 : 404,
+                    isRemoved ? null : Map.of("error", "There is no employee with such id"));
+        } else if (count == 2 && segments[2].equals("type") && method.equals("PUT")) {
+            Map<String, String> body = read(exchange.getRequestBody(), new TypeReference<>() {
+            });
+            boolean isChanged = employeeService.changeEmployeeType(path, segments[1],
+                    String.valueOf(body.get("type")), body.getOrDefault("description", ""));
+            send(exchange, isChanged ? 204 : 404, isChanged ? null : Map.of("error", "There is no such employee"));
+        } else if (count == 2 && segments[2].equals("manager") && method.equals("PUT")) {
+            Map<String, String> body = read(exchange.getRequestBody(), new TypeReference<>() {
+            });
+            boolean isAssigned = employeeService.assignEmployeeToManager(path,
+                    String.valueOf(body.get("managerId")), segments[1]);
+            send(exchange, isAssigned ? 204 : 409,
+                    isAssigned ? null : Map.of("error", "The employee is already assigned to the manager"));
+        } else {
+            send(exchange, 404, Map.of("error", "No such operation"));
+        }
+    }
+
+    private static EmployeeOrder toOrder(String order) {
+        try {
+            return EmployeeOrder.valueOf(String.valueOf(order).trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            String message = "No such order, available: full_name, hiring_date";
+            log.warn("Message: " + message);
+            throw new InvalidInputDataExceptions(message);
+        }
+    }
+
+    private static String getParameter(URI uri, String name) {
+        String query = uri.getQuery();
+        if (query == null) {
+            return null;
+        }
+
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0 && parameter.substring(0, separator).equals(name)) {
+                return parameter.substring(separator + 1);
+            }
+        }
+        return null;
+    }
+
+    private static <T> T read(InputStream body, TypeReference<T> type) throws IOException {
+        // read to its end without closing, the response still has to drain it
+        T value = MAPPER.readValue(body.readAllBytes(), type);
+        if (value == null) {
+            String message = "Body is empty";
+            log.warn("Message: " + message);
+            throw new InvalidInputDataExceptions(message);
+        }
+        return value;
+    }
+
+    /**
+     * The request is read to its end first, the server closes a connection whose request was not,
+     * and a client reusing it meanwhile gets it reset
+     *
+     * @param body null for no body
+     */
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.skodin.application.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
+import com.skodin.entities.enums.EmployeeType;
+import com.skodin.exceptions.InvalidIdException;
+import com.skodin.exceptions.InvalidInputDataExceptions;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Employee as it is sent over HTTP, dates are ISO strings and the type is named explicitly.
+ * Subordinates are sent one level deep, their own subordinates are listed under their top-level records
+ */
+@Log4j2
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class EmployeeDto {
+    EmployeeType type;
+    String id;
+    String fullName;
+    String birthdayDate;
+    String hiringDate;
+    String description;
+    List<EmployeeDto> subordinates;
+
+    public static EmployeeDto of(Employee employee) {
+        EmployeeDto dto = shallow(employee);
+
+        if (employee instanceof Manager manager) {
+            dto.subordinates = manager.getSubordinates().stream().map(EmployeeDto::shallow).toList();
+        }
+        return dto;
+    }
+
+    // a manager among the subordinates is sent without its own, the size of a record stays bounded
+    private static EmployeeDto shallow(Employee employee) {
+        EmployeeDto dto = new EmployeeDto();
+        dto.type = EmployeeType.of(employee);
+        dto.id = employee.getId().toString();
+        dto.fullName = employee.getFullName();
+        dto.birthdayDate = String.valueOf(employee.getBirthdayDate());
+        dto.hiringDate = String.valueOf(employee.getHiringDate());
+
+        if (employee instanceof OtherEmployee otherEmployee) {
+            dto.description = otherEmployee.getDescription();
+        }
+        return dto;
+    }
+
+    /**
+     * @throws InvalidInputDataExceptions if a field is missing or a date is not valid
+     * @throws InvalidIdException         if id is not valid
+     */
+    public Employee toEmployee() {
+        Employee employee = new Employee(toUUID(), require(fullName, "fullName"),
+                toDate(birthdayDate, "birthdayDate"), toDate(hiringDate, "hiringDate"));
+
+        return switch (require(type, "type")) {
+            case EMPLOYEE -> employee;
+            case OTHER_EMPLOYEE -> new OtherEmployee(employee, description == null ? "" : description);
+            case MANAGER -> {
+                List<Employee> list = new ArrayList<>();
+                if (subordinates != null) {
+                    subordinates.forEach(subordinate -> list.add(subordinate.toEmployee()));
+                }
+                yield new Manager(employee, list);
+            }
+        };
+    }
+
+    private UUID toUUID() {
+        try {
+            return UUID.fromString(require(id, "id"));
+        } catch (IllegalArgumentException e) {
+            log.warn("Message: " + e);
+            throw new InvalidIdException("Id is not valid");
+        }
+    }
+
+    private static LocalDate toDate(String date, String field) {
+        try {
+            return LocalDate.parse(require(date, field));
+        } catch (DateTimeParseException e) {
+            String message = "Field %s is not a date".formatted(field);
+            log.warn("Message: " + message);
+            throw new InvalidInputDataExceptions(message);
+        }
+    }
+
+    private static <T> T require(T value, String field) {
+        if (value == null) {
+            String message = "Field %s is missing".formatted(field);
+            log.warn("Message: " + message);
+            throw new InvalidInputDataExceptions(message);
+        }
+        return value;
+    }
+}
@@ -14,7 +14,8 @@ public enum UserOperations {
     SORT_LIST_BY_FULL_NAMES("5"),
     SORT_LIST_BY_HIRING_DATES("6"),
     REMOVE_EMPLOYEE_BY_ID("7"),
-    CLOSE_THE_APPLICATION("8");
+    SEARCH_EMPLOYEES("8"),
+    CLOSE_THE_APPLICATION("9");
 
     private final String number;
 
@@ -2,13 +2,13 @@ package com.skodin.entities;
 
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.PackagePrivate;
 
 import java.time.LocalDate;
 import java.util.UUID;
 
 @Getter
 @Setter
-@AllArgsConstructor
 @EqualsAndHashCode
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class Employee {
@@ -17,6 +17,20 @@ public class Employee {
     LocalDate birthdayDate;
     LocalDate hiringDate;
 
+    // cached by NameOrder, it is not a part of the record
+    @PackagePrivate
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    transient NameOrder.Key nameKey;
+
+    public Employee(UUID id, String fullName, LocalDate birthdayDate, LocalDate hiringDate) {
+        this.id = id;
+        this.fullName = fullName;
+        this.birthdayDate = birthdayDate;
+        this.hiringDate = hiringDate;
+    }
+
     @Override
     public String toString() {
         return String.format("""
@@ -25,6 +39,6 @@ public class Employee {
                 full name : %s
                 birthday date : %s
                 hiring date : %s""",
-                this.getClass().getSimpleName(), id.toString(), fullName, birthdayDate, hiringDate);
+                this.getClass().getSimpleName(), getId().toString(), getFullName(), getBirthdayDate(), getHiringDate());
     }
 }
@@ -0,0 +1,75 @@
+package com.skodin.entities;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Orders employees by full name as the collation rules of a locale do, so that accented and Cyrillic
+ * names land where readers of that language look for them.
+ * <p>
+ * Collating two names directly is slow, so the collation key of a name is computed once, kept in the record
+ * as bytes and compared as unsigned bytes afterwards. A key computed for another locale
+ * or for a name that was changed since is computed again. Names are compared by value,
+ * as records read from columns decode a new string on every call.
+ */
+public final class NameOrder implements Comparator<Employee> {
+
+    private static final Map<Locale, NameOrder> ORDERS = new ConcurrentHashMap<>();
+
+    private final Locale locale;
+    private final Collator collator;
+
+    private NameOrder(Locale locale) {
+        this.locale = locale;
+        this.collator = Collator.getInstance(locale);
+    }
+
+    public static NameOrder of(Locale locale) {
+        return ORDERS.computeIfAbsent(locale, NameOrder::new);
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    @Override
+    public int compare(Employee first, Employee second) {
+        return Arrays.compareUnsigned(getKey(first), getKey(second));
+    }
+
+    /**
+     * @return bytes that sort as the full name collates
+     */
+    public byte[] getKey(Employee employee) {
+        String fullName = employee.getFullName();
+        Key key = employee.nameKey;
+
+        if (key == null || key.order != this || !key.fullName.equals(fullName)) {
+            byte[] bytes;
+            // a collator is not safe for concurrent use
+            synchronized (collator) {
+                bytes = collator.getCollationKey(fullName).toByteArray();
+            }
+            key = new Key(this, fullName, bytes);
+            employee.nameKey = key;
+        }
+
+        return key.bytes;
+    }
+
+    static final class Key {
+        final NameOrder order;
+        final String fullName;
+        final byte[] bytes;
+
+        Key(NameOrder order, String fullName, byte[] bytes) {
+            this.order = order;
+            this.fullName = fullName;
+            this.bytes = bytes;
+        }
+    }
+}
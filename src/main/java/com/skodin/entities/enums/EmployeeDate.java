@@ -0,0 +1,22 @@
+package com.skodin.entities.enums;
+
+import com.skodin.entities.Employee;
+
+import java.time.LocalDate;
+import java.util.function.Function;
+
+public enum EmployeeDate {
+
+    HIRING_DATE(Employee::getHiringDate),
+    BIRTHDAY_DATE(Employee::getBirthdayDate);
+
+    private final Function<Employee, LocalDate> getter;
+
+    EmployeeDate(Function<Employee, LocalDate> getter) {
+        this.getter = getter;
+    }
+
+    public LocalDate of(Employee employee) {
+        return getter.apply(employee);
+    }
+}
@@ -0,0 +1,34 @@
+package com.skodin.entities.enums;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.NameOrder;
+
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.function.Function;
+
+public enum EmployeeOrder {
+
+    FULL_NAME(NameOrder::of),
+    HIRING_DATE(locale -> Comparator.comparing(Employee::getHiringDate));
+
+    private final Function<Locale, Comparator<Employee>> comparators;
+
+    EmployeeOrder(Function<Locale, Comparator<Employee>> comparators) {
+        this.comparators = comparators;
+    }
+
+    /**
+     * @return order with the collation rules of the root locale
+     */
+    public Comparator<Employee> getComparator() {
+        return getComparator(Locale.ROOT);
+    }
+
+    /**
+     * @param locale collation rules for names
+     */
+    public Comparator<Employee> getComparator(Locale locale) {
+        return comparators.apply(locale);
+    }
+}
@@ -1,11 +1,24 @@
 package com.skodin.entities.enums;
 
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
+
 public enum EmployeeType {
 
     MANAGER,
     EMPLOYEE,
     OTHER_EMPLOYEE;
 
+    public static EmployeeType of(Employee employee) {
+        if (employee instanceof Manager) {
+            return MANAGER;
+        } else if (employee instanceof OtherEmployee) {
+            return OTHER_EMPLOYEE;
+        }
+        return EMPLOYEE;
+    }
+
     public static String getPretty(){
 
         StringBuilder stringBuilder = new StringBuilder();
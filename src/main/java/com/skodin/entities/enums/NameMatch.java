@@ -0,0 +1,18 @@
+package com.skodin.entities.enums;
+
+public enum NameMatch {
+
+    PREFIX,
+    SUBSTRING;
+
+    public static String getPretty() {
+
+        StringBuilder stringBuilder = new StringBuilder();
+
+        for (NameMatch match : values()) {
+            stringBuilder.append("\t").append(match).append("\n");
+        }
+
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,7 @@
+package com.skodin.exceptions;
+
+public class StaleTransactionException extends InvalidInputDataExceptions {
+    public StaleTransactionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,422 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.enums.EmployeeDate;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.entities.enums.EmployeeType;
+import com.skodin.entities.enums.NameMatch;
+import com.skodin.exceptions.DamagedFileException;
+import com.skodin.exceptions.FileIsEmptyException;
+import com.skodin.exceptions.FileNotFoundException;
+import com.skodin.exceptions.IncorrectContentException;
+import com.skodin.exceptions.PathIsNullException;
+import com.skodin.util.BinarySnapshot;
+import com.skodin.util.EmployeeReader;
+import com.skodin.util.EmployeeWriter;
+import com.skodin.util.FileFingerprint;
+import com.skodin.util.SubordinateReferences;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Resident copy of an employees file that keeps records in {@link EmployeeColumns} instead of objects,
+ * for lists too large to hold as objects with their indexes.
+ * Returned employees are read-only views of the columns, the same row always gives the same view.
+ * <p>
+ * Lookups by id go through the table of the columns, lookups by name, type and date scan the columns
+ * without reading other fields. There is no journal and no order indexes, a commit rewrites the file.
+ * Removed rows are kept until the store is sorted or more than a half of the rows are removed.
+ */
+public class ColumnarStaffStore implements StaffStore {
+
+    @Getter
+    private final Path path;
+    private final EmployeeWriter employeeWriter;
+    private final StorageOptions options;
+
+    private EmployeeColumns columns;
+    private int liveCount;
+    private boolean isChanged;
+
+    private volatile FileFingerprint fingerprint;
+    // set when a commit fails, the columns may then hold changes the file does not have
+    private volatile boolean isFailed;
+    // the file was written after the snapshot next to it
+    private boolean isSnapshotStale;
+
+    private ColumnarStaffStore(Path path, EmployeeColumns columns, FileFingerprint fingerprint,
+                               EmployeeWriter employeeWriter, StorageOptions options) {
+        this.path = path;
+        this.columns = columns;
+        this.fingerprint = fingerprint;
+        this.employeeWriter = employeeWriter;
+        this.options = options;
+        this.liveCount = columns.size();
+    }
+
+    /**
+     * Loads the file, or the snapshot made from it, straight into the columns, one record at a time.
+     * No object graph of the list is built, only the records of managers keep their subordinates lists
+     *
+     * @throws PathIsNullException       if path is null
+     * @throws FileNotFoundException     if file not found
+     * @throws FileIsEmptyException      if file is empty
+     * @throws DamagedFileException      if file is not .xml or damaged
+     * @throws IncorrectContentException if file has incorrect tag
+     */
+    public static ColumnarStaffStore open(Path path, EmployeeReader employeeReader, EmployeeWriter employeeWriter,
+                                          StorageOptions options) {
+        Path snapshot = BinarySnapshot.of(path);
+
+        if (options.isBinarySnapshotEnabled()) {
+            EmployeeColumns columns = new EmployeeColumns(0);
+            Optional<FileFingerprint> fingerprint = employeeReader.openSnapshotUnresolved(path, snapshot,
+                    columns::append);
+
+            if (fingerprint.isPresent()) {
+                return load(path, columns, fingerprint.get(), employeeWriter, options);
+            }
+        }
+
+        EmployeeColumns columns = new EmployeeColumns(0);
+        FileFingerprint fingerprint = employeeReader.openUnresolved(path, columns::append);
+        ColumnarStaffStore store = load(path, columns, fingerprint, employeeWriter, options);
+
+        if (options.isBinarySnapshotEnabled()) {
+            employeeWriter.writeSnapshot(snapshot, store.findAll(), fingerprint);
+        }
+        return store;
+    }
+
+    private static ColumnarStaffStore load(Path path, EmployeeColumns columns, FileFingerprint fingerprint,
+                                           EmployeeWriter employeeWriter, StorageOptions options) {
+        columns.linkSubordinates();
+        columns.trimToSize();
+        return new ColumnarStaffStore(path, columns, fingerprint, employeeWriter, options);
+    }
+
+    /**
+     * @return false if the file was changed by someone else after it was loaded or a commit failed,
+     * the file has to be loaded again then. Waits for a commit in progress
+     */
+    @Override
+    public synchronized boolean isCurrent() {
+        return !isFailed && fingerprint.isCurrent(path);
+    }
+
+    @Override
+    public synchronized List<Employee> findAll() {
+        List<Employee> list = new ArrayList<>(liveCount);
+        for (int row = 0; row < columns.size(); row++) {
+            if (columns.isLive(row)) {
+                list.add(columns.get(row));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Sorted on every call, the store keeps no order indexes
+     */
+    @Override
+    public List<Employee> findAll(EmployeeOrder order) {
+        List<Employee> list = findAll();
+        list.sort(order.getComparator(options.getNameLocale()));
+        return list;
+    }
+
+    @Override
+    public synchronized Optional<Employee> findById(UUID id) {
+        int row = columns.getFirst(id);
+        return row == EmployeeColumns.NONE ? Optional.empty() : Optional.of(columns.get(row));
+    }
+
+    @Override
+    public synchronized List<Employee> findByFullName(String fullName) {
+        List<Employee> list = new ArrayList<>();
+        for (int row : findRowsByFullName(fullName)) {
+            list.add(columns.get(row));
+        }
+        return list;
+    }
+
+    @Override
+    public synchronized List<Employee> findByType(EmployeeType type) {
+        List<Employee> list = new ArrayList<>();
+        for (int row = 0; row < columns.size(); row++) {
+            if (columns.isLive(row) && columns.getType(row) == type) {
+                list.add(columns.get(row));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Scans the names, the store keeps no search index
+     */
+    @Override
+    public synchronized List<Employee> searchByFullName(String text, NameMatch match, boolean isCaseSensitive,
+                                                        int limit) {
+        String query = isCaseSensitive ? text : text.toLowerCase(Locale.ROOT);
+        List<Employee> list = new ArrayList<>();
+
+        for (int row = 0; row < columns.size() && list.size() < limit; row++) {
+            String fullName = columns.isLive(row) ? columns.getFullName(row) : null;
+
+            if (fullName != null) {
+                String name = isCaseSensitive ? fullName : fullName.toLowerCase(Locale.ROOT);
+                if (match == NameMatch.PREFIX ? name.startsWith(query) : name.contains(query)) {
+                    list.add(columns.get(row));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Scans the day column of the date, only matching rows are read
+     */
+    @Override
+    public synchronized List<Employee> findByDateRange(EmployeeDate field, LocalDate from, LocalDate to) {
+        long first = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        long last = to == null ? Long.MAX_VALUE : to.toEpochDay();
+
+        // the row breaks ties, so equal dates stay in file order
+        long[] found = new long[16];
+        int count = 0;
+        for (int row = 0; row < columns.size(); row++) {
+            int day = columns.getDay(field, row);
+            if (columns.isLive(row) && EmployeeColumns.isDate(day) && day >= first && day <= last) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = (long) day << 32 | row;
+            }
+        }
+        Arrays.sort(found, 0, count);
+
+        List<Employee> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(columns.get((int) found[i]));
+        }
+        return list;
+    }
+
+    /**
+     * @return true if a record equal to the employee is already stored
+     */
+    @Override
+    public synchronized boolean contains(Employee employee) {
+        return findRow(employee) != EmployeeColumns.NONE;
+    }
+
+    @Override
+    public synchronized int size() {
+        return liveCount;
+    }
+
+    /**
+     * @return true if the employee is the manager or the manager reports to the employee
+     */
+    @Override
+    public boolean manages(Employee employee, Manager manager) {
+        return SubordinateReferences.manages(employee, manager);
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Employee> newEmployees) {
+        columns.appendAll(newEmployees);
+        liveCount += newEmployees.size();
+        isChanged = true;
+    }
+
+    @Override
+    public synchronized boolean removeById(UUID id) {
+        int row = columns.getFirst(id);
+
+        if (row == EmployeeColumns.NONE) {
+            return false;
+        }
+
+        while (row != EmployeeColumns.NONE) {
+            int next = columns.getNext(row);
+            remove(row);
+            row = next;
+        }
+        compactIfSparse();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeByFullName(String fullName) {
+        List<Integer> found = findRowsByFullName(fullName);
+
+        if (found.isEmpty()) {
+            return false;
+        }
+
+        found.forEach(this::remove);
+        compactIfSparse();
+        return true;
+    }
+
+    /**
+     * Replaces the employee with a copy of the given type.
+     * The replacement is appended to the end of the list, as it always was
+     */
+    @Override
+    public synchronized void changeType(Employee employee, EmployeeType type, String description) {
+        int row = findRow(employee);
+
+        if (row == EmployeeColumns.NONE) {
+            return;
+        }
+
+        Employee stored = columns.get(row);
+        Employee replacement = columns.get(columns.appendAll(List.of(StaffStore.copyAs(stored, type, description))));
+        remove(row);
+        liveCount++;
+
+        // managers keep following the same person rather than the stale record
+        for (Employee candidate : findByType(EmployeeType.MANAGER)) {
+            Manager current = (Manager) candidate;
+            if (current.getSubordinates().stream().anyMatch(e -> e == stored)) {
+                List<Employee> subordinates = new ArrayList<>(current.getSubordinates());
+                subordinates.replaceAll(e -> e == stored ? replacement : e);
+                current.setSubordinates(subordinates);
+            }
+        }
+    }
+
+    /**
+     * The employee leaves the previous manager.
+     * The subordinates lists are copied, so lists handed out earlier stay unchanged
+     */
+    @Override
+    public synchronized void assign(Manager manager, Employee employee) {
+        for (Employee candidate : findByType(EmployeeType.MANAGER)) {
+            Manager previous = (Manager) candidate;
+            if (previous.getSubordinates().stream().anyMatch(e -> e == employee)) {
+                List<Employee> subordinates = new ArrayList<>(previous.getSubordinates());
+                subordinates.removeIf(e -> e == employee);
+                previous.setSubordinates(subordinates);
+            }
+        }
+
+        List<Employee> subordinates = new ArrayList<>(manager.getSubordinates());
+        subordinates.add(employee);
+        manager.setSubordinates(subordinates);
+        isChanged = true;
+    }
+
+    /**
+     * The columns are rebuilt in the new order, views handed out earlier follow their rows
+     */
+    @Override
+    public synchronized void sort(EmployeeOrder order) {
+        List<Employee> sorted = findAll(order);
+        int[] rows = new int[sorted.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = columns.getRow(sorted.get(i));
+        }
+
+        rebuild(rows);
+        isChanged = true;
+    }
+
+    /**
+     * Rewrites the file if anything was changed since the last commit
+     */
+    @Override
+    public synchronized void commit() {
+        if (!isChanged) {
+            return;
+        }
+
+        // the columns still hold the changes of the failed commit, its callers were told they are lost
+        if (isFailed) {
+            throw new IllegalStateException("An earlier commit to %s failed".formatted(path));
+        }
+
+        try {
+            fingerprint = employeeWriter.writeXML(path, findAll());
+        } catch (Exception e) {
+            isFailed = true;
+            throw e;
+        }
+        isChanged = false;
+        isSnapshotStale = true;
+    }
+
+    /**
+     * Nothing is held open, changes that were not committed are dropped.
+     * The snapshot is a cache for the next load, it is brought up to date with the file here rather than by commits
+     */
+    @Override
+    public synchronized void close() {
+        if (options.isBinarySnapshotEnabled() && isSnapshotStale && !isChanged && !isFailed
+            && fingerprint.isCurrent(path)) {
+            employeeWriter.writeSnapshot(BinarySnapshot.of(path), findAll(), fingerprint);
+            isSnapshotStale = false;
+        }
+    }
+
+    private void remove(int row) {
+        columns.remove(row);
+        liveCount--;
+        isChanged = true;
+    }
+
+    private void compactIfSparse() {
+        if (columns.size() - liveCount > liveCount) {
+            int[] rows = new int[liveCount];
+            int count = 0;
+            for (int row = 0; row < columns.size(); row++) {
+                if (columns.isLive(row)) {
+                    rows[count++] = row;
+                }
+            }
+            rebuild(rows);
+        }
+    }
+
+    private void rebuild(int[] rows) {
+        EmployeeColumns rebuilt = new EmployeeColumns(rows.length);
+        for (int row : rows) {
+            rebuilt.copy(columns, row);
+        }
+        rebuilt.trimToSize();
+        columns = rebuilt;
+    }
+
+    private int findRow(Employee employee) {
+        int row = columns.getRow(employee);
+
+        if (row != EmployeeColumns.NONE) {
+            return columns.isLive(row) ? row : EmployeeColumns.NONE;
+        }
+
+        row = columns.getFirst(employee.getId());
+        while (row != EmployeeColumns.NONE && !columns.get(row).equals(employee)) {
+            row = columns.getNext(row);
+        }
+        return row;
+    }
+
+    private List<Integer> findRowsByFullName(String fullName) {
+        byte[] bytes = fullName == null ? null : fullName.getBytes(StandardCharsets.UTF_8);
+        List<Integer> found = new ArrayList<>();
+
+        for (int row = 0; row < columns.size(); row++) {
+            if (columns.isLive(row) && columns.hasFullName(row, fullName, bytes)) {
+                found.add(row);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,131 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.enums.EmployeeDate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records sorted by one of their dates, as a primitive array of epoch days with a parallel array of records.
+ * A range is two binary searches and a copy of the records in between.
+ * Records with the same date keep file order, records without the date are not indexed.
+ */
+class DateRangeIndex {
+
+    private final EmployeeDate field;
+
+    private int[] days;
+    private Employee[] rows;
+    private int size;
+
+    DateRangeIndex(EmployeeDate field, List<Employee> employees) {
+        this.field = field;
+
+        // the position breaks ties, so the primitive sort keeps file order
+        long[] keys = new long[employees.size()];
+        for (int i = 0; i < employees.size(); i++) {
+            LocalDate date = field.of(employees.get(i));
+            if (date != null) {
+                keys[size++] = date.toEpochDay() << 32 | i;
+            }
+        }
+        Arrays.sort(keys, 0, size);
+
+        days = new int[Math.max(size, 16)];
+        rows = new Employee[days.length];
+        for (int i = 0; i < size; i++) {
+            days[i] = (int) (keys[i] >> 32);
+            rows[i] = employees.get((int) keys[i]);
+        }
+    }
+
+    /**
+     * The employee goes after the records of the same date, as it is appended to the end of the file
+     */
+    void add(Employee employee) {
+        LocalDate date = field.of(employee);
+
+        if (date == null) {
+            return;
+        }
+
+        int day = (int) date.toEpochDay();
+        int position = upperBound(day);
+
+        if (size == days.length) {
+            days = Arrays.copyOf(days, size * 2);
+            rows = Arrays.copyOf(rows, size * 2);
+        }
+
+        System.arraycopy(days, position, days, position + 1, size - position);
+        System.arraycopy(rows, position, rows, position + 1, size - position);
+        days[position] = day;
+        rows[position] = employee;
+        size++;
+    }
+
+    void remove(Employee employee) {
+        LocalDate date = field.of(employee);
+
+        if (date == null) {
+            return;
+        }
+
+        int day = (int) date.toEpochDay();
+        for (int i = lowerBound(day); i < size && days[i] == day; i++) {
+            if (rows[i] == employee) {
+                System.arraycopy(days, i + 1, days, i, size - i - 1);
+                System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+                rows[--size] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param from first date, null for no lower bound
+     * @param to   last date, null for no upper bound
+     * @return records dated from and to the bounds inclusive, by date
+     */
+    List<Employee> find(LocalDate from, LocalDate to) {
+        int start = from == null ? 0 : lowerBound(from.toEpochDay());
+        int end = to == null ? size : upperBound(to.toEpochDay());
+
+        return start < end ? new ArrayList<>(Arrays.asList(rows).subList(start, end)) : new ArrayList<>();
+    }
+
+    // first position with a day not less than the given one
+    private int lowerBound(long day) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (days[middle] < day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // first position with a day greater than the given one
+    private int upperBound(long day) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (days[middle] <= day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,779 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
+import com.skodin.entities.enums.EmployeeDate;
+import com.skodin.entities.enums.EmployeeType;
+import com.skodin.util.SubordinateReferences;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Records of a staff list kept column by column in primitive arrays, in file order:
+ * <pre>
+ * id            : two long columns
+ * dates         : two int columns of epoch days
+ * type          : byte column, flags for a missing name or description and for a removed row
+ * full name     : hash int column, UTF-8 bytes packed one after another, end offset int column
+ * description   : UTF-8 bytes packed one after another, end offset int column
+ * </pre>
+ * Rows are handed out as views that read the columns on every call, at most one view per row.
+ * Views of plain employees are created on first use and only weakly held, a scan of all rows leaves
+ * no object per row behind. Views of managers are created with the row and kept, as subordinates lists live in them.
+ * <p>
+ * Ids are resolved through an open addressing table of first rows, duplicates of an id are chained
+ * through their rows in file order.
+ */
+class EmployeeColumns {
+
+    static final int NONE = -1;
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private static final byte TYPE_MASK = 0x03;
+    private static final byte NO_NAME = 0x10;
+    private static final byte NO_DESCRIPTION = 0x20;
+    private static final byte REMOVED = 0x40;
+
+    // entries of the id table hold a row + 1
+    private static final int EMPTY = 0;
+    private static final int UNUSED = -1;
+
+    private long[] idHighs;
+    private long[] idLows;
+    private int[] birthdayDays;
+    private int[] hiringDays;
+    private byte[] types;
+    private int[] nameHashes;
+    private int[] nameEnds;
+    private int[] descriptionEnds;
+    private int[] next;
+    private Manager[] managers;
+    private ViewReference[] views;
+    private final ReferenceQueue<Employee> collected = new ReferenceQueue<>();
+    private int size;
+
+    private byte[] names = new byte[MIN_CAPACITY * 16];
+    private int namesSize;
+    private byte[] descriptions = new byte[MIN_CAPACITY];
+    private int descriptionsSize;
+
+    private int[] heads;
+    private int usedEntries;
+
+    EmployeeColumns(int expectedCount) {
+        int capacity = Math.max(MIN_CAPACITY, expectedCount);
+
+        idHighs = new long[capacity];
+        idLows = new long[capacity];
+        birthdayDays = new int[capacity];
+        hiringDays = new int[capacity];
+        types = new byte[capacity];
+        nameHashes = new int[capacity];
+        nameEnds = new int[capacity];
+        descriptionEnds = new int[capacity];
+        next = new int[capacity];
+        managers = new Manager[capacity];
+        views = new ViewReference[capacity];
+
+        int tableCapacity = MIN_CAPACITY;
+        while (tableCapacity < capacity * 2) {
+            tableCapacity <<= 1;
+        }
+        heads = new int[tableCapacity];
+    }
+
+    /**
+     * @return rows ever appended, removed ones included
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copies the employees into new rows. Subordinates of the new managers that are among the employees
+     * are replaced by the views of their rows, other subordinates are kept as they are
+     *
+     * @return first of the new rows
+     */
+    int appendAll(Collection<Employee> employees) {
+        int first = size;
+        boolean hasManagers = false;
+
+        for (Employee employee : employees) {
+            appendRow(employee);
+            hasManagers |= employee instanceof Manager;
+        }
+
+        if (hasManagers) {
+            Map<Employee, Integer> rows = new IdentityHashMap<>(employees.size() * 2);
+            int row = first;
+            for (Employee employee : employees) {
+                rows.put(employee, row++);
+            }
+
+            for (row = first; row < size; row++) {
+                Manager manager = managers[row];
+                if (manager != null) {
+                    manager.getSubordinates().replaceAll(e -> rows.containsKey(e) ? get(rows.get(e)) : e);
+                }
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * Copies a record read from a file into a new row. A plain subordinate equal to a row already appended
+     * is replaced by the view of the row right away, so embedded copies do not stay on the heap.
+     * References and copies of later records are linked by {@link #linkSubordinates()}
+     *
+     * @return the new row
+     */
+    int append(Employee employee) {
+        int row = appendRow(employee);
+
+        Manager manager = managers[row];
+        if (manager != null) {
+            manager.getSubordinates().replaceAll(e -> e instanceof Manager ? e : normalize(e));
+        }
+        return row;
+    }
+
+    /**
+     * Replaces the placeholders left by references with the views of the rows they refer to, and copies
+     * equal to a row with the view of that row, once all records of a file are appended.
+     * Copies of managers differing from every row are kept, placeholders under them are linked too
+     */
+    void linkSubordinates() {
+        List<Manager> copies = new ArrayList<>();
+        Deque<Manager> pending = new ArrayDeque<>();
+
+        for (int row = 0; row < size; row++) {
+            Manager manager = managers[row];
+            if (manager != null) {
+                pending.push(manager);
+            }
+        }
+
+        // copies are collected before their subordinates, in reverse they are linked after them
+        while (!pending.isEmpty()) {
+            for (Employee subordinate : pending.pop().getSubordinates()) {
+                if (subordinate instanceof Manager copy && !(subordinate instanceof View)) {
+                    copies.add(copy);
+                    pending.push(copy);
+                }
+            }
+        }
+
+        for (int i = copies.size() - 1; i >= 0; i--) {
+            copies.get(i).getSubordinates().replaceAll(this::normalize);
+        }
+        for (int row = 0; row < size; row++) {
+            Manager manager = managers[row];
+            if (manager != null) {
+                manager.getSubordinates().replaceAll(this::normalize);
+            }
+        }
+    }
+
+    /**
+     * Drops the spare capacity of the columns, for columns that are mostly read
+     */
+    void trimToSize() {
+        resize(size);
+        names = Arrays.copyOf(names, namesSize);
+        descriptions = Arrays.copyOf(descriptions, descriptionsSize);
+    }
+
+    /**
+     * Copies the row of other columns into a new row, the view of the row moves along with it
+     */
+    int copy(EmployeeColumns source, int row) {
+        int newRow = add(source.idHighs[row], source.idLows[row], source.birthdayDays[row], source.hiringDays[row],
+                source.types[row], source.nameHashes[row],
+                source.names, source.nameStart(row), source.nameEnds[row],
+                source.descriptions, source.descriptionStart(row), source.descriptionEnds[row]);
+
+        Employee view = source.getView(row);
+        if (view != null) {
+            ((View) view).moveTo(this, newRow);
+            setView(newRow, view);
+        }
+        return newRow;
+    }
+
+    /**
+     * @return the only view of the row
+     */
+    Employee get(int row) {
+        Employee view = getView(row);
+
+        if (view == null) {
+            expungeCollected();
+            view = switch (getType(row)) {
+                case EMPLOYEE -> new EmployeeView(this, row);
+                case OTHER_EMPLOYEE -> new OtherEmployeeView(this, row);
+                case MANAGER -> new ManagerView(this, row, new ArrayList<>());
+            };
+            setView(row, view);
+        }
+
+        return view;
+    }
+
+    /**
+     * @return row the view reads, or NONE if it is not a view of these columns
+     */
+    int getRow(Employee employee) {
+        return employee instanceof View view && view.getColumns() == this ? view.getRow() : NONE;
+    }
+
+    boolean isLive(int row) {
+        return (types[row] & REMOVED) == 0;
+    }
+
+    EmployeeType getType(int row) {
+        return EmployeeType.values()[types[row] & TYPE_MASK];
+    }
+
+    int getDay(EmployeeDate field, int row) {
+        return field == EmployeeDate.HIRING_DATE ? hiringDays[row] : birthdayDays[row];
+    }
+
+    static boolean isDate(int day) {
+        return day != NO_DATE;
+    }
+
+    String getFullName(int row) {
+        return (types[row] & NO_NAME) != 0
+                ? null
+                : new String(names, nameStart(row), nameEnds[row] - nameStart(row), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true if the row has the full name, compared as UTF-8 bytes without decoding the row
+     */
+    boolean hasFullName(int row, String fullName, byte[] bytes) {
+        if (fullName == null || bytes == null) {
+            return fullName == null && (types[row] & NO_NAME) != 0;
+        }
+
+        int start = nameStart(row);
+        return nameHashes[row] == fullName.hashCode() && (types[row] & NO_NAME) == 0
+               && Arrays.equals(names, start, nameEnds[row], bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return first live row with the id in file order, or NONE
+     */
+    int getFirst(UUID id) {
+        int position = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return position < 0 ? NONE : heads[position] - 1;
+    }
+
+    /**
+     * @return next live row with the same id, or NONE
+     */
+    int getNext(int row) {
+        return next[row];
+    }
+
+    void remove(int row) {
+        if (!isLive(row)) {
+            return;
+        }
+
+        unlink(row);
+        types[row] |= REMOVED;
+    }
+
+    private int appendRow(Employee employee) {
+        byte type = (byte) EmployeeType.of(employee).ordinal();
+        String fullName = employee.getFullName();
+        String description = employee instanceof OtherEmployee otherEmployee ? otherEmployee.getDescription() : null;
+
+        byte[] name = fullName == null ? new byte[0] : fullName.getBytes(StandardCharsets.UTF_8);
+        byte[] text = description == null ? new byte[0] : description.getBytes(StandardCharsets.UTF_8);
+
+        if (fullName == null) {
+            type |= NO_NAME;
+        }
+        if (description == null) {
+            type |= NO_DESCRIPTION;
+        }
+
+        int row = add(employee.getId().getMostSignificantBits(), employee.getId().getLeastSignificantBits(),
+                toEpochDay(employee.getBirthdayDate()), toEpochDay(employee.getHiringDate()),
+                type, Objects.hashCode(fullName), name, 0, name.length, text, 0, text.length);
+
+        if (employee instanceof Manager manager) {
+            managers[row] = new ManagerView(this, row, new ArrayList<>(manager.getSubordinates()));
+        }
+        return row;
+    }
+
+    // the view somebody still holds, or null
+    private Employee getView(int row) {
+        if (managers[row] != null) {
+            return managers[row];
+        }
+        return views[row] == null ? null : views[row].get();
+    }
+
+    private void setView(int row, Employee view) {
+        if (view instanceof Manager manager) {
+            managers[row] = manager;
+        } else {
+            views[row] = new ViewReference(view, row, collected);
+        }
+    }
+
+    // drops the references whose views were collected, they would otherwise stay one per row
+    private void expungeCollected() {
+        for (Reference<? extends Employee> reference = collected.poll(); reference != null;
+             reference = collected.poll()) {
+            int row = ((ViewReference) reference).row;
+            if (views[row] == reference) {
+                views[row] = null;
+            }
+        }
+    }
+
+    // the view of the first row the subordinate stands for, or the subordinate if no row is equal to it
+    private Employee normalize(Employee subordinate) {
+        if (subordinate == null || subordinate instanceof View) {
+            return subordinate;
+        }
+
+        int row = getFirst(subordinate.getId());
+        if (SubordinateReferences.isPlaceholder(subordinate)) {
+            return row == NONE ? subordinate : get(row);
+        }
+
+        while (row != NONE && !get(row).equals(subordinate)) {
+            row = next[row];
+        }
+        return row == NONE ? subordinate : get(row);
+    }
+
+    private int add(long idHigh, long idLow, int birthdayDay, int hiringDay, byte type, int nameHash,
+                    byte[] name, int nameFrom, int nameTo, byte[] description, int descriptionFrom, int descriptionTo) {
+        if (size == types.length) {
+            grow();
+        }
+
+        int row = size++;
+        idHighs[row] = idHigh;
+        idLows[row] = idLow;
+        birthdayDays[row] = birthdayDay;
+        hiringDays[row] = hiringDay;
+        types[row] = type;
+        nameHashes[row] = nameHash;
+        next[row] = NONE;
+
+        names = ensure(names, namesSize + nameTo - nameFrom);
+        System.arraycopy(name, nameFrom, names, namesSize, nameTo - nameFrom);
+        namesSize += nameTo - nameFrom;
+        nameEnds[row] = namesSize;
+
+        descriptions = ensure(descriptions, descriptionsSize + descriptionTo - descriptionFrom);
+        System.arraycopy(description, descriptionFrom, descriptions, descriptionsSize, descriptionTo - descriptionFrom);
+        descriptionsSize += descriptionTo - descriptionFrom;
+        descriptionEnds[row] = descriptionsSize;
+
+        if ((type & REMOVED) == 0) {
+            link(row);
+        }
+        return row;
+    }
+
+    private void grow() {
+        resize(Math.max(MIN_CAPACITY, types.length * 2));
+    }
+
+    private void resize(int capacity) {
+        idHighs = Arrays.copyOf(idHighs, capacity);
+        idLows = Arrays.copyOf(idLows, capacity);
+        birthdayDays = Arrays.copyOf(birthdayDays, capacity);
+        hiringDays = Arrays.copyOf(hiringDays, capacity);
+        types = Arrays.copyOf(types, capacity);
+        nameHashes = Arrays.copyOf(nameHashes, capacity);
+        nameEnds = Arrays.copyOf(nameEnds, capacity);
+        descriptionEnds = Arrays.copyOf(descriptionEnds, capacity);
+        next = Arrays.copyOf(next, capacity);
+        managers = Arrays.copyOf(managers, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    private static byte[] ensure(byte[] bytes, int required) {
+        if (required <= bytes.length) {
+            return bytes;
+        }
+        return Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+    }
+
+    private int nameStart(int row) {
+        return row == 0 ? 0 : nameEnds[row - 1];
+    }
+
+    private int descriptionStart(int row) {
+        return row == 0 ? 0 : descriptionEnds[row - 1];
+    }
+
+    private String getDescription(int row) {
+        int start = descriptionStart(row);
+        return (types[row] & NO_DESCRIPTION) != 0
+                ? null
+                : new String(descriptions, start, descriptionEnds[row] - start, StandardCharsets.UTF_8);
+    }
+
+    private UUID getId(int row) {
+        return new UUID(idHighs[row], idLows[row]);
+    }
+
+    private LocalDate getDate(int[] days, int row) {
+        return days[row] == NO_DATE ? null : LocalDate.ofEpochDay(days[row]);
+    }
+
+    // the chain of an id is kept in row order, so the first record in the file is found first
+    private void link(int row) {
+        int position = find(idHighs[row], idLows[row]);
+
+        if (position >= 0) {
+            int tail = heads[position] - 1;
+            while (next[tail] != NONE) {
+                tail = next[tail];
+            }
+            next[tail] = row;
+            return;
+        }
+
+        if ((usedEntries + 1) * 2 > heads.length) {
+            rehash();
+        }
+
+        position = hash(idHighs[row], idLows[row]);
+        while (heads[position] > EMPTY) {
+            position = (position + 1) & (heads.length - 1);
+        }
+
+        if (heads[position] == EMPTY) {
+            usedEntries++;
+        }
+        heads[position] = row + 1;
+    }
+
+    private void unlink(int row) {
+        int position = find(idHighs[row], idLows[row]);
+        int head = heads[position] - 1;
+
+        if (head == row) {
+            heads[position] = next[row] == NONE ? UNUSED : next[row] + 1;
+        } else {
+            int previous = head;
+            while (next[previous] != row) {
+                previous = next[previous];
+            }
+            next[previous] = next[row];
+        }
+
+        next[row] = NONE;
+    }
+
+    private int find(long idHigh, long idLow) {
+        int position = hash(idHigh, idLow);
+
+        while (true) {
+            int reference = heads[position];
+
+            if (reference == EMPTY) {
+                return -1;
+            }
+
+            if (reference > EMPTY && idHighs[reference - 1] == idHigh && idLows[reference - 1] == idLow) {
+                return position;
+            }
+
+            position = (position + 1) & (heads.length - 1);
+        }
+    }
+
+    // removed entries are dropped, the table doubles only if it is mostly live
+    private void rehash() {
+        int[] old = heads;
+        int live = 0;
+        for (int reference : old) {
+            if (reference > EMPTY) {
+                live++;
+            }
+        }
+
+        heads = new int[live * 4 > old.length ? old.length * 2 : old.length];
+        usedEntries = 0;
+
+        for (int reference : old) {
+            if (reference > EMPTY) {
+                int position = hash(idHighs[reference - 1], idLows[reference - 1]);
+                while (heads[position] != EMPTY) {
+                    position = (position + 1) & (heads.length - 1);
+                }
+                heads[position] = reference;
+                usedEntries++;
+            }
+        }
+    }
+
+    private int hash(long idHigh, long idLow) {
+        long hash = idHigh * 0x9E3779B97F4A7C15L ^ idLow;
+        hash ^= hash >>> 32;
+        return (int) hash & (heads.length - 1);
+    }
+
+    private static int toEpochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Records of a columnar store are changed through the store");
+    }
+
+    private static final class ViewReference extends WeakReference<Employee> {
+        private final int row;
+
+        ViewReference(Employee view, int row, ReferenceQueue<Employee> queue) {
+            super(view, queue);
+            this.row = row;
+        }
+    }
+
+    /**
+     * A row of the columns, it follows the row when the columns are rebuilt
+     */
+    private interface View {
+        EmployeeColumns getColumns();
+
+        int getRow();
+
+        void moveTo(EmployeeColumns columns, int row);
+    }
+
+    private static final class EmployeeView extends Employee implements View {
+        private EmployeeColumns columns;
+        private int row;
+
+        EmployeeView(EmployeeColumns columns, int row) {
+            super(null, null, null, null);
+            this.columns = columns;
+            this.row = row;
+        }
+
+        @Override
+        public EmployeeColumns getColumns() {
+            return columns;
+        }
+
+        @Override
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public void moveTo(EmployeeColumns columns, int row) {
+            this.columns = columns;
+            this.row = row;
+        }
+
+        @Override
+        public UUID getId() {
+            return columns.getId(row);
+        }
+
+        @Override
+        public String getFullName() {
+            return columns.getFullName(row);
+        }
+
+        @Override
+        public LocalDate getBirthdayDate() {
+            return columns.getDate(columns.birthdayDays, row);
+        }
+
+        @Override
+        public LocalDate getHiringDate() {
+            return columns.getDate(columns.hiringDays, row);
+        }
+
+        @Override
+        public void setId(UUID id) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setFullName(String fullName) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setBirthdayDate(LocalDate birthdayDate) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setHiringDate(LocalDate hiringDate) {
+            throw readOnly();
+        }
+    }
+
+    private static final class OtherEmployeeView extends OtherEmployee implements View {
+        private EmployeeColumns columns;
+        private int row;
+
+        OtherEmployeeView(EmployeeColumns columns, int row) {
+            super(null, null, null, null, null);
+            this.columns = columns;
+            this.row = row;
+        }
+
+        @Override
+        public EmployeeColumns getColumns() {
+            return columns;
+        }
+
+        @Override
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public void moveTo(EmployeeColumns columns, int row) {
+            this.columns = columns;
+            this.row = row;
+        }
+
+        @Override
+        public UUID getId() {
+            return columns.getId(row);
+        }
+
+        @Override
+        public String getFullName() {
+            return columns.getFullName(row);
+        }
+
+        @Override
+        public LocalDate getBirthdayDate() {
+            return columns.getDate(columns.birthdayDays, row);
+        }
+
+        @Override
+        public LocalDate getHiringDate() {
+            return columns.getDate(columns.hiringDays, row);
+        }
+
+        @Override
+        public String getDescription() {
+            return columns.getDescription(row);
+        }
+
+        @Override
+        public void setId(UUID id) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setFullName(String fullName) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setBirthdayDate(LocalDate birthdayDate) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setHiringDate(LocalDate hiringDate) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setDescription(String description) {
+            throw readOnly();
+        }
+    }
+
+    // the subordinates list is an object, it is kept in the view
+    private static final class ManagerView extends Manager implements View {
+        private EmployeeColumns columns;
+        private int row;
+
+        ManagerView(EmployeeColumns columns, int row, List<Employee> subordinates) {
+            super(null, null, null, null, subordinates);
+            this.columns = columns;
+            this.row = row;
+        }
+
+        @Override
+        public EmployeeColumns getColumns() {
+            return columns;
+        }
+
+        @Override
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public void moveTo(EmployeeColumns columns, int row) {
+            this.columns = columns;
+            this.row = row;
+        }
+
+        @Override
+        public UUID getId() {
+            return columns.getId(row);
+        }
+
+        @Override
+        public String getFullName() {
+            return columns.getFullName(row);
+        }
+
+        @Override
+        public LocalDate getBirthdayDate() {
+            return columns.getDate(columns.birthdayDays, row);
+        }
+
+        @Override
+        public LocalDate getHiringDate() {
+            return columns.getDate(columns.hiringDays, row);
+        }
+
+        @Override
+        public void setId(UUID id) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setFullName(String fullName) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setBirthdayDate(LocalDate birthdayDate) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setHiringDate(LocalDate hiringDate) {
+            throw readOnly();
+        }
+    }
+}
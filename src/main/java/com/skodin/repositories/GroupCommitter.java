@@ -0,0 +1,68 @@
+package com.skodin.repositories;
+
+import lombok.SneakyThrows;
+
+import java.time.Duration;
+
+/**
+ * Lets commits that arrive close to each other share one durable write.
+ * <p>
+ * The first caller becomes the leader and writes everything applied so far, callers that arrive
+ * while the write is in progress wait for it and for the next one, led by one of them.
+ * Every caller returns only after a write that started after its own request has finished.
+ */
+class GroupCommitter {
+
+    private final Runnable flush;
+    private final long windowMillis;
+
+    private long requested;
+    private long durable;
+    private boolean isFlushing;
+
+    GroupCommitter(Runnable flush, Duration window) {
+        this.flush = flush;
+        this.windowMillis = window.toMillis();
+    }
+
+    @SneakyThrows
+    void commit() {
+        synchronized (this) {
+            long ticket = ++requested;
+
+            while (isFlushing) {
+                wait();
+            }
+
+            if (durable >= ticket) {
+                return;
+            }
+
+            isFlushing = true;
+        }
+
+        boolean isFlushed = false;
+        long target = 0;
+
+        try {
+            if (windowMillis > 0) {
+                Thread.sleep(windowMillis);
+            }
+
+            synchronized (this) {
+                target = requested;
+            }
+
+            flush.run();
+            isFlushed = true;
+        } finally {
+            synchronized (this) {
+                if (isFlushed) {
+                    durable = Math.max(durable, target);
+                }
+                isFlushing = false;
+                notifyAll();
+            }
+        }
+    }
+}
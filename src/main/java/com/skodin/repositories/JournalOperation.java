@@ -0,0 +1,12 @@
+package com.skodin.repositories;
+
+public enum JournalOperation {
+
+    ADD,
+    REMOVE_BY_ID,
+    REMOVE_BY_FULL_NAME,
+    CHANGE_TYPE,
+    ASSIGN,
+    SORT
+
+}
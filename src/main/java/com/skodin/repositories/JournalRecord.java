@@ -0,0 +1,27 @@
+package com.skodin.repositories;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+/**
+ * One mutation of a StaffRepository, as it is appended to the journal
+ */
+@Getter
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class JournalRecord {
+    JournalOperation operation;
+    List<String> arguments;
+
+    public JournalRecord(JournalOperation operation, String... arguments) {
+        this(operation, List.of(arguments));
+    }
+
+    public String getArgument(int index) {
+        return arguments.get(index);
+    }
+}
@@ -0,0 +1,215 @@
+package com.skodin.repositories;
+
+import lombok.SneakyThrows;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * On-disk open addressing hash table from id to the first slot holding that id.
+ * <pre>
+ * header : magic int, capacity int, used entries int, live entries int
+ * entry  : id as two longs, slot + 1 int (0 for never used, -1 for removed), padding int
+ * </pre>
+ * The table is derived data, it can always be rebuilt from the slots.
+ */
+class MappedSlotIndex implements Closeable {
+
+    static final int NONE = -1;
+
+    private static final int MAGIC = 0x53544649;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 24;
+    private static final int REFERENCE = 16;
+    private static final int MIN_CAPACITY = 16;
+
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+
+    private final FileChannel channel;
+
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int used;
+    private int count;
+    private boolean isValid;
+
+    @SneakyThrows
+    MappedSlotIndex(Path path) {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long size = channel.size();
+
+        if (size >= HEADER_SIZE + (long) MIN_CAPACITY * ENTRY_SIZE) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            capacity = buffer.getInt(4);
+            used = buffer.getInt(8);
+            count = buffer.getInt(12);
+            isValid = buffer.getInt(0) == MAGIC
+                      && Integer.bitCount(capacity) == 1
+                      && size == HEADER_SIZE + (long) capacity * ENTRY_SIZE
+                      && count >= 0 && count <= used && used < capacity;
+        }
+
+        if (!isValid) {
+            clear(MIN_CAPACITY);
+        }
+    }
+
+    /**
+     * @return false if the file was missing or damaged when it was opened and the table was started empty
+     */
+    boolean isValid() {
+        return isValid;
+    }
+
+    /**
+     * Drops all entries, the table is sized to hold the expected number of ids without growing
+     */
+    void clear(int expectedCount) {
+        int newCapacity = MIN_CAPACITY;
+        while (newCapacity < expectedCount * 2) {
+            newCapacity <<= 1;
+        }
+
+        map(newCapacity);
+    }
+
+    int get(UUID id) {
+        int position = find(id);
+        return position < 0 ? NONE : buffer.getInt(entry(position) + REFERENCE) - 1;
+    }
+
+    void put(UUID id, int slot) {
+        int position = find(id);
+
+        if (position >= 0) {
+            buffer.putInt(entry(position) + REFERENCE, slot + 1);
+            return;
+        }
+
+        if ((used + 1) * 2 > capacity) {
+            rehash(count * 4 > capacity ? capacity * 2 : capacity);
+        }
+
+        position = hash(id);
+        while (buffer.getInt(entry(position) + REFERENCE) > EMPTY) {
+            position = (position + 1) & (capacity - 1);
+        }
+
+        if (buffer.getInt(entry(position) + REFERENCE) == EMPTY) {
+            used++;
+        }
+        count++;
+
+        int entry = entry(position);
+        buffer.putLong(entry, id.getMostSignificantBits());
+        buffer.putLong(entry + 8, id.getLeastSignificantBits());
+        buffer.putInt(entry + REFERENCE, slot + 1);
+        writeCounts();
+    }
+
+    void remove(UUID id) {
+        int position = find(id);
+
+        if (position >= 0) {
+            buffer.putInt(entry(position) + REFERENCE, REMOVED);
+            count--;
+            writeCounts();
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int find(UUID id) {
+        int position = hash(id);
+
+        while (true) {
+            int entry = entry(position);
+            int reference = buffer.getInt(entry + REFERENCE);
+
+            if (reference == EMPTY) {
+                return -1;
+            }
+
+            if (reference > EMPTY
+                && buffer.getLong(entry) == id.getMostSignificantBits()
+                && buffer.getLong(entry + 8) == id.getLeastSignificantBits()) {
+                return position;
+            }
+
+            position = (position + 1) & (capacity - 1);
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] ids = new long[count * 2];
+        int[] slots = new int[count];
+        int size = 0;
+
+        for (int position = 0; position < capacity; position++) {
+            int entry = entry(position);
+            int reference = buffer.getInt(entry + REFERENCE);
+            if (reference > EMPTY) {
+                ids[size * 2] = buffer.getLong(entry);
+                ids[size * 2 + 1] = buffer.getLong(entry + 8);
+                slots[size++] = reference - 1;
+            }
+        }
+
+        map(newCapacity);
+
+        for (int i = 0; i < size; i++) {
+            put(new UUID(ids[i * 2], ids[i * 2 + 1]), slots[i]);
+        }
+    }
+
+    @SneakyThrows
+    private void map(int newCapacity) {
+        long size = HEADER_SIZE + (long) newCapacity * ENTRY_SIZE;
+
+        if (channel.size() > size) {
+            channel.truncate(size);
+        }
+
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        for (int i = 0; i < size; i += 8) {
+            buffer.putLong(i, 0L);
+        }
+
+        capacity = newCapacity;
+        used = 0;
+        count = 0;
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, capacity);
+        writeCounts();
+    }
+
+    private void writeCounts() {
+        buffer.putInt(8, used);
+        buffer.putInt(12, count);
+    }
+
+    private int hash(UUID id) {
+        long hash = id.getMostSignificantBits() * 0x9E3779B97F4A7C15L ^ id.getLeastSignificantBits();
+        hash ^= hash >>> 32;
+        return (int) hash & (capacity - 1);
+    }
+
+    private static int entry(int position) {
+        return HEADER_SIZE + position * ENTRY_SIZE;
+    }
+}
@@ -0,0 +1,1009 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
+import com.skodin.entities.enums.EmployeeDate;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.entities.enums.EmployeeType;
+import com.skodin.entities.enums.NameMatch;
+import com.skodin.exceptions.DamagedFileException;
+import com.skodin.exceptions.FileNotFoundException;
+import com.skodin.util.DurableFiles;
+import com.skodin.util.EmployeeBinaryCodec;
+import com.skodin.util.SubordinateReferences;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Storage engine that keeps employees on disk and touches only the pages of the affected records.
+ * <p>
+ * {@code name.staff} holds a header and fixed-width slots in file order, it is mapped into memory.
+ * <pre>
+ * header : magic int, version short, clean byte, overflow file byte, slot count int, live count int,
+ *          overflow size long, overflow garbage long
+ * slot   : state byte, type byte, referenced byte, padding byte, full name hash int, id as two longs,
+ *          birthday and hiring dates as epoch days, full name offset long and length int,
+ *          next slot with the same id int, extra offset long and length int, next slot with the same name hash int
+ * </pre>
+ * Full names, descriptions and encoded subordinates live in the append-only overflow region,
+ * {@code name.staff.overflow} or {@code name.staff.overflow.1}, as the header says.
+ * Ids are resolved through the hash table in {@code name.staff.index} and full names, by their hash,
+ * through the one in {@code name.staff.names}; records sharing a key are chained through their slots.
+ * The clean flag is dropped before the first change after a commit, the indexes of a store that
+ * was not closed cleanly are rebuilt on open.
+ * <p>
+ * A subordinate equal to the record its id resolves to is encoded as a reference to it, unless it is a manager,
+ * so a reference never leads back to the list that holds it. The referenced record is flagged; once it is
+ * removed or its type is changed, the lists of the managers are scanned and the references to it replaced by copies.
+ * <p>
+ * Removed slots are kept until the store is sorted or more than a half of the slots are removed.
+ * Bytes of removed records and replaced subordinates lists stay in the overflow region until they
+ * outweigh the live ones, a commit then copies the live bytes into the other overflow file.
+ */
+@Log4j2
+public class MappedStaffStore implements StaffStore {
+
+    public static final String EXTENSION = ".staff";
+
+    private static final int MAGIC = 0x53544653;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 64;
+    private static final int MIN_CAPACITY = 64;
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE;
+    // smaller regions are not worth copying, whatever their garbage is
+    private static final long MIN_OVERFLOW_GARBAGE = 64 * 1024;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_CLEAN = 6;
+    private static final int HEADER_OVERFLOW_FILE = 7;
+    private static final int HEADER_SLOT_COUNT = 8;
+    private static final int HEADER_LIVE_COUNT = 12;
+    private static final int HEADER_OVERFLOW_SIZE = 16;
+    private static final int HEADER_OVERFLOW_GARBAGE = 24;
+
+    private static final int SLOT_STATE = 0;
+    private static final int SLOT_TYPE = 1;
+    private static final int SLOT_REFERENCED = 2;
+    private static final int SLOT_NAME_HASH = 4;
+    private static final int SLOT_ID = 8;
+    private static final int SLOT_BIRTHDAY_DATE = 24;
+    private static final int SLOT_HIRING_DATE = 28;
+    private static final int SLOT_NAME_OFFSET = 32;
+    private static final int SLOT_NAME_LENGTH = 40;
+    private static final int SLOT_NEXT = 44;
+    private static final int SLOT_EXTRA_OFFSET = 48;
+    private static final int SLOT_EXTRA_LENGTH = 56;
+    private static final int SLOT_NEXT_NAME = 60;
+
+    private static final byte LIVE = 1;
+    private static final byte REMOVED = 2;
+
+    private static final int NONE = MappedSlotIndex.NONE;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    @Getter
+    private final Path path;
+    private final Locale locale;
+    private final MappedSlotIndex index;
+    private final MappedSlotIndex names;
+
+    // slots of the managers whose lists held a subordinate with the id, read on the first assign
+    // and dropped when the slots are rewritten; a slot is left in the index until an assign reads its list
+    private Map<UUID, Set<Integer>> managersBySubordinate;
+
+    private FileChannel channel;
+    private FileChannel overflow;
+    private MappedByteBuffer slots;
+    private Object fileKey;
+    private int capacity;
+    private int slotCount;
+    private int liveCount;
+    private long overflowSize;
+    private long overflowGarbage;
+
+    private MappedStaffStore(Path path, Locale locale) throws IOException {
+        this.path = path;
+        this.locale = locale;
+
+        map(FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+
+        // left by a copy of the overflow region that was interrupted or not cleaned up
+        byte overflowFile = slots.get(HEADER_OVERFLOW_FILE);
+        Files.deleteIfExists(getOverflowPath(1 - overflowFile));
+        overflow = FileChannel.open(getOverflowPath(overflowFile),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (overflow.size() < overflowSize) {
+            throw new IOException("Overflow region is shorter than the header says");
+        }
+
+        index = new MappedSlotIndex(path.resolveSibling(path.getFileName() + ".index"));
+        names = new MappedSlotIndex(path.resolveSibling(path.getFileName() + ".names"));
+
+        if (slots.get(HEADER_CLEAN) == 0 || !index.isValid() || !names.isValid()) {
+            log.warn("Message: index of %s is rebuilt".formatted(path));
+            markDirty();
+            rebuildIndex();
+            commit();
+        }
+    }
+
+    public static boolean isStore(Path path) {
+        return path.getFileName() != null && path.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    /**
+     * An empty file is turned into an empty store, names are ordered by the root locale
+     *
+     * @throws FileNotFoundException if file not found
+     * @throws DamagedFileException  if file is not a store or damaged
+     */
+    public static MappedStaffStore open(Path path) {
+        return open(path, Locale.ROOT);
+    }
+
+    /**
+     * An empty file is turned into an empty store
+     *
+     * @param locale collation rules names are ordered by
+     * @throws FileNotFoundException if file not found
+     * @throws DamagedFileException  if file is not a store or damaged
+     */
+    public static MappedStaffStore open(Path path, Locale locale) {
+
+        if (!Files.exists(path)) {
+            String message = "File %s does not exist".formatted(path);
+            log.warn("Message: " + message);
+            throw new FileNotFoundException(message);
+        }
+
+        try {
+            return new MappedStaffStore(path, locale);
+        } catch (IOException e) {
+            String message = "File %s is damaged".formatted(path);
+            log.warn("Message: " + message);
+            throw new DamagedFileException(message);
+        }
+    }
+
+    @Override
+    @SneakyThrows
+    public synchronized boolean isCurrent() {
+        return channel.isOpen()
+               && Files.exists(path)
+               && Objects.equals(fileKey, Files.readAttributes(path, BasicFileAttributes.class).fileKey());
+    }
+
+    @Override
+    public synchronized List<Employee> findAll() {
+        List<Employee> list = new ArrayList<>(liveCount);
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (isLive(slot)) {
+                list.add(read(slot));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Sorted on every call, the store keeps no order indexes
+     */
+    @Override
+    public List<Employee> findAll(EmployeeOrder order) {
+        List<Employee> list = findAll();
+        list.sort(order.getComparator(locale));
+        return list;
+    }
+
+    @Override
+    public synchronized Optional<Employee> findById(UUID id) {
+        int slot = index.get(id);
+        return slot == NONE ? Optional.empty() : Optional.of(read(slot));
+    }
+
+    @Override
+    public synchronized List<Employee> findByFullName(String fullName) {
+        List<Employee> list = new ArrayList<>();
+        for (int slot : findSlotsByFullName(fullName)) {
+            list.add(read(slot));
+        }
+        return list;
+    }
+
+    /**
+     * Scans the names, the store keeps no search index
+     */
+    @Override
+    public synchronized List<Employee> searchByFullName(String text, NameMatch match, boolean isCaseSensitive,
+                                                        int limit) {
+        String query = isCaseSensitive ? text : text.toLowerCase(Locale.ROOT);
+        List<Employee> list = new ArrayList<>();
+
+        for (int slot = 0; slot < slotCount && list.size() < limit; slot++) {
+            int offset = offset(slot);
+            String fullName = isLive(slot) ? readString(offset + SLOT_NAME_OFFSET, offset + SLOT_NAME_LENGTH) : null;
+
+            if (fullName != null) {
+                String name = isCaseSensitive ? fullName : fullName.toLowerCase(Locale.ROOT);
+                if (match == NameMatch.PREFIX ? name.startsWith(query) : name.contains(query)) {
+                    list.add(read(slot));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Scans the dates in the slots, only matching records are read
+     */
+    @Override
+    public synchronized List<Employee> findByDateRange(EmployeeDate field, LocalDate from, LocalDate to) {
+        int dateField = field == EmployeeDate.HIRING_DATE ? SLOT_HIRING_DATE : SLOT_BIRTHDAY_DATE;
+        long first = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        long last = to == null ? Long.MAX_VALUE : to.toEpochDay();
+
+        // the slot breaks ties, so equal dates stay in file order
+        long[] found = new long[16];
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int day = slots.getInt(offset(slot) + dateField);
+            if (isLive(slot) && day != NO_DATE && day >= first && day <= last) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = (long) day << 32 | slot;
+            }
+        }
+        Arrays.sort(found, 0, count);
+
+        List<Employee> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(read((int) found[i]));
+        }
+        return list;
+    }
+
+    @Override
+    public synchronized List<Employee> findByType(EmployeeType type) {
+        List<Employee> list = new ArrayList<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (isLive(slot) && slots.get(offset(slot) + SLOT_TYPE) == type.ordinal()) {
+                list.add(read(slot));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public synchronized boolean contains(Employee employee) {
+        return findSlot(employee) != NONE;
+    }
+
+    @Override
+    public synchronized int size() {
+        return liveCount;
+    }
+
+    /**
+     * Subordinates are stored as copies, so the check walks the copies of the employee
+     */
+    @Override
+    public boolean manages(Employee employee, Manager manager) {
+        return SubordinateReferences.manages(employee, manager);
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Employee> newEmployees) {
+        markDirty();
+        for (Employee employee : newEmployees) {
+            append(employee);
+        }
+    }
+
+    @Override
+    public synchronized boolean removeById(UUID id) {
+        int slot = index.get(id);
+
+        if (slot == NONE) {
+            return false;
+        }
+
+        markDirty();
+        while (slot != NONE) {
+            int next = slots.getInt(offset(slot) + SLOT_NEXT);
+            remove(slot);
+            slot = next;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeByFullName(String fullName) {
+        List<Integer> found = findSlotsByFullName(fullName);
+
+        if (found.isEmpty()) {
+            return false;
+        }
+
+        markDirty();
+        found.forEach(this::remove);
+        return true;
+    }
+
+    @Override
+    public synchronized void changeType(Employee employee, EmployeeType type, String description) {
+        int slot = findSlot(employee);
+
+        if (slot == NONE) {
+            return;
+        }
+
+        markDirty();
+        remove(slot);
+        append(StaffStore.copyAs(employee, type, description));
+    }
+
+    /**
+     * Only the slots of the manager and of the managers the employee leaves are rewritten,
+     * their new subordinates lists go to the overflow region. Subordinates are stored as values,
+     * so the employee leaves every list holding a record equal to it; the lists of the managers
+     * indexed by the id of the employee are read to find them
+     */
+    @Override
+    public synchronized void assign(Manager manager, Employee employee) {
+        int slot = findSlot(manager);
+
+        if (slot == NONE) {
+            return;
+        }
+
+        markDirty();
+        Set<Integer> managers = getManagersBySubordinate()
+                .computeIfAbsent(employee.getId(), id -> new HashSet<>());
+        for (Iterator<Integer> iterator = managers.iterator(); iterator.hasNext(); ) {
+            int i = iterator.next();
+            if (i == slot) {
+                continue;
+            }
+            if (!isLive(i)) {
+                iterator.remove();
+                continue;
+            }
+
+            List<Employee> previous = ((Manager) read(i)).getSubordinates();
+            if (previous.removeIf(employee::equals)) {
+                addGarbage(slots.getInt(offset(i) + SLOT_EXTRA_LENGTH));
+                writeExtra(offset(i), encode(previous));
+            }
+            if (previous.stream().noneMatch(subordinate -> hasId(subordinate, employee.getId()))) {
+                iterator.remove();
+            }
+        }
+        managers.add(slot);
+
+        List<Employee> subordinates = new ArrayList<>(((Manager) read(slot)).getSubordinates());
+        subordinates.removeIf(employee::equals);
+        subordinates.add(employee);
+
+        addGarbage(slots.getInt(offset(slot) + SLOT_EXTRA_LENGTH));
+        writeExtra(offset(slot), encode(subordinates));
+        manager.setSubordinates(new ArrayList<>(subordinates));
+    }
+
+    /**
+     * Slots are written in the new order into a fresh file that replaces the store
+     */
+    @Override
+    public synchronized void sort(EmployeeOrder order) {
+        List<Integer> live = getLiveSlots();
+        List<Employee> employees = live.stream().map(this::read).toList();
+
+        List<Integer> sorted = IntStream.range(0, live.size()).boxed()
+                .sorted(Comparator.comparing(employees::get, order.getComparator(locale)))
+                .map(live::get)
+                .toList();
+
+        rewrite(sorted);
+    }
+
+    /**
+     * Copies the live bytes of the overflow region into the other overflow file first,
+     * if the garbage in it outweighs them
+     */
+    @Override
+    @SneakyThrows
+    public synchronized void commit() {
+        if (slots.get(HEADER_CLEAN) != 0) {
+            return;
+        }
+
+        if (overflowGarbage > MIN_OVERFLOW_GARBAGE && overflowGarbage * 2 > overflowSize) {
+            // commits the rewritten store
+            rewrite(getLiveSlots());
+            return;
+        }
+
+        overflow.force(false);
+        slots.force();
+        index.force();
+        names.force();
+
+        slots.put(HEADER_CLEAN, (byte) 1);
+        slots.force(0, HEADER_SIZE);
+    }
+
+    /**
+     * Commits and drops removed slots if they take more than a half of the store
+     */
+    @Override
+    @SneakyThrows
+    public synchronized void close() {
+        if (!channel.isOpen()) {
+            return;
+        }
+
+        if (slotCount - liveCount > liveCount) {
+            rewrite(getLiveSlots());
+        }
+
+        commit();
+        index.close();
+        names.close();
+        overflow.close();
+        channel.close();
+    }
+
+    private void append(Employee employee) {
+        if (slotCount == capacity) {
+            grow();
+        }
+
+        int slot = slotCount++;
+        int offset = offset(slot);
+
+        byte[] name = getBytes(employee.getFullName());
+        slots.put(offset + SLOT_STATE, LIVE);
+        slots.put(offset + SLOT_TYPE, (byte) EmployeeType.of(employee).ordinal());
+        slots.put(offset + SLOT_REFERENCED, (byte) 0);
+        slots.putInt(offset + SLOT_NAME_HASH, Objects.hashCode(employee.getFullName()));
+        slots.putLong(offset + SLOT_ID, employee.getId().getMostSignificantBits());
+        slots.putLong(offset + SLOT_ID + 8, employee.getId().getLeastSignificantBits());
+        slots.putInt(offset + SLOT_BIRTHDAY_DATE, toEpochDay(employee.getBirthdayDate()));
+        slots.putInt(offset + SLOT_HIRING_DATE, toEpochDay(employee.getHiringDate()));
+        slots.putLong(offset + SLOT_NAME_OFFSET, name == null ? 0 : appendOverflow(name));
+        slots.putInt(offset + SLOT_NAME_LENGTH, name == null ? -1 : name.length);
+        slots.putInt(offset + SLOT_NEXT, NONE);
+        slots.putInt(offset + SLOT_NEXT_NAME, NONE);
+
+        if (employee instanceof OtherEmployee otherEmployee) {
+            writeExtra(offset, getBytes(otherEmployee.getDescription()));
+        } else if (employee instanceof Manager manager) {
+            writeExtra(offset, encode(manager.getSubordinates()));
+            if (managersBySubordinate != null) {
+                indexSubordinates(slot, manager.getSubordinates());
+            }
+        } else {
+            writeExtra(offset, null);
+        }
+
+        liveCount++;
+        writeCounts();
+        link(slot);
+    }
+
+    private void remove(int slot) {
+        if (slots.get(offset(slot) + SLOT_REFERENCED) != 0) {
+            removeReferences(slot);
+            return;
+        }
+
+        unlink(slot);
+        addGarbage(slots.getInt(offset(slot) + SLOT_NAME_LENGTH));
+        addGarbage(slots.getInt(offset(slot) + SLOT_EXTRA_LENGTH));
+        slots.put(offset(slot) + SLOT_STATE, REMOVED);
+        liveCount--;
+        writeCounts();
+    }
+
+    /**
+     * Removes the slot, the lists of subordinates referencing it are encoded again without it
+     */
+    private void removeReferences(int slot) {
+        slots.put(offset(slot) + SLOT_REFERENCED, (byte) 0);
+        UUID id = getId(slot);
+
+        // read while the references still resolve
+        Map<Integer, List<Employee>> referencing = new LinkedHashMap<>();
+        for (int i = 0; i < slotCount; i++) {
+            if (i != slot && isLive(i) && slots.get(offset(i) + SLOT_TYPE) == EmployeeType.MANAGER.ordinal()) {
+                List<Employee> subordinates = ((Manager) read(i)).getSubordinates();
+                if (contains(subordinates, id)) {
+                    referencing.put(i, subordinates);
+                }
+            }
+        }
+
+        remove(slot);
+
+        referencing.forEach((manager, subordinates) -> {
+            addGarbage(slots.getInt(offset(manager) + SLOT_EXTRA_LENGTH));
+            writeExtra(offset(manager), encode(subordinates));
+        });
+    }
+
+    private Map<UUID, Set<Integer>> getManagersBySubordinate() {
+        if (managersBySubordinate == null) {
+            managersBySubordinate = new HashMap<>();
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (isLive(slot) && slots.get(offset(slot) + SLOT_TYPE) == EmployeeType.MANAGER.ordinal()) {
+                    indexSubordinates(slot, ((Manager) read(slot)).getSubordinates());
+                }
+            }
+        }
+        return managersBySubordinate;
+    }
+
+    private void indexSubordinates(int slot, List<Employee> subordinates) {
+        for (Employee subordinate : subordinates) {
+            if (subordinate != null) {
+                managersBySubordinate.computeIfAbsent(subordinate.getId(), id -> new HashSet<>()).add(slot);
+            }
+        }
+    }
+
+    private static boolean hasId(Employee employee, UUID id) {
+        return employee != null && id.equals(employee.getId());
+    }
+
+    private static boolean contains(List<Employee> subordinates, UUID id) {
+        Deque<Employee> pending = new ArrayDeque<>(subordinates);
+
+        while (!pending.isEmpty()) {
+            Employee employee = pending.pop();
+            if (hasId(employee, id)) {
+                return true;
+            }
+            if (employee instanceof Manager manager) {
+                manager.getSubordinates().forEach(pending::push);
+            }
+        }
+        return false;
+    }
+
+    private void link(int slot) {
+        link(index, getId(slot), SLOT_NEXT, slot);
+        link(names, getNameKey(slots.getInt(offset(slot) + SLOT_NAME_HASH)), SLOT_NEXT_NAME, slot);
+    }
+
+    private void unlink(int slot) {
+        unlink(index, getId(slot), SLOT_NEXT, slot);
+        unlink(names, getNameKey(slots.getInt(offset(slot) + SLOT_NAME_HASH)), SLOT_NEXT_NAME, slot);
+    }
+
+    // the chain of a key is kept in slot order, so the first record in the file is found first
+    private void link(MappedSlotIndex table, UUID key, int nextField, int slot) {
+        int head = table.get(key);
+
+        if (head == NONE) {
+            table.put(key, slot);
+            return;
+        }
+
+        int tail = head;
+        while (slots.getInt(offset(tail) + nextField) != NONE) {
+            tail = slots.getInt(offset(tail) + nextField);
+        }
+        slots.putInt(offset(tail) + nextField, slot);
+    }
+
+    private void unlink(MappedSlotIndex table, UUID key, int nextField, int slot) {
+        int head = table.get(key);
+        int next = slots.getInt(offset(slot) + nextField);
+
+        if (head == slot) {
+            if (next == NONE) {
+                table.remove(key);
+            } else {
+                table.put(key, next);
+            }
+        } else {
+            int previous = head;
+            while (previous != NONE && slots.getInt(offset(previous) + nextField) != slot) {
+                previous = slots.getInt(offset(previous) + nextField);
+            }
+            if (previous != NONE) {
+                slots.putInt(offset(previous) + nextField, next);
+            }
+        }
+
+        slots.putInt(offset(slot) + nextField, NONE);
+    }
+
+    private void rebuildIndex() {
+        managersBySubordinate = null;
+        index.clear(liveCount);
+        names.clear(liveCount);
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            slots.putInt(offset(slot) + SLOT_NEXT, NONE);
+            slots.putInt(offset(slot) + SLOT_NEXT_NAME, NONE);
+            if (isLive(slot)) {
+                link(slot);
+            }
+        }
+    }
+
+    private int findSlot(Employee employee) {
+        int slot = index.get(employee.getId());
+
+        while (slot != NONE && !read(slot).equals(employee)) {
+            slot = slots.getInt(offset(slot) + SLOT_NEXT);
+        }
+
+        return slot;
+    }
+
+    // names sharing the hash are told apart by reading them
+    private List<Integer> findSlotsByFullName(String fullName) {
+        List<Integer> found = new ArrayList<>();
+
+        int slot = names.get(getNameKey(Objects.hashCode(fullName)));
+        while (slot != NONE) {
+            int offset = offset(slot);
+            if (Objects.equals(fullName, readString(offset + SLOT_NAME_OFFSET, offset + SLOT_NAME_LENGTH))) {
+                found.add(slot);
+            }
+            slot = slots.getInt(offset + SLOT_NEXT_NAME);
+        }
+
+        return found;
+    }
+
+    private List<Integer> getLiveSlots() {
+        List<Integer> live = new ArrayList<>(liveCount);
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (isLive(slot)) {
+                live.add(slot);
+            }
+        }
+        return live;
+    }
+
+    @SneakyThrows
+    private Employee read(int slot) {
+        int offset = offset(slot);
+
+        Employee employee = new Employee(getId(slot),
+                readString(offset + SLOT_NAME_OFFSET, offset + SLOT_NAME_LENGTH),
+                toDate(slots.getInt(offset + SLOT_BIRTHDAY_DATE)),
+                toDate(slots.getInt(offset + SLOT_HIRING_DATE)));
+
+        return switch (EmployeeType.values()[slots.get(offset + SLOT_TYPE)]) {
+            case EMPLOYEE -> employee;
+            case OTHER_EMPLOYEE -> new OtherEmployee(employee,
+                    readString(offset + SLOT_EXTRA_OFFSET, offset + SLOT_EXTRA_LENGTH));
+            case MANAGER -> new Manager(employee, decode(readOverflow(
+                    slots.getLong(offset + SLOT_EXTRA_OFFSET), slots.getInt(offset + SLOT_EXTRA_LENGTH))));
+        };
+    }
+
+    /**
+     * Slots are copied in the given order into a new file that atomically replaces the store.
+     * The overflow region is shared by both versions, unless its garbage outweighs the live bytes;
+     * these are then copied into the other overflow file, which is forced before the store is replaced
+     */
+    @SneakyThrows
+    private void rewrite(List<Integer> order) {
+        boolean isOverflowCopied = overflowGarbage > MIN_OVERFLOW_GARBAGE && overflowGarbage * 2 > overflowSize;
+        byte overflowFile = slots.get(HEADER_OVERFLOW_FILE);
+        byte newOverflowFile = isOverflowCopied ? (byte) (1 - overflowFile) : overflowFile;
+
+        long newOverflowSize = overflowSize;
+        if (isOverflowCopied) {
+            newOverflowSize = 0;
+            for (int i : order) {
+                newOverflowSize += Math.max(0, slots.getInt(offset(i) + SLOT_NAME_LENGTH))
+                                   + Math.max(0, slots.getInt(offset(i) + SLOT_EXTRA_LENGTH));
+            }
+        }
+
+        int newCapacity = Math.max(MIN_CAPACITY, order.size());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(HEADER_MAGIC, MAGIC)
+                .putShort(HEADER_VERSION, VERSION)
+                .put(HEADER_OVERFLOW_FILE, newOverflowFile)
+                .putInt(HEADER_SLOT_COUNT, order.size())
+                .putInt(HEADER_LIVE_COUNT, order.size())
+                .putLong(HEADER_OVERFLOW_SIZE, newOverflowSize)
+                .putLong(HEADER_OVERFLOW_GARBAGE, isOverflowCopied ? 0 : overflowGarbage);
+
+        overflow.force(false);
+
+        Path newOverflowPath = getOverflowPath(newOverflowFile);
+        FileChannel newOverflow = !isOverflowCopied ? overflow : FileChannel.open(newOverflowPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            DurableFiles.replace(path, outputStream -> {
+                OutputStream output = new BufferedOutputStream(outputStream, 64 * 1024);
+                OutputStream overflowOutput = isOverflowCopied
+                        ? new BufferedOutputStream(Channels.newOutputStream(newOverflow), 64 * 1024)
+                        : null;
+                ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+                long[] position = new long[1];
+
+                output.write(header.array());
+                for (int i : order) {
+                    slots.get(offset(i), slot.array());
+                    if (isOverflowCopied) {
+                        copyOverflow(slot, SLOT_NAME_OFFSET, SLOT_NAME_LENGTH, overflowOutput, position);
+                        copyOverflow(slot, SLOT_EXTRA_OFFSET, SLOT_EXTRA_LENGTH, overflowOutput, position);
+                    }
+                    output.write(slot.array());
+                }
+
+                Arrays.fill(slot.array(), (byte) 0);
+                for (int i = order.size(); i < newCapacity; i++) {
+                    output.write(slot.array());
+                }
+
+                output.flush();
+                if (isOverflowCopied) {
+                    overflowOutput.flush();
+                    newOverflow.force(false);
+                }
+            });
+        } catch (Exception e) {
+            if (isOverflowCopied) {
+                newOverflow.close();
+                Files.deleteIfExists(newOverflowPath);
+            }
+            throw e;
+        }
+
+        if (isOverflowCopied) {
+            overflow.close();
+            overflow = newOverflow;
+            Files.deleteIfExists(getOverflowPath(overflowFile));
+            log.info("Overflow region of %s was compacted from %d to %d bytes"
+                    .formatted(path, overflowSize, newOverflowSize));
+        }
+
+        channel.close();
+        map(FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        rebuildIndex();
+        commit();
+    }
+
+    /**
+     * Appends the bytes a field of the slot points to and points the field to the copy
+     */
+    private void copyOverflow(ByteBuffer slot, int offsetField, int lengthField, OutputStream output,
+                              long[] position) throws IOException {
+        byte[] bytes = readOverflow(slot.getLong(offsetField), slot.getInt(lengthField));
+        if (bytes == null) {
+            slot.putLong(offsetField, 0);
+            return;
+        }
+
+        output.write(bytes);
+        slot.putLong(offsetField, position[0]);
+        position[0] += bytes.length;
+    }
+
+    private void map(FileChannel newChannel) throws IOException {
+        channel = newChannel;
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+
+        long size = channel.size();
+
+        if (size == 0) {
+            slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) MIN_CAPACITY * SLOT_SIZE);
+            slots.putInt(HEADER_MAGIC, MAGIC);
+            slots.putShort(HEADER_VERSION, VERSION);
+            slots.put(HEADER_CLEAN, (byte) 1);
+            capacity = MIN_CAPACITY;
+            return;
+        }
+
+        if (size < HEADER_SIZE || (size - HEADER_SIZE) % SLOT_SIZE != 0
+            || size > HEADER_SIZE + (long) MAX_CAPACITY * SLOT_SIZE) {
+            throw new IOException("Unexpected size of a store");
+        }
+
+        slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        capacity = (int) ((size - HEADER_SIZE) / SLOT_SIZE);
+        slotCount = slots.getInt(HEADER_SLOT_COUNT);
+        liveCount = slots.getInt(HEADER_LIVE_COUNT);
+        overflowSize = slots.getLong(HEADER_OVERFLOW_SIZE);
+        overflowGarbage = slots.getLong(HEADER_OVERFLOW_GARBAGE);
+
+        if (slots.getInt(HEADER_MAGIC) != MAGIC || slots.getShort(HEADER_VERSION) != VERSION
+            || slotCount < 0 || slotCount > capacity || liveCount < 0 || liveCount > slotCount
+            || overflowSize < 0 || overflowGarbage < 0 || slots.get(HEADER_OVERFLOW_FILE) >>> 1 != 0) {
+            throw new IOException("Not an employees store");
+        }
+    }
+
+    @SneakyThrows
+    private void grow() {
+        if (capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("Store %s is full".formatted(path));
+        }
+
+        capacity = (int) Math.min(MAX_CAPACITY, capacity * 2L);
+        slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+    }
+
+    // written and forced before the first change, so a torn store is always detected on open
+    private void markDirty() {
+        if (slots.get(HEADER_CLEAN) != 0) {
+            slots.put(HEADER_CLEAN, (byte) 0);
+            slots.force(0, HEADER_SIZE);
+        }
+    }
+
+    private void writeCounts() {
+        slots.putInt(HEADER_SLOT_COUNT, slotCount);
+        slots.putInt(HEADER_LIVE_COUNT, liveCount);
+    }
+
+    // bytes of the overflow region nothing points to any more
+    private void addGarbage(int length) {
+        if (length > 0) {
+            overflowGarbage += length;
+            slots.putLong(HEADER_OVERFLOW_GARBAGE, overflowGarbage);
+        }
+    }
+
+    private Path getOverflowPath(int overflowFile) {
+        return path.resolveSibling(path.getFileName() + (overflowFile == 0 ? ".overflow" : ".overflow.1"));
+    }
+
+    private static UUID getNameKey(int nameHash) {
+        return new UUID(0L, nameHash);
+    }
+
+    private void writeExtra(int offset, byte[] bytes) {
+        slots.putLong(offset + SLOT_EXTRA_OFFSET, bytes == null ? 0 : appendOverflow(bytes));
+        slots.putInt(offset + SLOT_EXTRA_LENGTH, bytes == null ? -1 : bytes.length);
+    }
+
+    @SneakyThrows
+    private long appendOverflow(byte[] bytes) {
+        long offset = overflowSize;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        while (buffer.hasRemaining()) {
+            overflow.write(buffer, offset + buffer.position());
+        }
+
+        overflowSize += bytes.length;
+        slots.putLong(HEADER_OVERFLOW_SIZE, overflowSize);
+        return offset;
+    }
+
+    private byte[] readOverflow(long offset, int length) throws IOException {
+        if (length < 0) {
+            return null;
+        }
+
+        if (offset + length > overflowSize) {
+            throw new IOException("Record points outside of the overflow region");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (overflow.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.array();
+    }
+
+    @SneakyThrows
+    private String readString(int offsetField, int lengthField) {
+        byte[] bytes = readOverflow(slots.getLong(offsetField), slots.getInt(lengthField));
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean isLive(int slot) {
+        return slots.get(offset(slot) + SLOT_STATE) == LIVE;
+    }
+
+    private UUID getId(int slot) {
+        int offset = offset(slot);
+        return new UUID(slots.getLong(offset + SLOT_ID), slots.getLong(offset + SLOT_ID + 8));
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static byte[] getBytes(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SneakyThrows
+    private byte[] encode(List<Employee> subordinates) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        for (Employee subordinate : subordinates) {
+            if (subordinate == null) {
+                continue;
+            }
+
+            if (refersTo(subordinate)) {
+                EmployeeBinaryCodec.writeReference(output, subordinate.getId());
+            } else {
+                EmployeeBinaryCodec.write(output, subordinate, this::refersTo);
+            }
+        }
+        EmployeeBinaryCodec.writeEnd(output);
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return true if the subordinate is written as a reference, the record it resolves to is flagged then
+     */
+    private boolean refersTo(Employee subordinate) {
+        if (subordinate instanceof Manager || !subordinate.equals(resolve(subordinate.getId()))) {
+            return false;
+        }
+
+        slots.put(offset(index.get(subordinate.getId())) + SLOT_REFERENCED, (byte) 1);
+        return true;
+    }
+
+    private Employee resolve(UUID id) {
+        int slot = index.get(id);
+        return slot == NONE || slots.get(offset(slot) + SLOT_TYPE) == EmployeeType.MANAGER.ordinal()
+                ? null
+                : read(slot);
+    }
+
+    private List<Employee> decode(byte[] bytes) throws IOException {
+        List<Employee> subordinates = new ArrayList<>();
+
+        if (bytes == null) {
+            return subordinates;
+        }
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        Employee subordinate;
+        while ((subordinate = EmployeeBinaryCodec.read(input, this::resolve)) != null) {
+            subordinates.add(subordinate);
+        }
+
+        return subordinates;
+    }
+
+    private static int toEpochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    private static LocalDate toDate(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
@@ -0,0 +1,167 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.enums.NameMatch;
+
+import java.util.*;
+
+/**
+ * Trigram index over the distinct full names of a staff list.
+ * <p>
+ * Names are lower-cased and padded with two start marks, so the first trigrams of a name also answer
+ * prefix queries. A query walks the two shortest posting lists among its trigrams side by side
+ * and every id found in both is checked against the query, so longer lists are never read.
+ * Substring queries shorter than a trigram scan the names.
+ * <p>
+ * A removed name leaves its postings behind until more than a half of the names are removed,
+ * then the index is rebuilt.
+ */
+class NameSearchIndex {
+
+    private static final char START = '\u0002';
+    private static final int GRAM = 3;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<String> lowerNames = new ArrayList<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    private int removedCount;
+
+    NameSearchIndex(Collection<String> names) {
+        names.forEach(this::add);
+    }
+
+    void add(String name) {
+        if (name == null || ids.containsKey(name)) {
+            return;
+        }
+
+        int id = names.size();
+        String lowerName = name.toLowerCase(Locale.ROOT);
+
+        ids.put(name, id);
+        names.add(name);
+        lowerNames.add(lowerName);
+
+        String padded = pad(lowerName);
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            Postings list = postings.computeIfAbsent(gram(padded, i), key -> new Postings());
+            // a name repeating a trigram is posted once, ids stay ascending
+            if (list.last() != id) {
+                list.add(id);
+            }
+        }
+    }
+
+    void remove(String name) {
+        Integer id = ids.remove(name);
+
+        if (id == null) {
+            return;
+        }
+
+        names.set(id, null);
+        lowerNames.set(id, null);
+
+        if (++removedCount * 2 > names.size()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * @return matching names in the order they were added
+     */
+    List<String> search(String text, NameMatch match, boolean isCaseSensitive, int limit) {
+        String lowerText = text.toLowerCase(Locale.ROOT);
+        String padded = match == NameMatch.PREFIX ? pad(lowerText) : lowerText;
+
+        List<String> result = new ArrayList<>();
+
+        if (padded.length() < GRAM) {
+            for (int id = 0; id < names.size() && result.size() < limit; id++) {
+                addIfMatches(id, text, lowerText, match, isCaseSensitive, result);
+            }
+            return result;
+        }
+
+        Postings shortest = null;
+        Postings second = null;
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            Postings list = postings.get(gram(padded, i));
+            if (list == null) {
+                return result;
+            }
+            if (shortest == null || list.size < shortest.size) {
+                second = shortest;
+                shortest = list;
+            } else if (list != shortest && (second == null || list.size < second.size)) {
+                second = list;
+            }
+        }
+
+        // both lists are ascending, a candidate missing from the second one cannot match
+        int j = 0;
+        for (int i = 0; i < shortest.size && result.size() < limit; i++) {
+            int id = shortest.ids[i];
+            if (second != null) {
+                int found = Arrays.binarySearch(second.ids, j, second.size, id);
+                if (found < 0) {
+                    j = -found - 1;
+                    if (j == second.size) {
+                        break;
+                    }
+                    continue;
+                }
+                j = found;
+            }
+            addIfMatches(id, text, lowerText, match, isCaseSensitive, result);
+        }
+        return result;
+    }
+
+    private void addIfMatches(int id, String text, String lowerText, NameMatch match, boolean isCaseSensitive,
+                              List<String> result) {
+        String name = isCaseSensitive ? names.get(id) : lowerNames.get(id);
+        String query = isCaseSensitive ? text : lowerText;
+
+        if (name != null && (match == NameMatch.PREFIX ? name.startsWith(query) : name.contains(query))) {
+            result.add(names.get(id));
+        }
+    }
+
+    private void rebuild() {
+        List<String> live = names.stream().filter(Objects::nonNull).toList();
+
+        ids.clear();
+        names.clear();
+        lowerNames.clear();
+        postings.clear();
+        removedCount = 0;
+
+        live.forEach(this::add);
+    }
+
+    private static String pad(String text) {
+        return "" + START + START + text;
+    }
+
+    private static long gram(String text, int start) {
+        return (long) text.charAt(start) << 32 | (long) text.charAt(start + 1) << 16 | text.charAt(start + 2);
+    }
+
+    private static class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        int last() {
+            return size == 0 ? -1 : ids[size - 1];
+        }
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
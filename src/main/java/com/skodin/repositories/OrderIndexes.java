@@ -0,0 +1,206 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.util.DurableFiles;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Records of a staff list kept sorted in every {@link EmployeeOrder}, so that an ordered listing
+ * does not reorder the file. Equal records keep file order, as a stable sort of the file would.
+ * <p>
+ * The orders of a written file are kept in a sidecar next to it, as arrays of file positions:
+ * <pre>
+ * magic int, file checksum long, name locale tag, records count int, orders count int,
+ * for every order : order name, records count positions int, crc32 of everything before long
+ * </pre>
+ * A sidecar written for another version of the file or another name locale is ignored
+ * and the orders are sorted again.
+ */
+@Log4j2
+class OrderIndexes {
+
+    private static final int MAGIC = 0x5354464F;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Map<EmployeeOrder, List<Employee>> orders = new EnumMap<>(EmployeeOrder.class);
+    private final Map<EmployeeOrder, Comparator<Employee>> comparators = new EnumMap<>(EmployeeOrder.class);
+    private OrderIndexes(Locale locale) {
+        for (EmployeeOrder order : EmployeeOrder.values()) {
+            comparators.put(order, order.getComparator(locale));
+        }
+    }
+
+    static Path of(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + ".orders");
+    }
+
+    /**
+     * Sorts the employees in every order
+     */
+    static OrderIndexes build(List<Employee> employees, Locale locale) {
+        OrderIndexes indexes = new OrderIndexes(locale);
+        for (EmployeeOrder order : EmployeeOrder.values()) {
+            List<Employee> sorted = new ArrayList<>(employees);
+            sorted.sort(indexes.comparators.get(order));
+            indexes.orders.put(order, sorted);
+        }
+        return indexes;
+    }
+
+    /**
+     * @return orders read from the sidecar, or empty if it is missing, damaged or written for another file
+     */
+    static Optional<OrderIndexes> load(Path sidecar, long checksum, List<Employee> employees, Locale locale) {
+        if (!Files.exists(sidecar)) {
+            return Optional.empty();
+        }
+
+        CRC32 crc = new CRC32();
+        try (DataInputStream input = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(sidecar), BUFFER_SIZE), crc))) {
+
+            if (input.readInt() != MAGIC || input.readLong() != checksum
+                || !input.readUTF().equals(locale.toLanguageTag())
+                || input.readInt() != employees.size() || input.readInt() != EmployeeOrder.values().length) {
+                return Optional.empty();
+            }
+
+            OrderIndexes indexes = new OrderIndexes(locale);
+            for (int i = 0; i < EmployeeOrder.values().length; i++) {
+                EmployeeOrder order = EmployeeOrder.valueOf(input.readUTF());
+                boolean[] isUsed = new boolean[employees.size()];
+                List<Employee> sorted = new ArrayList<>(employees.size());
+
+                for (int j = 0; j < employees.size(); j++) {
+                    int position = input.readInt();
+                    if (position < 0 || position >= employees.size() || isUsed[position]) {
+                        return Optional.empty();
+                    }
+                    isUsed[position] = true;
+                    sorted.add(employees.get(position));
+                }
+                indexes.orders.put(order, sorted);
+            }
+
+            long expected = crc.getValue();
+            if (input.readLong() != expected || indexes.orders.size() != EmployeeOrder.values().length) {
+                return Optional.empty();
+            }
+
+            return Optional.of(indexes);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Message: order sidecar %s is damaged and is ignored".formatted(sidecar));
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return view of the records in the order
+     */
+    List<Employee> get(EmployeeOrder order) {
+        return Collections.unmodifiableList(orders.get(order));
+    }
+
+    /**
+     * The employee goes after the equal records, as it is appended to the end of the file
+     */
+    void add(Employee employee) {
+        orders.forEach((order, sorted) -> {
+            Comparator<Employee> comparator = comparators.get(order);
+            int low = 0;
+            int high = sorted.size();
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (comparator.compare(sorted.get(middle), employee) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            sorted.add(low, employee);
+        });
+    }
+
+    void remove(Employee employee) {
+        orders.forEach((order, sorted) -> {
+            Comparator<Employee> comparator = comparators.get(order);
+            int low = 0;
+            int high = sorted.size();
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (comparator.compare(sorted.get(middle), employee) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            for (int i = low; i < sorted.size() && comparator.compare(sorted.get(i), employee) == 0; i++) {
+                if (sorted.get(i) == employee) {
+                    sorted.remove(i);
+                    return;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return every order as positions in the given file order, in the order of the enum
+     */
+    int[][] toPositions(List<Employee> employees) {
+        Map<Employee, Integer> positions = new IdentityHashMap<>(employees.size() * 2);
+        for (int i = 0; i < employees.size(); i++) {
+            positions.put(employees.get(i), i);
+        }
+
+        int[][] result = new int[EmployeeOrder.values().length][];
+        orders.forEach((order, sorted) -> {
+            int[] array = new int[sorted.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = positions.get(sorted.get(i));
+            }
+            result[order.ordinal()] = array;
+        });
+        return result;
+    }
+
+    /**
+     * Writes orders taken by {@link #toPositions} from indexes of the same name locale
+     */
+    @SneakyThrows
+    static void write(Path sidecar, long checksum, Locale locale, int count, int[][] positions) {
+        DurableFiles.replace(sidecar, outputStream -> {
+            CRC32 crc = new CRC32();
+            DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(outputStream, BUFFER_SIZE), crc));
+
+            output.writeInt(MAGIC);
+            output.writeLong(checksum);
+            output.writeUTF(locale.toLanguageTag());
+            output.writeInt(count);
+            output.writeInt(positions.length);
+
+            for (EmployeeOrder order : EmployeeOrder.values()) {
+                output.writeUTF(order.name());
+                for (int position : positions[order.ordinal()]) {
+                    output.writeInt(position);
+                }
+            }
+
+            output.writeLong(crc.getValue());
+            output.flush();
+        });
+    }
+}
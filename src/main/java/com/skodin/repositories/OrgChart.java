@@ -0,0 +1,254 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+
+import java.util.*;
+
+/**
+ * Reporting lines between the top-level records of a staff list.
+ * <p>
+ * Every employee reports to at most one manager, the one whose subordinates hold the very same record.
+ * Nodes carry nested interval labels: a node is under another one exactly when its interval lies inside
+ * the interval of the other, so transitive checks, cycle checks, depth and headcount take constant time.
+ * Labels are spread with gaps, a moved subtree is relabeled inside the gap of its new manager
+ * and the whole chart is relabeled only when the gap is too small.
+ * Subordinates stored as copies are not part of the chart.
+ */
+public class OrgChart {
+
+    private static final long STEP = 1L << 20;
+
+    private final Map<Employee, Node> nodes = new IdentityHashMap<>();
+    private final Node root = new Node(null);
+
+    {
+        root.post = Long.MAX_VALUE / 2;
+        root.depth = -1;
+    }
+
+    public OrgChart(Collection<Employee> employees) {
+        for (Employee employee : employees) {
+            nodes.putIfAbsent(employee, new Node(employee));
+        }
+
+        for (Employee employee : employees) {
+            linkSubordinates(nodes.get(employee));
+        }
+
+        for (Employee employee : employees) {
+            Node node = nodes.get(employee);
+            if (node.parent == null) {
+                link(root, node);
+            }
+        }
+
+        relabel();
+    }
+
+    /**
+     * @return true if the employee reports to the manager, directly or through other managers
+     */
+    public boolean isUnder(Employee employee, Employee manager) {
+        Node node = nodes.get(employee);
+        Node ancestor = nodes.get(manager);
+
+        return node != null && ancestor != null && ancestor.pre < node.pre && node.post < ancestor.post;
+    }
+
+    /**
+     * @return number of employees reporting to the manager, directly or through other managers
+     */
+    public int getHeadcount(Employee manager) {
+        Node node = nodes.get(manager);
+        return node == null ? 0 : node.size - 1;
+    }
+
+    /**
+     * @return 0 for an employee who reports to nobody
+     */
+    public int getDepth(Employee employee) {
+        Node node = nodes.get(employee);
+        return node == null ? 0 : node.depth;
+    }
+
+    public Optional<Employee> getManager(Employee employee) {
+        Node node = nodes.get(employee);
+        return node == null || node.parent == root ? Optional.empty() : Optional.of(node.parent.employee);
+    }
+
+    /**
+     * New records report to nobody unless a new manager holds them
+     */
+    void add(Collection<Employee> employees) {
+        List<Node> added = new ArrayList<>();
+        for (Employee employee : employees) {
+            if (!nodes.containsKey(employee)) {
+                Node node = new Node(employee);
+                nodes.put(employee, node);
+                added.add(node);
+            }
+        }
+
+        for (Node node : added) {
+            linkSubordinates(node);
+        }
+
+        for (Node node : added) {
+            if (node.parent == null) {
+                attach(root, node);
+            }
+        }
+    }
+
+    /**
+     * Direct reports of the removed employee start reporting to nobody
+     */
+    void remove(Employee employee) {
+        Node node = nodes.remove(employee);
+
+        if (node == null) {
+            return;
+        }
+
+        detach(node);
+        for (Node child : new ArrayList<>(node.children)) {
+            detach(child);
+            attach(root, child);
+        }
+    }
+
+    /**
+     * The employee leaves the previous manager, together with everybody who reports to them
+     *
+     * @throws IllegalArgumentException if the manager reports to the employee
+     */
+    void move(Employee employee, Manager manager) {
+        Node node = nodes.get(employee);
+        Node parent = nodes.get(manager);
+
+        if (node == null || parent == null) {
+            return;
+        }
+
+        if (node == parent || isUnder(manager, employee)) {
+            throw new IllegalArgumentException("The employee already manages the manager");
+        }
+
+        detach(node);
+        attach(parent, node);
+    }
+
+    private void linkSubordinates(Node node) {
+        if (!(node.employee instanceof Manager manager)) {
+            return;
+        }
+
+        for (Employee subordinate : manager.getSubordinates()) {
+            Node child = nodes.get(subordinate);
+            if (child != null && child.parent == null && child != node && !isAncestor(child, node)) {
+                link(node, child);
+            }
+        }
+    }
+
+    // only used while the chart is being linked, before labels exist
+    private static boolean isAncestor(Node node, Node descendant) {
+        for (Node current = descendant.parent; current != null; current = current.parent) {
+            if (current == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void link(Node parent, Node child) {
+        child.parent = parent;
+        parent.children.add(child);
+    }
+
+    private void detach(Node node) {
+        Node parent = node.parent;
+        parent.children.remove(node);
+        node.parent = null;
+
+        for (Node current = parent; current != null; current = current.parent) {
+            current.size -= node.size;
+        }
+    }
+
+    private void attach(Node parent, Node node) {
+        long start = parent.children.isEmpty() ? parent.pre : parent.children.get(parent.children.size() - 1).post;
+        link(parent, node);
+
+        for (Node current = parent; current != null; current = current.parent) {
+            current.size += node.size;
+        }
+
+        long step = Math.min(STEP, (parent.post - start) / (2L * node.size + 1));
+        if (step < 1) {
+            relabel();
+            return;
+        }
+
+        label(node, start, step, parent.depth + 1);
+    }
+
+    // the interval of the root stays open, so new top-level reporting lines never force a relabel
+    private void relabel() {
+        label(root, 0, STEP, -1);
+        root.post = Long.MAX_VALUE / 2;
+    }
+
+    /**
+     * Labels the subtree right after the start label, long reporting lines take no stack
+     *
+     * @return last used label
+     */
+    private static long label(Node node, long start, long step, int depth) {
+        Deque<Node> path = new ArrayDeque<>();
+        Deque<Iterator<Node>> children = new ArrayDeque<>();
+        long next = start + step;
+        node.pre = next;
+        node.depth = depth;
+        node.size = 1;
+        path.push(node);
+        children.push(node.children.iterator());
+
+        while (!path.isEmpty()) {
+            if (children.peek().hasNext()) {
+                Node child = children.peek().next();
+                next += step;
+                child.pre = next;
+                child.depth = path.peek().depth + 1;
+                child.size = 1;
+                path.push(child);
+                children.push(child.children.iterator());
+                continue;
+            }
+
+            Node labeled = path.pop();
+            children.pop();
+            next += step;
+            labeled.post = next;
+            if (!path.isEmpty()) {
+                path.peek().size += labeled.size;
+            }
+        }
+        return node.post;
+    }
+
+    private static class Node {
+        final Employee employee;
+        final List<Node> children = new ArrayList<>();
+        Node parent;
+        long pre;
+        long post;
+        int depth;
+        int size = 1;
+
+        Node(Employee employee) {
+            this.employee = employee;
+        }
+    }
+}
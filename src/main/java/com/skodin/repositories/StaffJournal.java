@@ -0,0 +1,315 @@
+package com.skodin.repositories;
+
+import com.skodin.util.DurableFiles;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of mutations made on top of the last written snapshot of a file.
+ * <p>
+ * The first line names the checksum of the snapshot, every next line is
+ * {@code crc32 TAB operation [TAB argument]...} with tabs, line breaks and backslashes escaped.
+ * A torn or corrupted tail is cut off when the journal is replayed.
+ * <p>
+ * A shared journal is read by processes that do not hold the lock of the file, so replaying it never changes it.
+ * A journal of another snapshot or a torn tail is only skipped then, it is repaired by the first append,
+ * which runs under the lock.
+ */
+@Log4j2
+public class StaffJournal implements Closeable {
+
+    private static final String HEADER = "SNAPSHOT";
+
+    @Getter
+    private final Path path;
+    private final boolean isShared;
+
+    private FileChannel channel;
+    private Writer writer;
+    private long size;
+    private int recordCount;
+    // checksum of the snapshot the journal has to be started on, set while a shared journal awaits its repair
+    private Long pendingReset;
+    private boolean isRepairPending;
+
+    public StaffJournal(Path path) {
+        this(path, false);
+    }
+
+    public StaffJournal(Path path, boolean isShared) {
+        this.path = path;
+        this.isShared = isShared;
+    }
+
+    public static Path of(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + ".journal");
+    }
+
+    /**
+     * @return true if the journal holds anything after its header, it is not replayed
+     */
+    @SneakyThrows
+    public static boolean hasRecords(Path path) {
+        if (!Files.exists(path)) {
+            return false;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            return header != null && Files.size(path) > getLineSize(header);
+        }
+    }
+
+    /**
+     * Hands every valid record to the consumer.
+     * A journal written on top of another snapshot is discarded
+     *
+     * @return number of replayed records
+     */
+    @SneakyThrows
+    public synchronized int replay(long snapshotChecksum, Consumer<JournalRecord> consumer) {
+        if (!Files.exists(path)) {
+            resetOrDefer(snapshotChecksum);
+            return 0;
+        }
+
+        List<JournalRecord> records = new ArrayList<>();
+        long validSize = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+
+            if (header == null || !header.equals(getHeader(snapshotChecksum))) {
+                log.warn("Message: journal %s does not belong to the current snapshot and is discarded"
+                        .formatted(path));
+                resetOrDefer(snapshotChecksum);
+                return 0;
+            }
+
+            validSize = getLineSize(header);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JournalRecord record = decode(line);
+                if (record == null) {
+                    log.warn("Message: journal %s has a corrupted tail, it is cut off".formatted(path));
+                    break;
+                }
+                records.add(record);
+                validSize += getLineSize(line);
+            }
+        }
+
+        size = validSize;
+        if (isShared) {
+            isRepairPending = true;
+        } else {
+            repair();
+        }
+
+        recordCount = records.size();
+        records.forEach(consumer);
+
+        log.info("%d journal records were replayed".formatted(records.size()));
+        return records.size();
+    }
+
+    @SneakyThrows
+    public synchronized void append(JournalRecord record) {
+        String line = encode(record);
+        getWriter().write(line);
+        size += getLineSize(line);
+        recordCount++;
+    }
+
+    /**
+     * Forces appended records to the device
+     */
+    @SneakyThrows
+    public synchronized void flush() {
+        if (writer != null) {
+            writer.flush();
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Starts an empty journal on top of the snapshot with the given checksum
+     */
+    @SneakyThrows
+    public synchronized void reset(long snapshotChecksum) {
+        close();
+        pendingReset = null;
+        isRepairPending = false;
+
+        String header = getHeader(snapshotChecksum);
+        DurableFiles.replace(path, outputStream ->
+                outputStream.write((header + "\n").getBytes(StandardCharsets.UTF_8)));
+        size = getLineSize(header);
+        recordCount = 0;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no records on top of the snapshot
+     */
+    public synchronized boolean isEmpty() {
+        return recordCount == 0;
+    }
+
+    /**
+     * Releases the journal, records appended since the last flush are dropped
+     */
+    public synchronized void discard() throws IOException {
+        if (channel != null) {
+            channel.close();
+            writer = null;
+            channel = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.flush();
+            channel.force(false);
+            writer.close();
+            writer = null;
+            channel = null;
+        }
+    }
+
+    private void resetOrDefer(long snapshotChecksum) {
+        if (isShared) {
+            pendingReset = snapshotChecksum;
+        } else {
+            reset(snapshotChecksum);
+        }
+    }
+
+    // cuts the tail off after the last valid record, or ends the record that lost only its line break
+    private void repair() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (channel.size() > size) {
+                channel.truncate(size);
+            } else if (channel.size() < size) {
+                channel.write(ByteBuffer.wrap(new byte[]{'\n'}), channel.size());
+            }
+        }
+        isRepairPending = false;
+    }
+
+    private Writer getWriter() throws IOException {
+        if (pendingReset != null) {
+            reset(pendingReset);
+        } else if (isRepairPending) {
+            repair();
+        }
+
+        if (writer == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+        }
+        return writer;
+    }
+
+    private static String getHeader(long snapshotChecksum) {
+        return HEADER + "\t" + Long.toHexString(snapshotChecksum);
+    }
+
+    private static long getLineSize(String line) {
+        return line.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    private static String encode(JournalRecord record) {
+        StringBuilder body = new StringBuilder(record.getOperation().name());
+        for (String argument : record.getArguments()) {
+            body.append('\t').append(escape(argument));
+        }
+        return Long.toHexString(checksum(body)) + "\t" + body + "\n";
+    }
+
+    private static JournalRecord decode(String line) {
+        int separator = line.indexOf('\t');
+        if (separator < 0) {
+            return null;
+        }
+
+        String body = line.substring(separator + 1);
+        if (!line.substring(0, separator).equals(Long.toHexString(checksum(body)))) {
+            return null;
+        }
+
+        String[] parts = body.split("\t", -1);
+        List<String> arguments = new ArrayList<>(parts.length - 1);
+        for (int i = 1; i < parts.length; i++) {
+            arguments.add(unescape(parts[i]));
+        }
+
+        try {
+            return new JournalRecord(JournalOperation.valueOf(parts[0]), arguments);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long checksum(CharSequence body) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(body.toString().getBytes(StandardCharsets.UTF_8));
+        return crc32.getValue();
+    }
+
+    private static String escape(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> result.append("\\\\");
+                case '\t' -> result.append("\\t");
+                case '\n' -> result.append("\\n");
+                case '\r' -> result.append("\\r");
+                default -> result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static String unescape(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                c = switch (text.charAt(++i)) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> text.charAt(i);
+                };
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,536 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.enums.EmployeeDate;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.entities.enums.EmployeeType;
+import com.skodin.entities.enums.NameMatch;
+import com.skodin.util.BinarySnapshot;
+import com.skodin.util.EmployeeReader;
+import com.skodin.util.EmployeeWriter;
+import com.skodin.util.FileFingerprint;
+import com.skodin.util.StaffFile;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Resident copy of an employees file.
+ * Records are kept in file order, lookups by id, full name and type go through hash indexes.
+ * Returned employees are shared with the repository and must not be modified by callers.
+ * <p>
+ * With the journal enabled every mutation is appended to the journal and the file itself
+ * is rewritten only by the compaction, once the journal outgrows the threshold.
+ * With file locking the journal is shared with other processes: it is compacted by the commit that outgrows
+ * the threshold, under the lock of the file, and never on close, when another process may be writing.
+ * <p>
+ * With order indexes enabled the records are also kept sorted in every order.
+ * <p>
+ * The orders and the binary snapshot are caches for the next load, they are written next to the file
+ * when it is loaded without them and when the repository is closed, never by a commit.
+ */
+@Log4j2
+public class StaffRepository implements StaffStore {
+
+    @Getter
+    private final Path path;
+    private final EmployeeReader employeeReader;
+    private final EmployeeWriter employeeWriter;
+    private final StorageOptions options;
+    private final Executor compactor;
+    private final StaffJournal journal;
+    private final GroupCommitter groupCommitter;
+
+    private final List<Employee> employees;
+    // ids are expected to be unique, but the format does not forbid duplicates
+    private final Map<UUID, List<Employee>> byId = new HashMap<>();
+    private final Map<String, List<Employee>> byFullName = new HashMap<>();
+    private final Map<EmployeeType, Set<Employee>> byType = new EnumMap<>(EmployeeType.class);
+    @Getter
+    private final OrgChart orgChart;
+    private OrderIndexes orderIndexes;
+    // built on the first search
+    private NameSearchIndex nameSearch;
+    // built on the first range query of the date
+    private final Map<EmployeeDate, DateRangeIndex> byDate = new EnumMap<>(EmployeeDate.class);
+
+    private volatile FileFingerprint fingerprint;
+    // set when a commit fails, the list may then hold changes the file does not have
+    private volatile boolean isFailed;
+    // set while the file is written by the repository, the fingerprint is updated once it is written
+    private volatile boolean isWriting;
+    // the file was written after the orders and the snapshot next to it
+    private boolean isCacheStale;
+    // the list was changed after the file was last written
+    private boolean isChangedSinceWrite;
+    private boolean isCompactionScheduled;
+
+    public StaffRepository(StaffFile staffFile, EmployeeReader employeeReader, EmployeeWriter employeeWriter,
+                           StorageOptions options, Executor compactor) {
+        this.path = staffFile.getPath();
+        this.employeeReader = employeeReader;
+        this.employeeWriter = employeeWriter;
+        this.options = options;
+        this.compactor = compactor;
+        this.employees = new ArrayList<>(staffFile.getEmployees());
+        this.fingerprint = staffFile.getFingerprint();
+
+        for (EmployeeType type : EmployeeType.values()) {
+            byType.put(type, Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+
+        employees.forEach(this::index);
+        orgChart = new OrgChart(employees);
+
+        if (options.isOrderIndexesEnabled()) {
+            Path sidecar = OrderIndexes.of(path);
+            Locale locale = options.getNameLocale();
+            orderIndexes = OrderIndexes.load(sidecar, fingerprint.getChecksum(), employees, locale).orElseGet(() -> {
+                OrderIndexes built = OrderIndexes.build(employees, locale);
+                OrderIndexes.write(sidecar, fingerprint.getChecksum(), locale, employees.size(),
+                        built.toPositions(employees));
+                return built;
+            });
+        }
+
+        if (options.isJournalEnabled()) {
+            journal = new StaffJournal(StaffJournal.of(path), options.isFileLockingEnabled());
+            journal.replay(fingerprint.getChecksum(), this::apply);
+        } else {
+            journal = null;
+        }
+
+        groupCommitter = new GroupCommitter(this::flush, options.getGroupCommitWindow());
+    }
+
+    public StaffRepository(StaffFile staffFile, EmployeeWriter employeeWriter) {
+        this(staffFile, new EmployeeReader(), employeeWriter, StorageOptions.DEFAULT, Runnable::run);
+    }
+
+    /**
+     * @return false if the file was changed by someone else after it was loaded or a commit failed,
+     * the file has to be loaded again then
+     */
+    @Override
+    public boolean isCurrent() {
+        return !isFailed && (isWriting || fingerprint.isCurrent(path));
+    }
+
+    @Override
+    public List<Employee> findAll() {
+        return new ArrayList<>(employees);
+    }
+
+    @Override
+    public synchronized List<Employee> findAll(EmployeeOrder order) {
+        if (orderIndexes != null) {
+            return new ArrayList<>(orderIndexes.get(order));
+        }
+
+        List<Employee> sorted = new ArrayList<>(employees);
+        sorted.sort(order.getComparator(options.getNameLocale()));
+        return sorted;
+    }
+
+    @Override
+    public Optional<Employee> findById(UUID id) {
+        List<Employee> list = byId.get(id);
+        return list == null ? Optional.empty() : Optional.of(list.get(0));
+    }
+
+    @Override
+    public List<Employee> findByFullName(String fullName) {
+        return new ArrayList<>(byFullName.getOrDefault(fullName, List.of()));
+    }
+
+    @Override
+    public List<Employee> findByType(EmployeeType type) {
+        return new ArrayList<>(byType.get(type));
+    }
+
+    @Override
+    public synchronized List<Employee> searchByFullName(String text, NameMatch match, boolean isCaseSensitive,
+                                                        int limit) {
+        if (nameSearch == null) {
+            nameSearch = new NameSearchIndex(byFullName.keySet());
+        }
+
+        List<Employee> result = new ArrayList<>();
+        for (String fullName : nameSearch.search(text, match, isCaseSensitive, limit)) {
+            for (Employee employee : byFullName.get(fullName)) {
+                if (result.size() == limit) {
+                    return result;
+                }
+                result.add(employee);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<Employee> findByDateRange(EmployeeDate field, LocalDate from, LocalDate to) {
+        return byDate.computeIfAbsent(field, date -> new DateRangeIndex(date, employees)).find(from, to);
+    }
+
+    /**
+     * @return true if a record equal to the employee is already stored
+     */
+    @Override
+    public boolean contains(Employee employee) {
+        List<Employee> list = byId.get(employee.getId());
+        return list != null && list.contains(employee);
+    }
+
+    @Override
+    public int size() {
+        return employees.size();
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Employee> newEmployees) {
+        applyAddAll(newEmployees);
+        record(JournalOperation.ADD, () -> employeeWriter.toXML(new ArrayList<>(newEmployees)));
+    }
+
+    @Override
+    public synchronized boolean removeById(UUID id) {
+        boolean isRemoved = applyRemoveById(id);
+        if (isRemoved) {
+            record(JournalOperation.REMOVE_BY_ID, id::toString);
+        }
+        return isRemoved;
+    }
+
+    @Override
+    public synchronized boolean removeByFullName(String fullName) {
+        boolean isRemoved = applyRemoveByFullName(fullName);
+        if (isRemoved) {
+            record(JournalOperation.REMOVE_BY_FULL_NAME, () -> fullName);
+        }
+        return isRemoved;
+    }
+
+    /**
+     * Replaces the employee with a copy of the given type.
+     * The replacement is appended to the end of the list, as it always was
+     */
+    @Override
+    public synchronized void changeType(Employee employee, EmployeeType type, String description) {
+        applyChangeType(employee, type, description);
+        record(JournalOperation.CHANGE_TYPE,
+                () -> employee.getId().toString(), type::name, () -> description == null ? "" : description);
+    }
+
+    /**
+     * @return true if the employee is the manager or the manager reports to the employee
+     */
+    @Override
+    public boolean manages(Employee employee, Manager manager) {
+        return employee == manager || orgChart.isUnder(manager, employee);
+    }
+
+    @Override
+    public synchronized int getHeadcount(Manager manager) {
+        return orgChart.getHeadcount(manager);
+    }
+
+    @Override
+    public synchronized int getDepth(Employee employee) {
+        return orgChart.getDepth(employee);
+    }
+
+    /**
+     * The employee leaves the previous manager.
+     * The subordinates lists are copied, so lists handed out earlier stay unchanged
+     */
+    @Override
+    public synchronized void assign(Manager manager, Employee employee) {
+        applyAssign(manager, employee);
+        record(JournalOperation.ASSIGN, () -> manager.getId().toString(), () -> employee.getId().toString());
+    }
+
+    @Override
+    public synchronized void sort(EmployeeOrder order) {
+        applySort(order);
+        record(JournalOperation.SORT, order::name);
+    }
+
+    /**
+     * Makes the mutations made so far durable.
+     * Without the journal the whole file is replaced, commits from concurrent callers share one write
+     */
+    @Override
+    public void commit() {
+        try {
+            groupCommitter.commit();
+        } catch (Exception e) {
+            isFailed = true;
+            log.warn("Message: commit to %s failed, the repository is no longer current".formatted(path));
+            throw e;
+        }
+    }
+
+    /**
+     * Folds the journal back into the file. A shared journal may only be folded under the lock of the file
+     *
+     * @return true if the file was rewritten
+     */
+    public synchronized boolean compact() {
+        isCompactionScheduled = false;
+
+        if (journal == null || journal.isEmpty() || isFailed) {
+            return false;
+        }
+
+        log.info("Attempt to compact journal " + journal.getPath());
+        save();
+        journal.reset(fingerprint.getChecksum());
+        return true;
+    }
+
+    /**
+     * Compacts the journal, releases it and brings the orders and the snapshot up to date with the file.
+     * A shared journal is released as it is, the service folds it under the lock of the file before.
+     * After a failed commit nothing is written, records that were not flushed are dropped
+     */
+    @Override
+    @SneakyThrows
+    public synchronized void close() {
+        if (journal != null && isFailed) {
+            journal.discard();
+        } else if (journal != null) {
+            if (!options.isFileLockingEnabled()) {
+                compact();
+            }
+            journal.close();
+        }
+
+        // the list has to be what the file holds, and the file what this repository wrote
+        if (isCacheStale && !isChangedSinceWrite && !isFailed && fingerprint.isCurrent(path)) {
+            writeBinarySnapshot(employees);
+            writeOrders(employees.size(), orderIndexes == null ? null : orderIndexes.toPositions(employees));
+            isCacheStale = false;
+        }
+    }
+
+    private void flush() {
+        // the list still holds the changes of the failed commit, its callers were told they are lost
+        if (isFailed) {
+            throw new IllegalStateException("An earlier commit to %s failed".formatted(path));
+        }
+
+        if (journal == null) {
+            List<Employee> snapshot;
+            synchronized (this) {
+                snapshot = new ArrayList<>(employees);
+                isChangedSinceWrite = false;
+            }
+
+            // commits run outside the lock of the service, readers meanwhile must not take the file for a foreign one
+            isWriting = true;
+            try {
+                FileFingerprint written = employeeWriter.writeXML(path, snapshot);
+                synchronized (this) {
+                    fingerprint = written;
+                    isCacheStale = true;
+                }
+            } finally {
+                isWriting = false;
+            }
+            return;
+        }
+
+        journal.flush();
+
+        synchronized (this) {
+            // a shared journal is compacted only while the commit holds the lock of the file
+            if (journal.size() > options.getJournalCompactionThreshold() && options.isFileLockingEnabled()) {
+                compact();
+            } else if (journal.size() > options.getJournalCompactionThreshold() && !isCompactionScheduled) {
+                isCompactionScheduled = true;
+                compactor.execute(this::compact);
+            }
+        }
+    }
+
+    private void save() {
+        fingerprint = employeeWriter.writeXML(path, employees);
+        isChangedSinceWrite = false;
+        isCacheStale = true;
+    }
+
+    private void writeBinarySnapshot(List<Employee> snapshot) {
+        if (options.isBinarySnapshotEnabled()) {
+            employeeWriter.writeSnapshot(BinarySnapshot.of(path), snapshot, fingerprint);
+        }
+    }
+
+    private void writeOrders(int count, int[][] orders) {
+        if (orders != null) {
+            OrderIndexes.write(OrderIndexes.of(path), fingerprint.getChecksum(), options.getNameLocale(),
+                    count, orders);
+        }
+    }
+
+    @SafeVarargs
+    private void record(JournalOperation operation, Supplier<String>... arguments) {
+        isChangedSinceWrite = true;
+
+        if (journal == null) {
+            return;
+        }
+
+        String[] values = new String[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            values[i] = arguments[i].get();
+        }
+
+        journal.append(new JournalRecord(operation, values));
+    }
+
+    private void apply(JournalRecord record) {
+        switch (record.getOperation()) {
+            case ADD -> applyAddAll(employeeReader.fromXML(record.getArgument(0)));
+            case REMOVE_BY_ID -> applyRemoveById(UUID.fromString(record.getArgument(0)));
+            case REMOVE_BY_FULL_NAME -> applyRemoveByFullName(record.getArgument(0));
+            case CHANGE_TYPE -> findById(UUID.fromString(record.getArgument(0))).ifPresent(employee ->
+                    applyChangeType(employee, EmployeeType.valueOf(record.getArgument(1)), record.getArgument(2)));
+            case ASSIGN -> findById(UUID.fromString(record.getArgument(0)))
+                    .filter(Manager.class::isInstance)
+                    .ifPresent(manager -> findById(UUID.fromString(record.getArgument(1)))
+                            .ifPresent(employee -> applyAssign((Manager) manager, employee)));
+            case SORT -> applySort(EmployeeOrder.valueOf(record.getArgument(0)));
+        }
+    }
+
+    private void applyAddAll(Collection<Employee> newEmployees) {
+        for (Employee employee : newEmployees) {
+            employees.add(employee);
+            index(employee);
+            if (orderIndexes != null) {
+                orderIndexes.add(employee);
+            }
+        }
+        orgChart.add(newEmployees);
+    }
+
+    private boolean applyRemoveById(UUID id) {
+        List<Employee> list = byId.get(id);
+
+        if (list == null) {
+            return false;
+        }
+
+        remove(new ArrayList<>(list));
+        return true;
+    }
+
+    private boolean applyRemoveByFullName(String fullName) {
+        List<Employee> list = byFullName.get(fullName);
+
+        if (list == null) {
+            return false;
+        }
+
+        remove(new ArrayList<>(list));
+        return true;
+    }
+
+    private void applyChangeType(Employee employee, EmployeeType type, String description) {
+        Employee replacement = StaffStore.copyAs(employee, type, description);
+        Optional<Employee> manager = orgChart.getManager(employee);
+
+        remove(List.of(employee));
+        applyAddAll(List.of(replacement));
+
+        // managers keep following the same person rather than the stale record
+        for (Employee candidate : byType.get(EmployeeType.MANAGER)) {
+            Manager current = (Manager) candidate;
+            if (current.getSubordinates().stream().anyMatch(e -> e == employee)) {
+                List<Employee> subordinates = new ArrayList<>(current.getSubordinates());
+                subordinates.replaceAll(e -> e == employee ? replacement : e);
+                current.setSubordinates(subordinates);
+            }
+        }
+
+        manager.ifPresent(e -> orgChart.move(replacement, (Manager) e));
+    }
+
+    private void applyAssign(Manager manager, Employee employee) {
+        Optional<Employee> previousManager = orgChart.getManager(employee);
+        orgChart.move(employee, manager);
+
+        previousManager.ifPresent(previous -> {
+            List<Employee> subordinates = new ArrayList<>(((Manager) previous).getSubordinates());
+            subordinates.removeIf(e -> e == employee);
+            ((Manager) previous).setSubordinates(subordinates);
+        });
+
+        List<Employee> subordinates = new ArrayList<>(manager.getSubordinates());
+        subordinates.add(employee);
+        manager.setSubordinates(subordinates);
+    }
+
+    private void remove(List<Employee> removed) {
+        Set<Employee> identities = Collections.newSetFromMap(new IdentityHashMap<>());
+        identities.addAll(removed);
+
+        employees.removeIf(identities::contains);
+        removed.forEach(this::unindex);
+        removed.forEach(orgChart::remove);
+        if (orderIndexes != null) {
+            removed.forEach(orderIndexes::remove);
+        }
+    }
+
+    // ties of the other orders follow the new file order
+    private void applySort(EmployeeOrder order) {
+        employees.sort(order.getComparator(options.getNameLocale()));
+        byDate.clear();
+        if (orderIndexes != null) {
+            orderIndexes = OrderIndexes.build(employees, options.getNameLocale());
+        }
+    }
+
+    private void index(Employee employee) {
+        byId.computeIfAbsent(employee.getId(), id -> new ArrayList<>(1)).add(employee);
+        List<Employee> sameName = byFullName.computeIfAbsent(employee.getFullName(), name -> new ArrayList<>(1));
+        if (sameName.isEmpty() && nameSearch != null) {
+            nameSearch.add(employee.getFullName());
+        }
+        sameName.add(employee);
+        byDate.values().forEach(index -> index.add(employee));
+        byType.get(EmployeeType.of(employee)).add(employee);
+    }
+
+    private void unindex(Employee employee) {
+        removeFromBucket(byId, employee.getId(), employee);
+        removeFromBucket(byFullName, employee.getFullName(), employee);
+        if (nameSearch != null && !byFullName.containsKey(employee.getFullName())) {
+            nameSearch.remove(employee.getFullName());
+        }
+        byType.get(EmployeeType.of(employee)).remove(employee);
+        byDate.values().forEach(index -> index.remove(employee));
+    }
+
+    private static <K> void removeFromBucket(Map<K, List<Employee>> index, K key, Employee employee) {
+        List<Employee> bucket = index.get(key);
+
+        if (bucket == null) {
+            return;
+        }
+
+        bucket.removeIf(e -> e == employee);
+
+        if (bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
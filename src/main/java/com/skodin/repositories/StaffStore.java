@@ -0,0 +1,145 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
+import com.skodin.entities.enums.EmployeeDate;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.entities.enums.EmployeeType;
+import com.skodin.entities.enums.NameMatch;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Operations the service performs on a single staff file, whatever the storage engine is
+ */
+public interface StaffStore {
+
+    Path getPath();
+
+    /**
+     * @return false if the file was changed by someone else after it was opened
+     */
+    boolean isCurrent();
+
+    List<Employee> findAll();
+
+    /**
+     * @return records in the order, equal records in file order; the file itself is not reordered
+     */
+    List<Employee> findAll(EmployeeOrder order);
+
+    Optional<Employee> findById(UUID id);
+
+    List<Employee> findByFullName(String fullName);
+
+    List<Employee> findByType(EmployeeType type);
+
+    /**
+     * @return at most limit records whose full name starts with or contains the text
+     */
+    List<Employee> searchByFullName(String text, NameMatch match, boolean isCaseSensitive, int limit);
+
+    /**
+     * @param from first date, null for no lower bound
+     * @param to   last date, null for no upper bound
+     * @return records dated between the bounds inclusive, by date, equal dates in file order
+     */
+    List<Employee> findByDateRange(EmployeeDate field, LocalDate from, LocalDate to);
+
+    /**
+     * @return true if a record equal to the employee is already stored
+     */
+    boolean contains(Employee employee);
+
+    int size();
+
+    /**
+     * @return true if the employee is the manager or the manager reports to the employee,
+     * directly or through other managers
+     */
+    boolean manages(Employee employee, Manager manager);
+
+    /**
+     * Walks the subordinates of the manager, stores keeping reporting lines answer from them
+     *
+     * @return number of employees reporting to the manager, directly or through other managers
+     */
+    default int getHeadcount(Manager manager) {
+        Set<Employee> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Employee> pending = new ArrayDeque<>(manager.getSubordinates());
+
+        while (!pending.isEmpty()) {
+            Employee employee = pending.pop();
+            if (employee != null && employee != manager && counted.add(employee)
+                && employee instanceof Manager subordinate) {
+                subordinate.getSubordinates().forEach(pending::push);
+            }
+        }
+        return counted.size();
+    }
+
+    /**
+     * Looks the managers up level by level, stores keeping reporting lines answer from them
+     *
+     * @return number of managers above the employee, 0 for an employee who reports to nobody
+     */
+    default int getDepth(Employee employee) {
+        List<Employee> managers = findByType(EmployeeType.MANAGER);
+        Set<Employee> above = Collections.newSetFromMap(new IdentityHashMap<>());
+        Employee current = employee;
+
+        while (true) {
+            Employee subordinate = current;
+            Optional<Employee> manager = managers.stream()
+                    .filter(e -> ((Manager) e).getSubordinates().contains(subordinate))
+                    .findFirst();
+            if (manager.isEmpty() || !above.add(manager.get())) {
+                return above.size();
+            }
+            current = manager.get();
+        }
+    }
+
+    void addAll(Collection<Employee> newEmployees);
+
+    boolean removeById(UUID id);
+
+    boolean removeByFullName(String fullName);
+
+    /**
+     * Replaces the employee with a copy of the given type.
+     * The replacement is appended to the end of the list
+     */
+    void changeType(Employee employee, EmployeeType type, String description);
+
+    /**
+     * Every employee reports to a single manager, the employee leaves the lists of the other managers
+     */
+    void assign(Manager manager, Employee employee);
+
+    void sort(EmployeeOrder order);
+
+    /**
+     * Makes the mutations made so far durable
+     *
+     * @throws IllegalStateException if an earlier commit failed, its mutations are never written
+     */
+    void commit();
+
+    void close();
+
+    static Employee copyAs(Employee employee, EmployeeType type, String description) {
+        return switch (type) {
+            case EMPLOYEE -> new Employee(
+                    employee.getId(),
+                    employee.getFullName(),
+                    employee.getBirthdayDate(),
+                    employee.getHiringDate());
+            case OTHER_EMPLOYEE -> new OtherEmployee(employee, description);
+            case MANAGER -> new Manager(employee, new ArrayList<>());
+        };
+    }
+}
@@ -0,0 +1,75 @@
+package com.skodin.repositories;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Duration;
+import java.util.Locale;
+
+@Getter
+@Builder(toBuilder = true)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StorageOptions {
+
+    public static final StorageOptions DEFAULT = StorageOptions.builder().build();
+
+    /**
+     * Mutations are appended to a journal next to the file instead of rewriting it
+     */
+    @Builder.Default
+    boolean journalEnabled = false;
+
+    /**
+     * Journal size in bytes after which it is folded back into the file
+     */
+    @Builder.Default
+    long journalCompactionThreshold = 1024 * 1024;
+
+    /**
+     * A binary snapshot is kept next to the file, so that it is not parsed again on start
+     */
+    @Builder.Default
+    boolean binarySnapshotEnabled = false;
+
+    /**
+     * Records are also kept sorted by every order, the orders are stored next to the file
+     */
+    @Builder.Default
+    boolean orderIndexesEnabled = false;
+
+    /**
+     * Records of files are kept in primitive columns rather than as objects, the journal and the order indexes
+     * are not used then
+     */
+    @Builder.Default
+    boolean columnarEnabled = false;
+
+    /**
+     * Writes lock a file next to the staff file and advance the version kept in it, so processes sharing
+     * the file do not lose each other's changes. The journal is shared by the processes then,
+     * it is changed and compacted only under the lock, the last time when the service is closed
+     */
+    @Builder.Default
+    boolean fileLockingEnabled = false;
+
+    /**
+     * Collation rules names are ordered by
+     */
+    @Builder.Default
+    Locale nameLocale = Locale.ROOT;
+
+    /**
+     * How long a commit waits for other commits to share the same durable write
+     */
+    @Builder.Default
+    Duration groupCommitWindow = Duration.ZERO;
+
+    /**
+     * Files larger than this many bytes are sorted on disk, keeping at most this many bytes of records
+     * in memory. Zero sorts every file in memory
+     */
+    @Builder.Default
+    long sortMemoryBudget = 0;
+}
@@ -1,22 +1,39 @@
 package com.skodin.services;
 
 import com.skodin.entities.Employee;
+import com.skodin.entities.enums.EmployeeOrder;
 import com.skodin.entities.enums.EmployeeType;
+import com.skodin.entities.enums.NameMatch;
 import com.skodin.exceptions.InvalidInputDataExceptions;
+import com.skodin.repositories.StorageOptions;
 import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 
 @Log4j2
 public class ApplicationService {
 
+    public static final Path DATA_PATH = Path.of("programFiles/data.xml");
+    // shared with the HTTP application, so both front ends store the list the same way.
+    // Options that keep files next to the data file are off unless turned on by a system property, see README
+    public static final StorageOptions STORAGE_OPTIONS = StorageOptions.builder()
+            .journalEnabled(Boolean.getBoolean("stafflist.journal"))
+            .fileLockingEnabled(Boolean.getBoolean("stafflist.fileLocking"))
+            .binarySnapshotEnabled(Boolean.getBoolean("stafflist.binarySnapshot"))
+            .orderIndexesEnabled(Boolean.getBoolean("stafflist.orderIndexes"))
+            .sortMemoryBudget(Runtime.getRuntime().maxMemory() / 4)
+            .nameLocale(Locale.getDefault())
+            .build();
+
     private final Scanner scanner = new Scanner(System.in);
-    private final EmployeeService employeeService = new EmployeeService();
-    private final Path PATH = Path.of("programFiles/data.xml");
+    private final EmployeeService employeeService = new EmployeeService(STORAGE_OPTIONS);
+    private final Path PATH = DATA_PATH;
+    private static final int SEARCH_LIMIT = 50;
 
     {
         if (!Files.exists(PATH)) {
@@ -29,10 +46,19 @@ public class ApplicationService {
     }
 
     public void showListOfAllEmployees() {
+        showListOfAllEmployees(null);
+    }
+
+    /**
+     * @param order null for file order
+     */
+    public void showListOfAllEmployees(EmployeeOrder order) {
         List<Employee> employees;
 
         try {
-            employees = employeeService.getAllEmployees(PATH);
+            employees = order == null
+                    ? employeeService.getAllEmployees(PATH)
+                    : employeeService.getAllEmployees(PATH, order);
         } catch (InvalidInputDataExceptions e) {
             write(e.getMessage());
             return;
@@ -50,6 +76,12 @@ public class ApplicationService {
         String source = requestDate("Enter the path to the employee file:");
 
         try {
+            if (EmployeeService.isBatchSource(source)) {
+                write("");
+                employeeService.importEmployers(source, PATH).forEach(result -> write(result.toString()));
+                return;
+            }
+
             boolean isSuccessfully = employeeService.addNewEmployers(Path.of(source), PATH);
             write("");
             write("Employee has been added",
@@ -113,28 +145,41 @@ public class ApplicationService {
 
     }
 
-    public void processSortListByFullName() {
+    public void processSearchEmployees() {
+        String text = requestDate("Enter the full name or its part:");
+        String match = requestDate("""
+                Enter the type of match
+                Available:
+                %s""".formatted(NameMatch.getPretty()));
+        boolean isCaseSensitive = requestDate("Match the case? (y/n)").trim().equalsIgnoreCase("y");
+
+        List<Employee> employees;
         try {
-            employeeService.sortByFullName(PATH);
+            employees = employeeService.searchEmployees(PATH, text, match, isCaseSensitive, SEARCH_LIMIT);
         } catch (InvalidInputDataExceptions e) {
             write(e.getMessage());
             return;
         }
 
         write("");
-        showListOfAllEmployees();
+        if (employees.isEmpty()) {
+            write("No employees found");
+            return;
+        }
+
+        write(employees);
+    }
+
+    public void processSortListByFullName() {
+        showListOfAllEmployees(EmployeeOrder.FULL_NAME);
     }
 
     public void processSortListByHiringDate() {
-        try {
-            employeeService.sortByHiringDate(PATH);
-        } catch (InvalidInputDataExceptions e) {
-            write(e.getMessage());
-            return;
-        }
+        showListOfAllEmployees(EmployeeOrder.HIRING_DATE);
+    }
 
-        write("");
-        showListOfAllEmployees();
+    public void close() {
+        employeeService.close();
     }
 
     private String requestDate(String message) {
@@ -0,0 +1,56 @@
+package com.skodin.services;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.services.enums.EmployeeEventType;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Change made to a file, published once the change is committed.
+ * Its records are copies taken when the change was made, later changes do not show through them
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class EmployeeEvent {
+    EmployeeEventType type;
+    Path source;
+    // added or removed records, the replacement of a changed type, the assigned employee
+    List<Employee> employees;
+    // null unless the employee was assigned
+    Manager manager;
+    // null unless the file was reordered
+    EmployeeOrder order;
+
+    static EmployeeEvent added(Path source, List<Employee> employees) {
+        return new EmployeeEvent(EmployeeEventType.ADDED, source, List.copyOf(employees), null, null);
+    }
+
+    static EmployeeEvent removed(Path source, List<Employee> employees) {
+        return new EmployeeEvent(EmployeeEventType.REMOVED, source, List.copyOf(employees), null, null);
+    }
+
+    static EmployeeEvent typeChanged(Path source, Employee replacement) {
+        return new EmployeeEvent(EmployeeEventType.TYPE_CHANGED, source, List.of(replacement), null, null);
+    }
+
+    static EmployeeEvent assigned(Path source, Employee employee, Manager manager) {
+        return new EmployeeEvent(EmployeeEventType.ASSIGNED, source, List.of(employee), manager, null);
+    }
+
+    static EmployeeEvent reordered(Path source, EmployeeOrder order) {
+        return new EmployeeEvent(EmployeeEventType.REORDERED, source, List.of(), null, order);
+    }
+
+    @Override
+    public String toString() {
+        return "%s %s : %d employees".formatted(type, source, employees.size());
+    }
+}
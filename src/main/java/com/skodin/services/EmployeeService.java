@@ -3,25 +3,111 @@ package com.skodin.services;
 import com.skodin.entities.Employee;
 import com.skodin.entities.Manager;
 import com.skodin.entities.OtherEmployee;
+import com.skodin.entities.enums.EmployeeDate;
+import com.skodin.entities.enums.EmployeeOrder;
 import com.skodin.entities.enums.EmployeeType;
+import com.skodin.entities.enums.NameMatch;
 import com.skodin.exceptions.*;
+import com.skodin.repositories.ColumnarStaffStore;
+import com.skodin.repositories.MappedStaffStore;
+import com.skodin.repositories.StaffJournal;
+import com.skodin.repositories.StaffRepository;
+import com.skodin.repositories.StaffStore;
+import com.skodin.repositories.StorageOptions;
+import com.skodin.services.enums.ImportStatus;
+import lombok.Getter;
 import lombok.SneakyThrows;
+import com.skodin.util.BinarySnapshot;
 import com.skodin.util.EmployeeReader;
+import com.skodin.util.EmployeeSorter;
 import com.skodin.util.EmployeeWriter;
+import com.skodin.util.StaffFile;
+import com.skodin.util.StaffFileLock;
 import lombok.extern.log4j.Log4j2;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.UUID;
+import java.io.IOException;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+/**
+ * Operations on staff files, safe to call from many threads.
+ * <p>
+ * Every file has its own lock. Reads run without taking it and are repeated under the read lock
+ * only if a write to the same file ran meanwhile. Writes to a file, from the checks to the change of the loaded list,
+ * run one at a time under the write lock, writes to different files run in parallel. The commit runs once the lock
+ * is released, so writes to the file that follow can share its durable write; events are published after it.
+ * Reads wait until every write they would see has ended its commit, so they never see a change that is not durable.
+ * A change whose commit failed is not written by the commits that follow either, they fail as well.
+ * <p>
+ * With file locking enabled, writes also hold the lock of the {@link StaffFileLock} shared with other processes,
+ * the commit then runs under it, before the version of the file is advanced.
+ * A file whose version was advanced by another process since it was loaded is loaded again before it is read
+ * or changed.
+ * <p>
+ * Inside {@link #batch} operations on the file of the batch only change the loaded list,
+ * it is written once, after the last of them. Inside a transaction, see {@link #begin},
+ * they change a private copy of the list, written by the commit.
+ * <p>
+ * Every committed change is published as an {@link EmployeeEvent}, see {@link #getEvents}.
+ */
 @Log4j2
 public class EmployeeService {
 
+    private static final String GLOB_CHARACTERS = "*?[{";
+
     private final EmployeeReader employeeReader = new EmployeeReader();
     private final EmployeeWriter employeeWriter = new EmployeeWriter();
+    private final Map<Path, StaffStore> repositories = new ConcurrentHashMap<>();
+    // kept for the life of the service, a lock must outlive the repositories loaded under it
+    private final Map<Path, StampedLock> locks = new ConcurrentHashMap<>();
+    private final Map<Path, StaffFileLock> fileLocks = new ConcurrentHashMap<>();
+    // version of the file every cached repository was loaded at
+    private final Map<Path, Long> versions = new ConcurrentHashMap<>();
+    // file the batch of the current thread runs on
+    private final ThreadLocal<Path> batches = new ThreadLocal<>();
+    private final ThreadLocal<StaffTransaction> transactions = new ThreadLocal<>();
+    // stores and events of the write of the current thread, committed once the lock of the file is released
+    private final ThreadLocal<PendingWrite> pendingWrites = new ThreadLocal<>();
+    // subscribers are notified on threads of their own, a slow one does not hold up the common pool
+    private final ExecutorService notifier = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "event-notifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final SubmissionPublisher<EmployeeEvent> publisher =
+            new SubmissionPublisher<>(notifier, Flow.defaultBufferSize());
+    // number of writes made to every file by this service, transactions are checked against it
+    private final Map<Path, Long> generations = new ConcurrentHashMap<>();
+    // generation of the last write of every file whose commit ended and whose events were offered,
+    // commits end out of order; reads wait for it to reach the generation they would see
+    private final Map<Path, Long> offeredGenerations = new ConcurrentHashMap<>();
+    private final StorageOptions options;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public EmployeeService() {
+        this(StorageOptions.DEFAULT);
+    }
+
+    public EmployeeService(StorageOptions options) {
+        this.options = options;
+    }
 
     /**
      * @throws PathIsNullException       if path is null
@@ -32,7 +118,102 @@ public class EmployeeService {
     @SneakyThrows
     public List<Employee> getAllEmployees(Path source) {
         try {
-            return employeeReader.readXML(source);
+            return read(source, repository -> detach(repository.findAll()));
+        } catch (FileIsEmptyException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Lists the records in the order without reordering the file
+     *
+     * @throws PathIsNullException       if path is null
+     * @throws FileNotFoundException     if file not found
+     * @throws DamagedFileException      if file is not .xml or damaged
+     * @throws IncorrectContentException if file has incorrect tag
+     */
+    @SneakyThrows
+    public List<Employee> getAllEmployees(Path source, EmployeeOrder order) {
+        try {
+            return read(source, repository -> detach(repository.findAll(order)));
+        } catch (FileIsEmptyException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * @param match           PREFIX or SUBSTRING
+     * @param isCaseSensitive false to ignore the case of the text and of the names
+     * @return at most limit employees whose full name starts with or contains the text
+     * @throws InvalidInputDataExceptions if text is blank or there is no such match
+     * @throws PathIsNullException        if path is null
+     * @throws FileNotFoundException      if file not found
+     * @throws DamagedFileException       if file is not .xml or damaged
+     * @throws IncorrectContentException  if file has incorrect tag
+     */
+    @SneakyThrows
+    public List<Employee> searchEmployees(Path source, String text, String match,
+                                          boolean isCaseSensitive, int limit) {
+
+        if (text == null || text.isBlank()) {
+            String message = "Search text cannot be empty";
+            log.warn("Message: " + message);
+            throw new InvalidInputDataExceptions(message);
+        }
+
+        NameMatch nameMatch;
+        try {
+            nameMatch = NameMatch.valueOf(match.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputDataExceptions("No such type of match");
+        }
+
+        try {
+            return read(source, repository ->
+                    detach(repository.searchByFullName(text, nameMatch, isCaseSensitive, limit)));
+        } catch (FileIsEmptyException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * @param from first hiring date, null for no lower bound
+     * @param to   last hiring date, null for no upper bound
+     * @return employees hired between the dates inclusive, by hiring date
+     * @throws InvalidInputDataExceptions if from is after to
+     * @throws PathIsNullException        if path is null
+     * @throws FileNotFoundException      if file not found
+     * @throws DamagedFileException       if file is not .xml or damaged
+     * @throws IncorrectContentException  if file has incorrect tag
+     */
+    public List<Employee> findByHiringDate(Path source, LocalDate from, LocalDate to) {
+        return findByDateRange(source, EmployeeDate.HIRING_DATE, from, to);
+    }
+
+    /**
+     * @param from first birthday date, null for no lower bound
+     * @param to   last birthday date, null for no upper bound
+     * @return employees born between the dates inclusive, by birthday date
+     * @throws InvalidInputDataExceptions if from is after to
+     * @throws PathIsNullException        if path is null
+     * @throws FileNotFoundException      if file not found
+     * @throws DamagedFileException       if file is not .xml or damaged
+     * @throws IncorrectContentException  if file has incorrect tag
+     */
+    public List<Employee> findByBirthdayDate(Path source, LocalDate from, LocalDate to) {
+        return findByDateRange(source, EmployeeDate.BIRTHDAY_DATE, from, to);
+    }
+
+    @SneakyThrows
+    private List<Employee> findByDateRange(Path source, EmployeeDate field, LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            String message = "Start date %s is after end date %s".formatted(from, to);
+            log.warn("Message: " + message);
+            throw new InvalidInputDataExceptions(message);
+        }
+
+        try {
+            return read(source, repository -> detach(repository.findByDateRange(field, from, to)));
         } catch (FileIsEmptyException e) {
             return new ArrayList<>();
         }
@@ -48,32 +229,324 @@ public class EmployeeService {
     @SneakyThrows
     public boolean addNewEmployers(Path source, Path target) {
 
-        List<Employee> sourceList = employeeReader.readXML(source);
+        employeeReader.checkPath(source);
+        Objects.requireNonNull(target);
 
-        if (!Files.exists(target)) {
-            Files.createFile(target);
+        return write(target, () -> {
+            // an empty target cannot hold duplicates, it is not touched until the source turns out to be valid
+            StaffStore existing = isTargetEmpty(target) ? null : getRepository(target);
+
+            List<Employee> accepted = new ArrayList<>();
+            boolean hasNoDuplicates = employeeReader.read(source, employee -> {
+                if (existing != null && existing.contains(employee)) {
+                    return false;
+                }
+                accepted.add(employee);
+                return true;
+            });
+
+            if (!hasNoDuplicates) {
+                return false;
+            }
+
+            StaffStore repository = existing == null ? getTargetRepository(target) : existing;
+
+            repository.addAll(accepted);
+
+            commit(repository);
+            publish(EmployeeEvent.added(target, detach(accepted)));
+            return true;
+        });
+    }
+
+    /**
+     * Adds the employees unless one of them is already in the target
+     *
+     * @throws PathIsNullException       if target path is null
+     * @throws DamagedFileException      if target file is not .xml or damaged
+     * @throws IncorrectContentException if target file has incorrect tag
+     */
+    @SneakyThrows
+    public boolean addEmployers(List<Employee> employees, Path target) {
+
+        return write(target, () -> {
+            StaffStore existing = isTargetEmpty(target) ? null : getRepository(target);
+
+            if (existing != null && employees.stream().anyMatch(existing::contains)) {
+                return false;
+            }
+
+            StaffStore repository = existing == null ? getTargetRepository(target) : existing;
+
+            // the caller keeps its own objects
+            repository.addAll(detach(employees));
+
+            commit(repository);
+            publish(EmployeeEvent.added(target, detach(employees)));
+            return true;
+        });
+    }
+
+    /**
+     * Runs the operations with the file loaded once and written once, after the last operation.
+     * The file is locked for the whole batch, operations on other files are not batched.
+     * Operations check their input before they change anything, so one that throws leaves the list as it was;
+     * if the operations throw out of the batch, the changes made before are written all the same
+     * and the exception is thrown once they are. Events of the batch are published after a successful write
+     *
+     * @throws PathIsNullException if path is null
+     */
+    public void batch(Path source, Runnable operations) {
+
+        // a transaction on the file already keeps the changes for a single write
+        if (getTransaction(source) != null) {
+            operations.run();
+            return;
         }
 
-        if (Files.size(target) == 0L) {
-            Files.writeString(target, """
-                    <?xml version="1.0" encoding="UTF-8" standalone="no"?>
-                    <employees>
-                    </employees>
-                    """);
+        // events of the batch go to its write, which publishes them once it is committed
+        RuntimeException failure = write(source, () -> {
+            Path key = getKey(source);
+            batches.set(key);
+            try {
+                operations.run();
+                return null;
+            } catch (RuntimeException e) {
+                return e;
+            } finally {
+                batches.remove();
+
+                // nothing was loaded if every operation failed
+                StaffStore repository = repositories.get(key);
+                if (repository != null) {
+                    pendingWrites.get().getStores().add(repository);
+                }
+            }
+        });
+
+        if (failure != null) {
+            throw failure;
         }
+    }
 
-        List<Employee> targetList = employeeReader.readXML(target);
+    /**
+     * Begins a transaction on the file for the current thread. Until it is committed or rolled back,
+     * operations of the thread on the file change a private copy of the list and the file is not written
+     *
+     * @throws PathIsNullException         if path is null
+     * @throws FileNotFoundException       if file not found
+     * @throws DamagedFileException        if file is not .xml or damaged
+     * @throws IncorrectContentException   if file has incorrect tag
+     * @throws InvalidInputDataExceptions  if file is a store, stores are changed in place
+     * @throws IllegalStateException       if the thread already has a transaction
+     */
+    public StaffTransaction begin(Path source) {
 
-        for (Employee employee : sourceList) {
-            if (targetList.contains(employee)) {
-                return false;
+        if (transactions.get() != null) {
+            throw new IllegalStateException("The thread already has a transaction");
+        }
+
+        if (MappedStaffStore.isStore(getKey(source))) {
+            String message = "Transactions are not supported for stores";
+            log.warn("Message: " + message);
+            throw new InvalidInputDataExceptions(message);
+        }
+
+        Path key = getKey(source);
+        StaffTransaction transaction;
+        try {
+            transaction = read(source, repository -> new StaffTransaction(this, key, repository,
+                    generations.getOrDefault(key, 0L), copyOf(source, repository.findAll()), true));
+        } catch (FileIsEmptyException e) {
+            transaction = new StaffTransaction(this, key, null, generations.getOrDefault(key, 0L),
+                    copyOf(source, List.of()), true);
+        }
+
+        transactions.set(transaction);
+        return transaction;
+    }
+
+    /**
+     * The copy is a document round trip, so it shares no objects with the loaded list.
+     * It keeps no journal and no order indexes, they belong to the loaded list
+     */
+    private StaffStore copyOf(Path source, List<Employee> employees) {
+        StorageOptions copyOptions = options.toBuilder()
+                .journalEnabled(false)
+                .orderIndexesEnabled(false)
+                .build();
+
+        StaffFile staffFile = employeeReader.fromXML(source, employeeWriter.toXML(employees));
+        return new StaffRepository(staffFile, employeeReader, employeeWriter, copyOptions, compactor);
+    }
+
+    /**
+     * The copy replaces the file in one write, unless the file was written after the transaction began
+     */
+    void commit(StaffTransaction transaction) {
+        end(transaction);
+
+        write(transaction.getKey(), () -> {
+            Path key = transaction.getKey();
+            StaffStore origin = transaction.getOrigin();
+            StaffStore cached = repositories.get(key);
+
+            boolean isStale = generations.getOrDefault(key, 0L) != transaction.getGeneration()
+                              || (origin == null
+                                  ? !isTargetEmpty(key)
+                                  : cached != origin || !origin.isCurrent() || !isLatest(key));
+            if (isStale) {
+                String message = "The file was changed after the transaction began";
+                log.warn("Message: " + message);
+                throw new StaleTransactionException(message);
+            }
+
+            // a journal is folded first, otherwise it would be folded over the copy later
+            if (cached != null) {
+                repositories.remove(key);
+                cached.close();
             }
+            transaction.getWorkingCopy().commit();
+            pendingWrites.get().getEvents().addAll(transaction.getEvents());
+            return null;
+        });
+    }
+
+    void rollback(StaffTransaction transaction) {
+        end(transaction);
+    }
+
+    private void end(StaffTransaction transaction) {
+        if (transactions.get() != transaction) {
+            throw new IllegalStateException("The transaction is not active in this thread");
         }
 
-        targetList.addAll(sourceList);
+        transactions.remove();
+        transaction.end();
+    }
 
-        employeeWriter.writeXML(target, targetList);
-        return true;
+    /**
+     * Committed changes of every file, in commit order of a file. Every subscriber has its own buffer
+     * of {@link Flow#defaultBufferSize()} events and requests them at its own pace.
+     * Writes never wait for subscribers, events that do not fit into the buffer are dropped for that subscriber
+     */
+    public Flow.Publisher<EmployeeEvent> getEvents() {
+        return publisher;
+    }
+
+    /**
+     * @return true if the sources name a directory or a glob pattern rather than a single file
+     */
+    public static boolean isBatchSource(String sources) {
+        if (sources == null) {
+            return false;
+        }
+
+        if (sources.chars().anyMatch(c -> GLOB_CHARACTERS.indexOf(c) >= 0)) {
+            return true;
+        }
+
+        try {
+            return Files.isDirectory(Path.of(sources));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Imports every .xml file of a directory, or every file matching a glob in its file name part.
+     * The files are parsed in parallel, a file is skipped if one of its records is already in the target
+     * or in a file imported before it. Accepted records are committed to the target in a single write
+     *
+     * @return outcome for every file, in file name order
+     * @throws PathIsNullException       if target path is null
+     * @throws FileNotFoundException     if no file matches the sources
+     * @throws DamagedFileException      if target file is not .xml or damaged
+     * @throws IncorrectContentException if target file has incorrect tag
+     */
+    @SneakyThrows
+    public List<ImportResult> importEmployers(String sources, Path target) {
+
+        if (target == null) {
+            employeeReader.open(null);
+        }
+
+        List<Path> files = resolveSources(sources);
+        List<Future<List<Employee>>> parsed = new ArrayList<>(files.size());
+
+        int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "import");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            // the parsers are not shared between threads, the string pool is
+            for (Path file : files) {
+                parsed.add(executor.submit(() -> new EmployeeReader(employeeReader.getStringPool()).readXML(file)));
+            }
+
+            // the target is locked for the merge only, once every file is parsed
+            List<List<Employee>> employeesOfFiles = new ArrayList<>(files.size());
+            List<String> errors = new ArrayList<>(files.size());
+            for (Future<List<Employee>> future : parsed) {
+                try {
+                    employeesOfFiles.add(future.get());
+                    errors.add(null);
+                } catch (ExecutionException e) {
+                    employeesOfFiles.add(null);
+                    errors.add(e.getCause().getMessage());
+                }
+            }
+
+            return write(target, () -> {
+                StaffStore repository = getTargetRepository(target);
+                Map<UUID, List<Employee>> accepted = new HashMap<>();
+                List<Employee> newEmployees = new ArrayList<>();
+                List<ImportResult> results = new ArrayList<>(files.size());
+
+                for (int i = 0; i < files.size(); i++) {
+                    if (errors.get(i) != null) {
+                        results.add(new ImportResult(files.get(i), ImportStatus.ERROR, 0, errors.get(i)));
+                        continue;
+                    }
+
+                    List<Employee> employees = employeesOfFiles.get(i);
+
+                    Employee duplicate = employees.stream()
+                            .filter(employee -> repository.contains(employee)
+                                                || accepted.getOrDefault(employee.getId(), List.of())
+                                                        .contains(employee))
+                            .findFirst()
+                            .orElse(null);
+
+                    if (duplicate != null) {
+                        results.add(new ImportResult(files.get(i), ImportStatus.DUPLICATE, 0,
+                                "employee %s already exists".formatted(duplicate.getId())));
+                        continue;
+                    }
+
+                    for (Employee employee : employees) {
+                        accepted.computeIfAbsent(employee.getId(), id -> new ArrayList<>(1)).add(employee);
+                    }
+                    newEmployees.addAll(employees);
+                    results.add(new ImportResult(files.get(i), ImportStatus.SUCCESS, employees.size(), null));
+                }
+
+                if (!newEmployees.isEmpty()) {
+                    repository.addAll(newEmployees);
+                    commit(repository);
+                    publish(EmployeeEvent.added(target, detach(newEmployees)));
+                }
+
+                log.info("%d files were imported into %s, string pool: %s".formatted(files.size(), target,
+                        employeeReader.getStringPool()));
+                return results;
+            });
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
 
@@ -89,19 +562,19 @@ public class EmployeeService {
 
         UUID uuid = getUUIDFromStringOrThrowException(id);
 
-        employeeReader.pathValidate(source);
-
-        List<Employee> sourceList = employeeReader.readXML(source);
-
-        boolean isRemoved = sourceList.removeIf(employee -> employee.getId().equals(uuid));
+        return write(source, () -> {
+            StaffStore repository = getRepository(source);
+            Optional<Employee> removed = repository.findById(uuid);
 
-        if (!isRemoved) {
-            return false;
-        }
+            if (!repository.removeById(uuid)) {
+                return false;
+            }
 
-        employeeWriter.writeXML(source, sourceList);
+            commit(repository);
+            publish(EmployeeEvent.removed(source, detach(removed.stream().toList())));
 
-        return true;
+            return true;
+        });
     }
 
 
@@ -114,19 +587,19 @@ public class EmployeeService {
      */
     public boolean removeEmployerByFullName(Path source, String fullName) {
 
-        employeeReader.pathValidate(source);
-
-        List<Employee> sourceList = employeeReader.readXML(source);
-
-        boolean isRemoved = sourceList.removeIf(employee -> employee.getFullName().equals(fullName));
+        return write(source, () -> {
+            StaffStore repository = getRepository(source);
+            List<Employee> removed = repository.findByFullName(fullName);
 
-        if (!isRemoved) {
-            return false;
-        }
+            if (!repository.removeByFullName(fullName)) {
+                return false;
+            }
 
-        employeeWriter.writeXML(source, sourceList);
+            commit(repository);
+            publish(EmployeeEvent.removed(source, detach(removed)));
 
-        return true;
+            return true;
+        });
     }
 
 
@@ -150,51 +623,39 @@ public class EmployeeService {
 
         UUID uuid = getUUIDFromStringOrThrowException(id);
 
-        employeeReader.pathValidate(source);
-
-        List<Employee> sourceList = employeeReader.readXML(source);
+        return write(source, () -> {
+            StaffStore repository = getRepository(source);
 
-        Employee employee = sourceList.stream().filter(e -> e.getId().equals(uuid)).findFirst().orElse(null);
+            Employee employee = repository.findById(uuid).orElse(null);
 
-        if (employee == null) {
-            return false;
-        }
+            if (employee == null) {
+                return false;
+            }
 
-        switch (employeeType) {
-            case EMPLOYEE -> {
-                if (employee.getClass().equals(Employee.class)) {
-                    throw new InvalidTypeException("Employee type is already Employee");
+            switch (employeeType) {
+                case EMPLOYEE -> {
+                    if (EmployeeType.of(employee) == EmployeeType.EMPLOYEE) {
+                        throw new InvalidTypeException("Employee type is already Employee");
+                    }
                 }
-
-                sourceList.remove(employee);
-                sourceList.add(new Employee(
-                        employee.getId(),
-                        employee.getFullName(),
-                        employee.getBirthdayDate(),
-                        employee.getHiringDate()
-                ));
-
-            }
-            case OTHER_EMPLOYEE -> {
-                if (employee.getClass().equals(OtherEmployee.class)) {
-                    throw new InvalidTypeException("Employee type is already OtherEmployee");
+                case OTHER_EMPLOYEE -> {
+                    if (EmployeeType.of(employee) == EmployeeType.OTHER_EMPLOYEE) {
+                        throw new InvalidTypeException("Employee type is already OtherEmployee");
+                    }
                 }
-                sourceList.remove(employee);
-                sourceList.add(new OtherEmployee(
-                        employee, description
-                ));
-            }
-            case MANAGER -> {
-                if (employee.getClass().equals(Manager.class)) {
-                    throw new InvalidTypeException("Employee type is already Manager");
+                case MANAGER -> {
+                    if (EmployeeType.of(employee) == EmployeeType.MANAGER) {
+                        throw new InvalidTypeException("Employee type is already Manager");
+                    }
                 }
-                sourceList.remove(employee);
-                sourceList.add(new Manager(employee, new ArrayList<>()));
             }
 
-        }
-        employeeWriter.writeXML(source, sourceList);
-        return true;
+            repository.changeType(employee, employeeType, description);
+            commit(repository);
+            // equal to the stored replacement, which the repository does not hand out
+            publish(EmployeeEvent.typeChanged(source, StaffStore.copyAs(employee, employeeType, description)));
+            return true;
+        });
     }
 
 
@@ -206,35 +667,85 @@ public class EmployeeService {
      * @throws IncorrectContentException if file has incorrect tag
      * @throws InvalidIdException        if employee with such id is not found
      * @throws InvalidTypeException      if id is invalid or managerById type is not a manager
+     * @throws InvalidInputDataExceptions if the employee already manages the manager
      */
     public boolean assignEmployeeToManager(Path source, String managerId, String employeeId) {
 
         UUID managerUUIDId = getUUIDFromStringOrThrowException(managerId);
         UUID employeeUUIDId = getUUIDFromStringOrThrowException(employeeId);
 
-        employeeReader.pathValidate(source);
+        return write(source, () -> {
+            StaffStore repository = getRepository(source);
 
-        List<Employee> list = employeeReader.readXML(source);
+            Employee manager = repository.findById(managerUUIDId)
+                    .orElseThrow(() -> new InvalidIdException("The manager does not exist"));
+            Employee employee = repository.findById(employeeUUIDId)
+                    .orElseThrow(() -> new InvalidIdException("The employee does not exist"));
 
-        Employee manager = list.stream().filter(e -> e.getId().equals(managerUUIDId))
-                .findFirst().orElseThrow(() -> new InvalidIdException("The manager does not exist"));
-        Employee employee = list.stream().filter(e -> e.getId().equals(employeeUUIDId))
-                .findFirst().orElseThrow(() -> new InvalidIdException("The employee does not exist"));
+            if (!(manager instanceof Manager)) {
+                throw new InvalidTypeException("Employee type is not a manager");
+            }
 
-        if (!manager.getClass().equals(Manager.class)) {
-            throw new InvalidTypeException("Employee type is not a manager");
-        }
+            if (((Manager) manager).getSubordinates().contains(employee)) {
+                return false;
+            }
 
-        List<Employee> subordinates = ((Manager) manager).getSubordinates();
+            if (repository.manages(employee, (Manager) manager)) {
+                String message = "The employee already manages the manager";
+                log.warn("Message: " + message);
+                throw new InvalidInputDataExceptions(message);
+            }
+            repository.assign((Manager) manager, employee);
 
-        if (subordinates.contains(employee)) {
-            return false;
-        }
-        subordinates.add(employee);
+            commit(repository);
+            // the manager in the copy has the copy of the employee among its subordinates
+            List<Employee> copies = detach(List.of(employee, manager));
+            publish(EmployeeEvent.assigned(source, copies.get(0), (Manager) copies.get(1)));
 
-        employeeWriter.writeXML(source, list);
+            return true;
+        });
+    }
 
-        return true;
+    /**
+     * @return number of employees reporting to the manager, directly or through other managers
+     * @throws PathIsNullException       if path is null
+     * @throws FileNotFoundException     if file not found
+     * @throws FileIsEmptyException      if file is empty
+     * @throws DamagedFileException      if file is not .xml or damaged
+     * @throws IncorrectContentException if file has incorrect tag
+     * @throws InvalidIdException        if manager with such id is not found
+     * @throws InvalidTypeException      if id is invalid or the employee is not a manager
+     */
+    public int getHeadcount(Path source, String managerId) {
+        UUID managerUUIDId = getUUIDFromStringOrThrowException(managerId);
+
+        return read(source, repository -> {
+            Employee manager = repository.findById(managerUUIDId)
+                    .orElseThrow(() -> new InvalidIdException("The manager does not exist"));
+
+            if (!(manager instanceof Manager)) {
+                throw new InvalidTypeException("Employee type is not a manager");
+            }
+
+            return repository.getHeadcount((Manager) manager);
+        });
+    }
+
+    /**
+     * @return number of managers above the employee, 0 for an employee who reports to nobody
+     * @throws PathIsNullException       if path is null
+     * @throws FileNotFoundException     if file not found
+     * @throws FileIsEmptyException      if file is empty
+     * @throws DamagedFileException      if file is not .xml or damaged
+     * @throws IncorrectContentException if file has incorrect tag
+     * @throws InvalidIdException        if employee with such id is not found
+     * @throws InvalidTypeException      if id is invalid
+     */
+    public int getDepth(Path source, String employeeId) {
+        UUID employeeUUIDId = getUUIDFromStringOrThrowException(employeeId);
+
+        return read(source, repository -> repository.getDepth(repository.findById(employeeUUIDId)
+                .orElseThrow(() -> new InvalidIdException("The employee does not exist"))));
     }
 
 
@@ -246,10 +757,7 @@ public class EmployeeService {
      * @throws IncorrectContentException if file has incorrect tag
      */
     public void sortByFullName(Path source) {
-        employeeReader.pathValidate(source);
-        List<Employee> sourceList = employeeReader.readXML(source);
-        sourceList.sort(Comparator.comparing(Employee::getFullName));
-        employeeWriter.writeXML(source, sourceList);
+        sort(source, EmployeeOrder.FULL_NAME);
     }
 
     /**
@@ -260,10 +768,474 @@ public class EmployeeService {
      * @throws IncorrectContentException if file has incorrect tag
      */
     public void sortByHiringDate(Path source) {
-        employeeReader.pathValidate(source);
-        List<Employee> sourceList = employeeReader.readXML(source);
-        sourceList.sort(Comparator.comparing(Employee::getHiringDate));
-        employeeWriter.writeXML(source, sourceList);
+        sort(source, EmployeeOrder.HIRING_DATE);
+    }
+
+    /**
+     * A file over the memory budget is sorted on disk without being loaded,
+     * pending changes are folded into it first
+     */
+    private void sort(Path source, EmployeeOrder order) {
+        long budget = options.getSortMemoryBudget();
+
+        write(source, () -> {
+            // a batch keeps its changes in the loaded list, they would be lost to a sort on disk
+            if (budget > 0 && !MappedStaffStore.isStore(source) && !isDeferred(source)) {
+                employeeReader.checkPath(source);
+
+                if (Files.size(source) > budget) {
+                    Path key = getKey(source);
+
+                    // the sorter reads the file only, records of the journal are folded into it first
+                    if (repositories.containsKey(key)
+                        || options.isJournalEnabled() && StaffJournal.hasRecords(StaffJournal.of(key))) {
+                        if (getRepository(source) instanceof StaffRepository repository) {
+                            repository.compact();
+                        }
+                    }
+
+                    StaffStore cached = repositories.remove(key);
+                    if (cached != null) {
+                        cached.close();
+                    }
+
+                    new EmployeeSorter(budget).sort(source, order.getComparator(options.getNameLocale()));
+                    publish(EmployeeEvent.reordered(source, order));
+                    return null;
+                }
+            }
+
+            StaffStore repository = getRepository(source);
+            repository.sort(order);
+            commit(repository);
+            publish(EmployeeEvent.reordered(source, order));
+            return null;
+        });
+    }
+
+    /**
+     * The file is parsed only when it is seen for the first time or was changed by someone else.
+     * Files with the store extension are not parsed at all, they are opened as memory-mapped stores.
+     * Other files are kept as objects or, with the columnar option, in primitive columns
+     */
+    private StaffStore getRepository(Path source) {
+        StaffTransaction transaction = getTransaction(source);
+        if (transaction != null) {
+            return transaction.getWorkingCopy();
+        }
+
+        return repositories.compute(getKey(source), (key, repository) -> {
+            if (repository != null && repository.isCurrent() && isLatest(key)) {
+                return repository;
+            }
+            if (repository != null) {
+                repository.close();
+            }
+            // taken before loading, a write made meanwhile only causes one more load
+            versions.put(key, getVersion(key));
+
+            if (MappedStaffStore.isStore(source)) {
+                return MappedStaffStore.open(source, options.getNameLocale());
+            }
+            if (options.isColumnarEnabled()) {
+                return ColumnarStaffStore.open(source, employeeReader, employeeWriter, options);
+            }
+            return new StaffRepository(openStaffFile(source), employeeReader, employeeWriter, options, compactor);
+        });
+    }
+
+    /**
+     * Runs the reading on the cached store without locking, a write to the file that ran meanwhile
+     * makes it run again under the read lock. The reading must not change the store
+     */
+    @SneakyThrows
+    private <T> T read(Path source, Function<StaffStore, T> reading) {
+        if (isDeferred(source)) {
+            return reading.apply(getRepository(source));
+        }
+
+        StampedLock lock = getLock(source);
+
+        long stamp = lock.tryOptimisticRead();
+        Path key = getKey(source);
+        StaffStore cached = repositories.get(key);
+        if (stamp != 0L && cached != null && isSettled(key) && cached.isCurrent() && isLatest(key)) {
+            try {
+                T result = reading.apply(cached);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (Exception e) {
+                // a failure seen halfway through a write is not reported
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+
+        // changes of writes that are still committing are not read, they may turn out lost
+        stamp = lock.readLock();
+        while (!isSettled(key)) {
+            long generation = generations.getOrDefault(key, 0L);
+            lock.unlockRead(stamp);
+            awaitOffered(key, generation);
+            stamp = lock.readLock();
+        }
+
+        try {
+            return reading.apply(getRepository(source));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Runs the writing alone among the writings and the reads of the file,
+     * with file locking also alone among the writings of other processes
+     */
+    @SneakyThrows
+    private <T> T write(Path source, Callable<T> writing) {
+        // the batch already holds the locks, the transaction needs them for the commit only
+        if (isDeferred(source)) {
+            return writing.call();
+        }
+
+        StampedLock lock = getLock(source);
+        Path key = getKey(source);
+        PendingWrite pending = new PendingWrite();
+        // a write to another file inside a batch
+        PendingWrite outer = pendingWrites.get();
+        T result;
+        long generation;
+
+        long stamp = lock.writeLock();
+        pendingWrites.set(pending);
+        try {
+            if (!options.isFileLockingEnabled()) {
+                result = writing.call();
+            } else {
+                StaffFileLock fileLock = getFileLock(key);
+                try (FileLock ignored = fileLock.lock()) {
+                    result = writing.call();
+                    // other processes load the file once its version moves, it has to be durable by then
+                    pending.commit();
+                    versions.put(key, fileLock.advance());
+                }
+            }
+
+            generation = generations.merge(key, 1L, Long::sum);
+        } finally {
+            if (outer == null) {
+                pendingWrites.remove();
+            } else {
+                pendingWrites.set(outer);
+            }
+            lock.unlockWrite(stamp);
+        }
+
+        boolean isCommitted = false;
+        try {
+            pending.commit();
+            isCommitted = true;
+        } finally {
+            offerInOrder(key, generation, isCommitted ? pending.getEvents() : List.of());
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the events of the earlier writes to the file, so subscribers get them in the order of the writes
+     */
+    private void offerInOrder(Path key, long generation, List<EmployeeEvent> events) {
+        synchronized (offeredGenerations) {
+            awaitOffered(key, generation - 1);
+
+            events.forEach(this::offer);
+            offeredGenerations.put(key, generation);
+            offeredGenerations.notifyAll();
+        }
+    }
+
+    /**
+     * @return true if every write made to the file so far has ended its commit, with the lock of the file held
+     */
+    private boolean isSettled(Path key) {
+        return offeredGenerations.getOrDefault(key, 0L) >= generations.getOrDefault(key, 0L);
+    }
+
+    private void awaitOffered(Path key, long generation) {
+        boolean isInterrupted = false;
+
+        synchronized (offeredGenerations) {
+            while (offeredGenerations.getOrDefault(key, 0L) < generation) {
+                try {
+                    offeredGenerations.wait();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+        }
+
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Inside a batch or a transaction on the file the commit is left to them,
+     * inside a write it is made once the lock of the file is released
+     */
+    private void commit(StaffStore repository) {
+        if (isDeferred(repository.getPath())) {
+            return;
+        }
+
+        PendingWrite pending = pendingWrites.get();
+        if (pending != null) {
+            pending.getStores().add(repository);
+        } else {
+            repository.commit();
+        }
+    }
+
+    /**
+     * @return true if the current thread runs a batch or a transaction on the file
+     */
+    private boolean isDeferred(Path source) {
+        Path batch = batches.get();
+        return batch != null && batch.equals(getKey(source)) || getTransaction(source) != null;
+    }
+
+    /**
+     * Events of a batch, a transaction or a write wait for its commit
+     */
+    private void publish(EmployeeEvent event) {
+        StaffTransaction transaction = getTransaction(event.getSource());
+        if (transaction != null) {
+            transaction.getEvents().add(event);
+        } else if (pendingWrites.get() != null) {
+            pendingWrites.get().getEvents().add(event);
+        } else {
+            offer(event);
+        }
+    }
+
+    /**
+     * Never waits for the subscribers, an event that does not fit into the buffer of a subscriber is dropped for it
+     */
+    private void offer(EmployeeEvent event) {
+        if (publisher.isClosed()) {
+            return;
+        }
+
+        publisher.offer(event, (subscriber, dropped) -> {
+            log.warn("Message: Event %s was dropped, a subscriber is too slow".formatted(dropped));
+            return false;
+        });
+    }
+
+    private StaffTransaction getTransaction(Path source) {
+        StaffTransaction transaction = transactions.get();
+        return transaction != null && transaction.getKey().equals(getKey(source)) ? transaction : null;
+    }
+
+    /**
+     * A file changed by a transaction of the thread is never empty, the transaction holds its list
+     */
+    private boolean isTargetEmpty(Path target) throws IOException {
+        return getTransaction(target) == null && (!Files.exists(target) || Files.size(target) == 0L);
+    }
+
+    /**
+     * @return false if another process wrote the file after its repository was loaded
+     */
+    private boolean isLatest(Path key) {
+        return !options.isFileLockingEnabled() || versions.getOrDefault(key, -1L) == getVersion(key);
+    }
+
+    /**
+     * A file that does not exist yet has no lock file, its version is zero
+     */
+    private long getVersion(Path key) {
+        if (!options.isFileLockingEnabled()) {
+            return 0L;
+        }
+
+        StaffFileLock fileLock = fileLocks.get(key);
+        if (fileLock == null && !Files.exists(key)) {
+            return 0L;
+        }
+        return (fileLock == null ? getFileLock(key) : fileLock).getVersion();
+    }
+
+    private StaffFileLock getFileLock(Path key) {
+        return fileLocks.computeIfAbsent(key, StaffFileLock::open);
+    }
+
+    private StampedLock getLock(Path source) {
+        return locks.computeIfAbsent(getKey(source), key -> new StampedLock());
+    }
+
+    private Path getKey(Path source) {
+        if (source == null) {
+            employeeReader.open(null);
+        }
+
+        return source.toAbsolutePath().normalize();
+    }
+
+    /**
+     * A missing or empty target is started as an empty list
+     */
+    @SneakyThrows
+    private StaffStore getTargetRepository(Path target) {
+        if (getTransaction(target) != null) {
+            return getRepository(target);
+        }
+
+        if (!Files.exists(target)) {
+            Files.createFile(target);
+        }
+
+        if (Files.size(target) == 0L && !MappedStaffStore.isStore(target)) {
+            Files.writeString(target, """
+                    <?xml version="1.0" encoding="UTF-8" standalone="no"?>
+                    <employees>
+                    </employees>
+                    """);
+        }
+
+        return getRepository(target);
+    }
+
+    private static List<Path> resolveSources(String sources) throws IOException {
+        if (sources == null) {
+            String message = "Path cannot be null";
+            log.warn("Message: " + message);
+            throw new PathIsNullException(message);
+        }
+
+        Path directory;
+        PathMatcher matcher;
+
+        if (isBatchSource(sources) && sources.chars().noneMatch(c -> GLOB_CHARACTERS.indexOf(c) >= 0)) {
+            directory = Path.of(sources);
+            matcher = path -> path.getFileName().toString().endsWith(".xml");
+        } else {
+            int separator = Math.max(sources.lastIndexOf('/'), sources.lastIndexOf('\\'));
+            directory = Path.of(separator < 0 ? "." : sources.substring(0, separator + 1));
+            PathMatcher glob = FileSystems.getDefault().getPathMatcher("glob:" + sources.substring(separator + 1));
+            matcher = path -> glob.matches(path.getFileName());
+        }
+
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> stream = Files.list(directory)) {
+                stream.filter(Files::isRegularFile).filter(matcher::matches).sorted().forEach(files::add);
+            }
+        }
+
+        if (files.isEmpty()) {
+            String message = "No files match %s".formatted(sources);
+            log.warn("Message: " + message);
+            throw new FileNotFoundException(message);
+        }
+
+        return files;
+    }
+
+    /**
+     * Folds the journal shared with other processes into the file under the lock of the file.
+     * Other processes may have appended to it since the last load, so the file is loaded again first if needed
+     */
+    private void compactShared(Path key) {
+        // other stores keep no journal
+        if (!(repositories.get(key) instanceof StaffRepository)) {
+            return;
+        }
+
+        StampedLock lock = getLock(key);
+        StaffFileLock fileLock = getFileLock(key);
+
+        long stamp = lock.writeLock();
+        try (FileLock ignored = fileLock.lock()) {
+            if (getRepository(key) instanceof StaffRepository repository && repository.compact()) {
+                versions.put(key, fileLock.advance());
+            }
+        } catch (Exception e) {
+            log.warn("Message: journal of %s is left to the next load: %s".formatted(key, e));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private StaffFile openStaffFile(Path source) {
+        if (!options.isBinarySnapshotEnabled()) {
+            return employeeReader.open(source);
+        }
+
+        Path snapshot = BinarySnapshot.of(source);
+
+        return employeeReader.openSnapshot(source, snapshot).orElseGet(() -> {
+            StaffFile staffFile = employeeReader.open(source);
+            employeeWriter.writeSnapshot(snapshot, staffFile.getEmployees(), staffFile.getFingerprint());
+            return staffFile;
+        });
+    }
+
+    /**
+     * Folds pending journals back into their files
+     */
+    public void close() {
+        if (options.isFileLockingEnabled()) {
+            List.copyOf(repositories.keySet()).forEach(this::compactShared);
+        }
+
+        repositories.values().forEach(StaffStore::close);
+        repositories.clear();
+        fileLocks.values().forEach(StaffFileLock::close);
+        fileLocks.clear();
+        publisher.close();
+        // the subscribers are still told the events are over
+        notifier.shutdown();
+        compactor.shutdown();
+    }
+
+    /**
+     * Copies of the records, so that the loaded list cannot be changed through the records handed out.
+     * A subordinate shared by several records stays shared by their copies
+     */
+    private static List<Employee> detach(List<Employee> employees) {
+        Map<Employee, Employee> copies = new IdentityHashMap<>();
+        Deque<Employee> pending = new ArrayDeque<>(employees);
+
+        // managers are linked once every record is copied, chains of managers take no stack
+        while (!pending.isEmpty()) {
+            Employee employee = pending.pop();
+            if (copies.containsKey(employee)) {
+                continue;
+            }
+
+            if (employee instanceof Manager manager) {
+                copies.put(employee, new Manager(employee, new ArrayList<>(manager.getSubordinates().size())));
+                manager.getSubordinates().stream().filter(Objects::nonNull).forEach(pending::push);
+            } else if (employee instanceof OtherEmployee otherEmployee) {
+                copies.put(employee, new OtherEmployee(employee, otherEmployee.getDescription()));
+            } else {
+                copies.put(employee, StaffStore.copyAs(employee, EmployeeType.EMPLOYEE, null));
+            }
+        }
+
+        copies.forEach((employee, copy) -> {
+            if (employee instanceof Manager manager) {
+                manager.getSubordinates().forEach(subordinate -> ((Manager) copy).getSubordinates()
+                        .add(subordinate == null ? null : copies.get(subordinate)));
+            }
+        });
+
+        List<Employee> list = new ArrayList<>(employees.size());
+        employees.forEach(employee -> list.add(copies.get(employee)));
+        return list;
     }
 
     private static UUID getUUIDFromStringOrThrowException(String id) {
@@ -274,4 +1246,20 @@ public class EmployeeService {
             throw new InvalidIdException("Id is not valid");
         }
     }
+
+    /**
+     * Commits of a write, the stores are committed once however many operations of the write changed them
+     */
+    @Getter
+    private static class PendingWrite {
+        private final Set<StaffStore> stores = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final List<EmployeeEvent> events = new ArrayList<>();
+
+        void commit() {
+            for (StaffStore store : stores) {
+                store.commit();
+            }
+            stores.clear();
+        }
+    }
 }
@@ -0,0 +1,31 @@
+package com.skodin.services;
+
+import com.skodin.services.enums.ImportStatus;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of importing a single source file
+ */
+@Getter
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ImportResult {
+    Path source;
+    ImportStatus status;
+    int count;
+    String message;
+
+    @Override
+    public String toString() {
+        return switch (status) {
+            case SUCCESS -> "%s : %d employees added".formatted(source, count);
+            case DUPLICATE -> "%s : skipped, %s".formatted(source, message);
+            case ERROR -> "%s : failed, %s".formatted(source, message);
+        };
+    }
+}
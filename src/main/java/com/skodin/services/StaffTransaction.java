@@ -0,0 +1,74 @@
+package com.skodin.services;
+
+import com.skodin.exceptions.StaleTransactionException;
+import com.skodin.repositories.StaffStore;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes to one file made by the thread that began the transaction.
+ * Service operations of the thread on the file change a private copy of the list,
+ * the file is written once, by the commit. Until then other threads and processes see the file as it was.
+ * <pre>
+ * try (StaffTransaction transaction = employeeService.begin(path)) {
+ *     employeeService.changeEmployeeType(path, id, "manager", "");
+ *     employeeService.assignEmployeeToManager(path, id, employeeId);
+ *     transaction.commit();
+ * }
+ * </pre>
+ */
+@Getter(AccessLevel.PACKAGE)
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StaffTransaction implements AutoCloseable {
+    EmployeeService employeeService;
+    Path key;
+    // repository the copy was taken from, null if the file was empty
+    StaffStore origin;
+    long generation;
+    StaffStore workingCopy;
+    // published by the commit
+    List<EmployeeEvent> events = new ArrayList<>();
+    @NonFinal
+    volatile boolean isActive;
+
+    /**
+     * Writes the copy to the file and ends the transaction
+     *
+     * @throws StaleTransactionException if the file was written after the transaction began, it is left as it is
+     * @throws IllegalStateException     if the transaction is not active in this thread
+     */
+    public void commit() {
+        employeeService.commit(this);
+    }
+
+    /**
+     * Drops the copy and ends the transaction
+     *
+     * @throws IllegalStateException if the transaction is not active in this thread
+     */
+    public void rollback() {
+        employeeService.rollback(this);
+    }
+
+    /**
+     * Rolls back the transaction unless it was committed or rolled back already
+     */
+    @Override
+    public void close() {
+        if (isActive) {
+            rollback();
+        }
+    }
+
+    void end() {
+        isActive = false;
+    }
+}
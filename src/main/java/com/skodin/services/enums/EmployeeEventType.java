@@ -0,0 +1,10 @@
+package com.skodin.services.enums;
+
+public enum EmployeeEventType {
+
+    ADDED,
+    REMOVED,
+    TYPE_CHANGED,
+    ASSIGNED,
+    REORDERED
+}
@@ -0,0 +1,8 @@
+package com.skodin.services.enums;
+
+public enum ImportStatus {
+
+    SUCCESS,
+    DUPLICATE,
+    ERROR
+}
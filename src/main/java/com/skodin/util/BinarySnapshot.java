@@ -0,0 +1,16 @@
+package com.skodin.util;
+
+import java.nio.file.Path;
+
+/**
+ * Location of the binary snapshot kept next to an employees file
+ */
+public final class BinarySnapshot {
+
+    private BinarySnapshot() {
+    }
+
+    public static Path of(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + ".bin");
+    }
+}
@@ -0,0 +1,73 @@
+package com.skodin.util;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * Crash-safe replacement of whole files.
+ * The new content is written to a temporary file in the same directory, forced to the device
+ * and moved over the target, so the target always holds either the old or the new content.
+ */
+@Log4j2
+public final class DurableFiles {
+
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    private DurableFiles() {
+    }
+
+    public static void replace(Path target, Content content) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+
+        try {
+            copyPermissions(target, temp);
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream outputStream = Channels.newOutputStream(channel);
+                content.writeTo(outputStream);
+                outputStream.flush();
+                channel.force(true);
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                log.warn("Message: atomic move is not supported for " + target);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        forceDirectory(directory);
+    }
+
+    private static void copyPermissions(Path source, Path target) {
+        try {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(source);
+            Files.setPosixFilePermissions(target, permissions);
+        } catch (UnsupportedOperationException | IOException e) {
+            log.debug(e);
+        }
+    }
+
+    // makes the rename itself durable, not every platform allows to open a directory
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug(e);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.skodin.util;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Compact binary form of employees.
+ * <pre>
+ * header : magic int, version short, source size long, source modification time long (nanos),
+ *          source checksum long
+ * record : type byte, id as two longs, birthday and hiring dates as epoch days,
+ *          full name, then description for OTHER_EMPLOYEE or subordinate count and records for MANAGER
+ * string : byte length int (-1 for null), UTF-8 bytes
+ * </pre>
+ * A subordinate that is also a referable top-level record is written as the REFERENCE type and its id.
+ * Records are followed by the END marker and the CRC32 of everything before it.
+ * Subordinates are written and read in the same order, with the managers on the way kept on the heap,
+ * so a deep hierarchy does not exhaust the stack.
+ */
+public final class EmployeeBinaryCodec {
+
+    static final int MAGIC = 0x5354464C;
+    static final short VERSION = 1;
+
+    static final byte EMPLOYEE = 0;
+    static final byte OTHER_EMPLOYEE = 1;
+    static final byte MANAGER = 2;
+    static final byte REFERENCE = 3;
+    static final byte END = -1;
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    private EmployeeBinaryCodec() {
+    }
+
+    /**
+     * Version of the file the records were taken from, zeros for a plain export
+     */
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    static class Header {
+        long sourceSize;
+        long sourceModified;
+        long sourceChecksum;
+    }
+
+    static void writeHeader(DataOutput output, Header header) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeLong(header.getSourceSize());
+        output.writeLong(header.getSourceModified());
+        output.writeLong(header.getSourceChecksum());
+    }
+
+    /**
+     * @throws IOException if the data is not a snapshot of a supported version
+     */
+    static Header readHeader(DataInput input) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not an employees snapshot");
+        }
+
+        short version = input.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+
+        return new Header(input.readLong(), input.readLong(), input.readLong());
+    }
+
+    public static void write(DataOutput output, Employee employee) throws IOException {
+        write(output, employee, subordinate -> false);
+    }
+
+    /**
+     * @param isReference tells the subordinates written as the REFERENCE type,
+     *                    placeholders of unresolved references are always written so
+     */
+    public static void write(DataOutput output, Employee employee, Predicate<Employee> isReference)
+            throws IOException {
+        Deque<Iterator<Employee>> path = new ArrayDeque<>();
+        Employee next = employee;
+
+        while (true) {
+            if (next != null) {
+                writeRecord(output, next);
+                if (next instanceof Manager manager) {
+                    path.push(manager.getSubordinates().iterator());
+                }
+            }
+
+            if (path.isEmpty()) {
+                return;
+            }
+            next = path.peek().hasNext() ? path.peek().next() : null;
+            if (next == null) {
+                if (!path.peek().hasNext()) {
+                    path.pop();
+                }
+            } else if (isReference.test(next) || SubordinateReferences.isPlaceholder(next)) {
+                writeReference(output, next.getId());
+                next = null;
+            }
+        }
+    }
+
+    // everything but the subordinates themselves, which follow their count
+    private static void writeRecord(DataOutput output, Employee employee) throws IOException {
+        if (employee instanceof Manager) {
+            output.writeByte(MANAGER);
+        } else if (employee instanceof OtherEmployee) {
+            output.writeByte(OTHER_EMPLOYEE);
+        } else {
+            output.writeByte(EMPLOYEE);
+        }
+
+        output.writeLong(employee.getId().getMostSignificantBits());
+        output.writeLong(employee.getId().getLeastSignificantBits());
+        writeDate(output, employee.getBirthdayDate());
+        writeDate(output, employee.getHiringDate());
+        writeString(output, employee.getFullName());
+
+        if (employee instanceof OtherEmployee otherEmployee) {
+            writeString(output, otherEmployee.getDescription());
+        } else if (employee instanceof Manager manager) {
+            output.writeInt((int) manager.getSubordinates().stream().filter(e -> e != null).count());
+        }
+    }
+
+    /**
+     * Writes a record that stands for the one with the id, it is read back through a resolver only
+     */
+    public static void writeReference(DataOutput output, UUID id) throws IOException {
+        output.writeByte(REFERENCE);
+        output.writeLong(id.getMostSignificantBits());
+        output.writeLong(id.getLeastSignificantBits());
+    }
+
+    public static void writeEnd(DataOutput output) throws IOException {
+        output.writeByte(END);
+    }
+
+    /**
+     * @return next record or null after the END marker
+     * @throws IOException if the data is damaged
+     */
+    public static Employee read(DataInput input) throws IOException {
+        return read(input, (subordinates, id) -> {
+            throw new IOException("Unexpected reference");
+        });
+    }
+
+    /**
+     * @param resolver gives the record a reference stands for, a record written by {@link #writeReference} included
+     * @return next record or null after the END marker
+     * @throws IOException if the data is damaged or a reference is not resolved
+     */
+    public static Employee read(DataInput input, Function<UUID, Employee> resolver) throws IOException {
+        byte type = input.readByte();
+
+        if (type == END) {
+            return null;
+        }
+
+        if (type == REFERENCE) {
+            return resolve(resolver, new UUID(input.readLong(), input.readLong()));
+        }
+
+        return read(input, type, (subordinates, id) -> subordinates.add(resolve(resolver, id)));
+    }
+
+    /**
+     * @param references collects subordinates written as references
+     */
+    static Employee read(DataInput input, SubordinateReferences references) throws IOException {
+        return read(input, references::add);
+    }
+
+    private static Employee read(DataInput input, ReferenceReader references) throws IOException {
+        byte type = input.readByte();
+
+        if (type == END) {
+            return null;
+        }
+
+        return read(input, type, references);
+    }
+
+    private static Employee read(DataInput input, byte type, ReferenceReader references) throws IOException {
+        Employee employee = readRecord(input, type);
+        Deque<Manager> managers = new ArrayDeque<>();
+        Deque<Integer> remaining = new ArrayDeque<>();
+        if (employee instanceof Manager manager) {
+            managers.push(manager);
+            remaining.push(input.readInt());
+        }
+
+        while (!managers.isEmpty()) {
+            int count = remaining.pop();
+            if (count < 0) {
+                throw new IOException("Negative subordinates count");
+            }
+            if (count == 0) {
+                managers.pop();
+                continue;
+            }
+            remaining.push(count - 1);
+
+            List<Employee> subordinates = managers.peek().getSubordinates();
+            byte subordinateType = input.readByte();
+            if (subordinateType == REFERENCE) {
+                references.read(subordinates, new UUID(input.readLong(), input.readLong()));
+                continue;
+            }
+
+            Employee subordinate = readRecord(input, subordinateType);
+            subordinates.add(subordinate);
+            if (subordinate instanceof Manager manager) {
+                managers.push(manager);
+                remaining.push(input.readInt());
+            }
+        }
+        return employee;
+    }
+
+    private static Employee resolve(Function<UUID, Employee> resolver, UUID id) throws IOException {
+        Employee employee = resolver.apply(id);
+        if (employee == null) {
+            throw new IOException("Broken reference to " + id);
+        }
+        return employee;
+    }
+
+    // a manager is read with an empty list of subordinates, their count comes next
+    private static Employee readRecord(DataInput input, byte type) throws IOException {
+        UUID id = new UUID(input.readLong(), input.readLong());
+        LocalDate birthdayDate = readDate(input);
+        LocalDate hiringDate = readDate(input);
+        Employee employee = new Employee(id, readString(input), birthdayDate, hiringDate);
+
+        return switch (type) {
+            case EMPLOYEE -> employee;
+            case OTHER_EMPLOYEE -> new OtherEmployee(employee, readString(input));
+            case MANAGER -> new Manager(employee, new ArrayList<>());
+            default -> throw new IOException("Unknown record type " + type);
+        };
+    }
+
+    private static void writeDate(DataOutput output, LocalDate date) throws IOException {
+        output.writeInt(date == null ? NO_DATE : (int) date.toEpochDay());
+    }
+
+    private static LocalDate readDate(DataInput input) throws IOException {
+        int epochDay = input.readInt();
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static void writeString(DataOutput output, String text) throws IOException {
+        if (text == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        int length = input.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        if (length > MAX_STRING_LENGTH) {
+            throw new IOException("String length %d is out of range".formatted(length));
+        }
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private interface ReferenceReader {
+        void read(List<Employee> subordinates, UUID id) throws IOException;
+    }
+}
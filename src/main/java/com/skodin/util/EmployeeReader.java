@@ -1,44 +1,127 @@
 package com.skodin.util;
 
 import com.skodin.entities.Employee;
-import com.skodin.entities.Manager;
-import com.skodin.entities.OtherEmployee;
 import com.skodin.exceptions.*;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.extern.log4j.Log4j2;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDate;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
 
 @Log4j2
 public class EmployeeReader {
 
-    private final DocumentBuilder builder;
+    // a factory is not safe to share between threads, every thread gets its own
+    private static final ThreadLocal<XMLInputFactory> FACTORIES = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    });
+
+    // shared by every document read, hit rate shows how much the files repeat themselves
+    @Getter
+    private final StringPool stringPool;
+
+    public EmployeeReader(StringPool stringPool) {
+        this.stringPool = stringPool;
+    }
+
+    public EmployeeReader() {
+        this(new StringPool());
+    }
+
+    /**
+     * @throws PathIsNullException       if path is null
+     * @throws FileNotFoundException     if file not found
+     * @throws FileIsEmptyException      if file is empty
+     * @throws DamagedFileException      if file is not .xml or damaged
+     * @throws IncorrectContentException if file has incorrect tag
+     */
+    public List<Employee> readXML(Path path) {
+        return open(path).getEmployees();
+    }
 
-    {
+    /**
+     * Hands the records to the consumer as they are parsed, without collecting them.
+     * Subordinates written as references are linked once the whole file is read.
+     * The consumer stops the pass by returning false, the rest of the file is not read then
+     *
+     * @return false if the pass was stopped by the consumer
+     * @throws PathIsNullException       if path is null
+     * @throws FileNotFoundException     if file not found
+     * @throws FileIsEmptyException      if file is empty
+     * @throws DamagedFileException      if file is not .xml or damaged
+     * @throws IncorrectContentException if file has incorrect tag
+     */
+    public boolean read(Path path, Predicate<Employee> consumer) {
+        return read(path, consumer, new SubordinateReferences());
+    }
+
+    /**
+     * Hands the records to the consumer as they are parsed, nothing keeps them once the consumer is done with them.
+     * Subordinates written as references stay placeholders holding the id only,
+     * the references are still checked once the whole file is read
+     *
+     * @return false if the pass was stopped by the consumer
+     * @throws PathIsNullException       if path is null
+     * @throws FileNotFoundException     if file not found
+     * @throws FileIsEmptyException      if file is empty
+     * @throws DamagedFileException      if file is not .xml or damaged
+     * @throws IncorrectContentException if file has incorrect tag
+     */
+    public boolean readUnresolved(Path path, Predicate<Employee> consumer) {
+        return read(path, consumer, SubordinateReferences.unresolved());
+    }
+
+    private boolean read(Path path, Predicate<Employee> consumer, SubordinateReferences references) {
+
+        checkPath(path);
+
+        boolean isCorrect;
         try {
-            builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new RuntimeException(e);
+            isCorrect = parse(path, employee -> {
+                if (!consumer.test(employee)) {
+                    throw StopReading.INSTANCE;
+                }
+            }, new CRC32(), references);
+        } catch (StopReading e) {
+            return false;
         }
+
+        if (!isCorrect) {
+            String message = "File %s contains incorrect data".formatted(path);
+            log.warn("Message: " + message);
+            throw new IncorrectContentException(message);
+        }
+
+        return true;
     }
 
     /**
+     * Validates, parses and fingerprints the file in one pass
+     *
      * @throws PathIsNullException       if path is null
      * @throws FileNotFoundException     if file not found
      * @throws FileIsEmptyException      if file is empty
@@ -46,84 +129,243 @@ public class EmployeeReader {
      * @throws IncorrectContentException if file has incorrect tag
      */
     @SneakyThrows
-    public List<Employee> readXML(Path path) {
+    public StaffFile open(Path path) {
 
-        pathValidate(path);
-
-        Document document = checkIsFileDamaged(path);
+        checkPath(path);
 
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        CRC32 checksum = new CRC32();
         List<Employee> list = new ArrayList<>();
 
-        document.getDocumentElement().normalize();
+        if (!parse(path, list::add, checksum)) {
+            String message = "File %s contains incorrect data".formatted(path);
+            log.warn("Message: " + message);
+            throw new IncorrectContentException(message);
+        }
 
-        Element rootElement = document.getDocumentElement();
+        FileFingerprint fingerprint = new FileFingerprint(attributes.size(), attributes.lastModifiedTime(),
+                attributes.fileKey(), checksum.getValue());
 
-        try {
-            read(rootElement, list);
-        } catch (NullPointerException e) {
+        return new StaffFile(path, list, fingerprint);
+    }
+
+    /**
+     * Validates and fingerprints the file in one pass, handing the records to the consumer as they are parsed.
+     * Subordinates written as references stay placeholders holding the id only,
+     * the references are still checked once the whole file is read
+     *
+     * @throws PathIsNullException       if path is null
+     * @throws FileNotFoundException     if file not found
+     * @throws FileIsEmptyException      if file is empty
+     * @throws DamagedFileException      if file is not .xml or damaged
+     * @throws IncorrectContentException if file has incorrect tag
+     */
+    @SneakyThrows
+    public FileFingerprint openUnresolved(Path path, Consumer<Employee> consumer) {
+
+        checkPath(path);
+
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        CRC32 checksum = new CRC32();
+
+        if (!parse(path, consumer, checksum, SubordinateReferences.unresolved())) {
             String message = "File %s contains incorrect data".formatted(path);
             log.warn("Message: " + message);
             throw new IncorrectContentException(message);
         }
 
-        return list;
+        return new FileFingerprint(attributes.size(), attributes.lastModifiedTime(),
+                attributes.fileKey(), checksum.getValue());
     }
 
-    private void read(Element rootElement, List<Employee> list) {
-        NodeList nodeList = rootElement.getChildNodes();
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Node item = nodeList.item(i);
-            if (item instanceof Element childElement) {
-                switch (childElement.getTagName()) {
-                    case "employee" -> list.add(readEmployee(childElement));
-                    case "otheremployee" -> list.add(readOtheremployee(childElement));
-                    case "manager" -> list.add(readManager(childElement));
-                }
+    /**
+     * Takes the records from the binary snapshot if it was made from the current version of the file
+     *
+     * @return empty if the snapshot is missing, outdated or damaged
+     * @throws PathIsNullException   if path is null
+     * @throws FileNotFoundException if file not found
+     * @throws FileIsEmptyException  if file is empty
+     */
+    @SneakyThrows
+    public Optional<StaffFile> openSnapshot(Path path, Path snapshot) {
+
+        List<Employee> list = new ArrayList<>();
+
+        return openSnapshot(path, snapshot, list::add, new SubordinateReferences())
+                .map(fingerprint -> new StaffFile(path, list, fingerprint));
+    }
+
+    /**
+     * Hands the records of the binary snapshot to the consumer as they are read, if it was made
+     * from the current version of the file. Subordinates written as references stay placeholders holding the id only.
+     * The snapshot may turn out damaged after some records were handed over, they are to be dropped then
+     *
+     * @return fingerprint of the file, or empty if the snapshot is missing, outdated or damaged
+     * @throws PathIsNullException   if path is null
+     * @throws FileNotFoundException if file not found
+     * @throws FileIsEmptyException  if file is empty
+     */
+    public Optional<FileFingerprint> openSnapshotUnresolved(Path path, Path snapshot, Consumer<Employee> consumer) {
+        return openSnapshot(path, snapshot, consumer, SubordinateReferences.unresolved());
+    }
+
+    @SneakyThrows
+    private Optional<FileFingerprint> openSnapshot(Path path, Path snapshot, Consumer<Employee> consumer,
+                                                   SubordinateReferences references) {
+
+        checkPath(path);
+
+        if (!Files.exists(snapshot)) {
+            return Optional.empty();
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+        try {
+            EmployeeBinaryCodec.Header header = readBinary(snapshot, consumer, path, attributes, references);
+            if (header == null) {
+                return Optional.empty();
             }
+
+            return Optional.of(new FileFingerprint(attributes.size(), attributes.lastModifiedTime(),
+                    attributes.fileKey(), header.getSourceChecksum()));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Message: snapshot %s is damaged and is ignored".formatted(snapshot));
+            return Optional.empty();
         }
     }
 
-    private Employee readEmployee(Element element) {
-        return new Employee(
-                UUID.fromString(element.getAttribute("id")),
-                element.getElementsByTagName("fullName").item(0).getTextContent(),
-                LocalDate.parse(element.getElementsByTagName("birthdayDate").item(0).getTextContent()),
-                LocalDate.parse(element.getElementsByTagName("hiringDate").item(0).getTextContent()));
-    }
+    /**
+     * @throws PathIsNullException   if path is null
+     * @throws FileNotFoundException if file not found
+     * @throws FileIsEmptyException  if file is empty
+     * @throws DamagedFileException  if file is not a snapshot or damaged
+     */
+    public List<Employee> readBinary(Path path) {
 
-    private OtherEmployee readOtheremployee(Element element) {
-        return new OtherEmployee(readEmployee(element),
-                element.getElementsByTagName("description").item(0).getTextContent());
+        checkPath(path);
+
+        List<Employee> list = new ArrayList<>();
+
+        try {
+            readBinary(path, list::add, null, null, new SubordinateReferences());
+        } catch (IOException | RuntimeException e) {
+            String message = "File %s is damaged".formatted(path);
+            log.warn("Message: " + message);
+            throw new DamagedFileException(message);
+        }
+
+        return list;
     }
 
-    private Manager readManager(Element element) {
+    /**
+     * @param source if not null, records are read only when the snapshot was made from this version of it
+     * @return header of the snapshot or null if it belongs to another version of the source
+     */
+    private EmployeeBinaryCodec.Header readBinary(Path path, Consumer<Employee> consumer, Path source,
+                                                  BasicFileAttributes attributes, SubordinateReferences references)
+            throws IOException {
+        CRC32 checksum = new CRC32();
+
+        try (DataInputStream input = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 64 * 1024), checksum))) {
+
+            EmployeeBinaryCodec.Header header = EmployeeBinaryCodec.readHeader(input);
+
+            // a rewrite of the same size within a tick of the modification time shows in the content only
+            if (source != null
+                && (header.getSourceSize() != attributes.size()
+                    || header.getSourceModified() != attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    || header.getSourceChecksum() != FileFingerprint.checksumOf(source))) {
+                return null;
+            }
 
-        ArrayList<Employee> subordinatesList = new ArrayList<>();
-        NodeList subordinatesNodeList = element.getChildNodes();
+            Employee employee;
+            while ((employee = EmployeeBinaryCodec.read(input, references)) != null) {
+                references.register(employee);
+                consumer.accept(employee);
+            }
 
-        for (int i = 0; i < subordinatesNodeList.getLength(); i++) {
-            Node subordinatesItem = subordinatesNodeList.item(i);
-            if (subordinatesItem instanceof Element subordinatesElement
-                && subordinatesElement.getTagName().equals("subordinates")) {
-                read(subordinatesElement, subordinatesList);
+            long expected = checksum.getValue();
+            if (input.readLong() != expected) {
+                throw new IOException("Checksum mismatch");
             }
+
+            if (!references.resolve()) {
+                throw new IOException("Subordinate references are broken");
+            }
+
+            return header;
         }
+    }
 
-        return new Manager(readEmployee(element), subordinatesList);
+    /**
+     * Copy of a list already held in memory, as it would be read from the file after the list was written.
+     * The copy is not the file, its fingerprint is never current
+     *
+     * @throws DamagedFileException      if document is damaged
+     * @throws IncorrectContentException if document has incorrect tag
+     */
+    public StaffFile fromXML(Path path, String xml) {
+        CRC32 checksum = new CRC32();
+        checksum.update(xml.getBytes(StandardCharsets.UTF_8));
+
+        FileFingerprint fingerprint = new FileFingerprint(-1L, FileTime.fromMillis(0L), null, checksum.getValue());
+        return new StaffFile(path, fromXML(xml), fingerprint);
     }
 
-    public Document checkIsFileDamaged(Path path) {
-        Document document;
-        builder.setErrorHandler(new CustomErrorHandler());
+    /**
+     * Reads employees from a document held in memory
+     *
+     * @throws DamagedFileException      if document is damaged
+     * @throws IncorrectContentException if document has incorrect tag
+     */
+    public List<Employee> fromXML(String xml) {
+        List<Employee> list = new ArrayList<>();
 
         try {
-            document = builder.parse(path.toFile());
-        } catch (SAXException | IOException e) {
+            XMLStreamReader reader = FACTORIES.get().createXMLStreamReader(new StringReader(xml));
+            try {
+                if (!new EmployeeXmlParser(reader, list::add, stringPool).parse()) {
+                    throw new IncorrectContentException("Document contains incorrect data");
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new DamagedFileException("Document is damaged");
+        }
+
+        return list;
+    }
+
+    /**
+     * @throws DamagedFileException if file is not .xml or damaged
+     */
+    public void checkIsFileDamaged(Path path) {
+        parse(path, employee -> {
+        }, new CRC32(), SubordinateReferences.unresolved());
+    }
+
+    private boolean parse(Path path, Consumer<Employee> consumer, Checksum checksum) {
+        return parse(path, consumer, checksum, new SubordinateReferences());
+    }
+
+    private boolean parse(Path path, Consumer<Employee> consumer, Checksum checksum,
+                          SubordinateReferences references) {
+        try (InputStream inputStream = new BufferedInputStream(
+                new CheckedInputStream(Files.newInputStream(path), checksum))) {
+            XMLStreamReader reader = FACTORIES.get().createXMLStreamReader(inputStream);
+            try {
+                return new EmployeeXmlParser(reader, consumer, stringPool, references).parse();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | IOException e) {
             String message = "File %s is damaged".formatted(path);
             log.warn("Message: " + message);
             throw new DamagedFileException(message);
         }
-        return document;
     }
 
     // public for tests
@@ -134,9 +376,24 @@ public class EmployeeReader {
      * @throws FileIsEmptyException  if file is empty
      * @throws DamagedFileException  if file is not .xml or damaged
      */
-    @SneakyThrows
     public void pathValidate(Path path) {
 
+        checkPath(path);
+
+        checkIsFileDamaged(path);
+
+    }
+
+    /**
+     * Checks the file without reading it
+     *
+     * @throws PathIsNullException   if path is null
+     * @throws FileNotFoundException if file not found
+     * @throws FileIsEmptyException  if file is empty
+     */
+    @SneakyThrows
+    public void checkPath(Path path) {
+
         if (path == null) {
             String message = "Path cannot be null";
             log.warn("Message: " + message);
@@ -154,25 +411,14 @@ public class EmployeeReader {
             log.warn("Message: " + message);
             throw new FileIsEmptyException(message);
         }
-
-        checkIsFileDamaged(path);
-
     }
 
-    private static class CustomErrorHandler implements ErrorHandler {
-        @Override
-        public void warning(SAXParseException e) {
-            log.debug(e);
-        }
-
-        @Override
-        public void error(SAXParseException e) {
-            log.debug(e);
-        }
+    // unwinds the parser when the consumer does not need more records
+    private static class StopReading extends RuntimeException {
+        static final StopReading INSTANCE = new StopReading();
 
-        @Override
-        public void fatalError(SAXParseException e) {
-            log.debug(e);
+        private StopReading() {
+            super(null, null, false, false);
         }
     }
 }
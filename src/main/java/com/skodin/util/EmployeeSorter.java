@@ -0,0 +1,248 @@
+package com.skodin.util;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
+import com.skodin.exceptions.*;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Sorts a staff file that does not have to fit the heap.
+ * <p>
+ * Records are streamed from the file into chunks of at most the memory budget, every chunk is sorted
+ * and spilled to a binary run next to the file. The runs are merged k at a time, where k is bounded
+ * by the buffers the budget can hold, and the last merge writes the sorted document over the file.
+ * Equal records keep their order, so the result is the same as sorting the whole list in memory.
+ * Subordinates written as references stay references.
+ */
+@Log4j2
+public class EmployeeSorter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // object headers, id, dates and list slot of a record on a 64-bit heap, strings are counted separately
+    private static final long RECORD_OVERHEAD = 160;
+
+    private final long memoryBudget;
+    private final EmployeeReader employeeReader = new EmployeeReader();
+
+    /**
+     * @param memoryBudget bytes of records kept in memory at once
+     */
+    public EmployeeSorter(long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * The file is replaced only once the whole document was read and sorted
+     *
+     * @throws PathIsNullException       if path is null
+     * @throws FileNotFoundException     if file not found
+     * @throws FileIsEmptyException      if file is empty
+     * @throws DamagedFileException      if file is not .xml or damaged
+     * @throws IncorrectContentException if file has incorrect tag
+     */
+    @SneakyThrows
+    public void sort(Path path, Comparator<Employee> comparator) {
+        log.info("Attempt to sort %s on disk".formatted(path));
+
+        List<Path> runs = new ArrayList<>();
+        Set<Path> created = new HashSet<>();
+        try {
+            List<Employee> chunk = new ArrayList<>();
+            long[] chunkSize = {0};
+
+            // the chunk is the only holder of the records, their references stay placeholders
+            employeeReader.readUnresolved(path, employee -> {
+                chunk.add(employee);
+                chunkSize[0] += estimateSize(employee);
+
+                if (chunkSize[0] >= memoryBudget) {
+                    runs.add(spill(path, chunk, comparator, created));
+                    chunk.clear();
+                    chunkSize[0] = 0;
+                }
+                return true;
+            });
+
+            chunk.sort(comparator);
+
+            if (runs.isEmpty()) {
+                save(path, chunk.iterator());
+                log.info("%s was sorted in memory".formatted(path));
+                return;
+            }
+
+            if (!chunk.isEmpty()) {
+                runs.add(spill(path, chunk, comparator, created));
+                chunk.clear();
+            }
+
+            // neighbouring runs are merged together, so equal records still come out in file order
+            int fanIn = (int) Math.max(2, Math.min(Integer.MAX_VALUE, memoryBudget / BUFFER_SIZE));
+            while (runs.size() > fanIn) {
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += fanIn) {
+                    List<Path> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+                    merged.add(group.size() == 1 ? group.get(0) : mergeToRun(path, group, comparator, created));
+                }
+                runs.clear();
+                runs.addAll(merged);
+            }
+
+            try (RunMerger merger = new RunMerger(runs, comparator)) {
+                save(path, merger);
+            }
+            log.info("%s was sorted in %d runs".formatted(path, runs.size()));
+        } finally {
+            for (Path run : created) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private static long estimateSize(Employee employee) {
+        long size = RECORD_OVERHEAD + 2L * employee.getFullName().length();
+
+        if (employee instanceof OtherEmployee otherEmployee && otherEmployee.getDescription() != null) {
+            size += 2L * otherEmployee.getDescription().length();
+        } else if (employee instanceof Manager manager) {
+            for (Employee subordinate : manager.getSubordinates()) {
+                if (subordinate != null) {
+                    size += SubordinateReferences.isPlaceholder(subordinate)
+                            ? RECORD_OVERHEAD
+                            : estimateSize(subordinate);
+                }
+            }
+        }
+
+        return size;
+    }
+
+    @SneakyThrows
+    private static Path spill(Path path, List<Employee> chunk, Comparator<Employee> comparator, Set<Path> created) {
+        chunk.sort(comparator);
+        return writeRun(path, chunk.iterator(), created);
+    }
+
+    private static Path mergeToRun(Path path, List<Path> runs, Comparator<Employee> comparator,
+                                   Set<Path> created) throws IOException {
+        Path run;
+        try (RunMerger merger = new RunMerger(runs, comparator)) {
+            run = writeRun(path, merger, created);
+        }
+
+        for (Path merged : runs) {
+            Files.delete(merged);
+            created.remove(merged);
+        }
+        return run;
+    }
+
+    private static Path writeRun(Path path, Iterator<Employee> employees, Set<Path> created) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Path run = Files.createTempFile(directory, path.getFileName().toString(), ".run");
+        created.add(run);
+
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+            while (employees.hasNext()) {
+                EmployeeBinaryCodec.write(output, employees.next());
+            }
+            EmployeeBinaryCodec.writeEnd(output);
+        }
+
+        return run;
+    }
+
+    private static void save(Path path, Iterator<Employee> employees) throws IOException {
+        DurableFiles.replace(path, outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8),
+                    BUFFER_SIZE);
+            EmployeeXmlEmitter emitter = new EmployeeXmlEmitter(writer);
+
+            emitter.start();
+            while (employees.hasNext()) {
+                emitter.write(employees.next());
+            }
+            emitter.end();
+            writer.flush();
+        });
+    }
+
+    /**
+     * Yields the records of sorted runs in order, a record of an earlier run goes first among equal ones
+     */
+    private static class RunMerger implements Iterator<Employee>, Closeable {
+
+        private final List<DataInputStream> inputs = new ArrayList<>();
+        private final PriorityQueue<Head> heads;
+
+        RunMerger(List<Path> runs, Comparator<Employee> comparator) throws IOException {
+            heads = new PriorityQueue<>(Math.max(1, runs.size()), Comparator
+                    .comparing((Head head) -> head.employee, comparator)
+                    .thenComparingInt(head -> head.run));
+
+            try {
+                for (Path run : runs) {
+                    inputs.add(new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE)));
+                    advance(inputs.size() - 1);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        @SneakyThrows
+        public Employee next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+
+            advance(head.run);
+            return head.employee;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (DataInputStream input : inputs) {
+                input.close();
+            }
+        }
+
+        private void advance(int run) throws IOException {
+            Employee employee = EmployeeBinaryCodec.read(inputs.get(run), SubordinateReferences.unresolved());
+            if (employee != null) {
+                heads.add(new Head(employee, run));
+            }
+        }
+
+        private static class Head {
+            final Employee employee;
+            final int run;
+
+            Head(Employee employee, int run) {
+                this.employee = employee;
+                this.run = run;
+            }
+        }
+    }
+}
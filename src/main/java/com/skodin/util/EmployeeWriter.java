@@ -1,43 +1,31 @@
 package com.skodin.util;
 
 import com.skodin.entities.Employee;
-import com.skodin.entities.Manager;
-import com.skodin.entities.OtherEmployee;
 import com.skodin.exceptions.*;
 import lombok.SneakyThrows;
 import lombok.extern.log4j.Log4j2;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
-import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 @Log4j2
 public class EmployeeWriter {
 
-    private final DocumentBuilder builder;
-
-    {
-        try {
-            builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            log.error("Exception: " + e);
-            throw new RuntimeException(e);
-        }
-    }
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     /**
      * @throws PathIsNullException       if path is null
@@ -46,9 +34,10 @@ public class EmployeeWriter {
      * @throws DamagedFileException      if file is not .xml or damaged
      * @throws IncorrectContentException if file has incorrect tag
      * @throws NullPointerException      if list is null
+     * @return fingerprint of the written file
      */
     @SneakyThrows
-    public void writeXML(Path path, List<Employee> employees) {
+    public FileFingerprint writeXML(Path path, List<Employee> employees) {
         log.info("Attempt to write xml");
 
         if (path == null) {
@@ -69,83 +58,108 @@ public class EmployeeWriter {
             throw new NullPointerException(message);
         }
 
-        Document document = builder.newDocument();
+        FileFingerprint fingerprint = save(employees, path);
+        log.info("Xml was written successfully");
+        return fingerprint;
+    }
 
-        Element root = document.createElement("employees");
-        document.appendChild(root);
+    /**
+     * Exports employees in the binary snapshot format
+     *
+     * @throws PathIsNullException   if path is null
+     * @throws FileNotFoundException if file not found
+     * @throws NullPointerException  if list is null
+     */
+    @SneakyThrows
+    public void writeBinary(Path path, List<Employee> employees) {
+        log.info("Attempt to write binary file");
 
-        write(document, employees, root);
+        if (path == null) {
+            String message = "Path cannot be null";
+            log.warn("Message: " + message);
+            throw new PathIsNullException(message);
+        }
 
-        save(document, path);
-        log.info("Xml was written successfully");
-    }
+        if (!Files.exists(path)) {
+            String message = "File %s does not exist".formatted(path);
+            log.warn("Message: " + message);
+            throw new FileNotFoundException(message);
+        }
 
-    private void write(Document document, List<Employee> employees, Element rootElement) {
-        for (Employee employee : employees) {
-            if (employee instanceof Manager) {
-                writeManager((Manager) employee, document, rootElement);
-            } else if (employee instanceof OtherEmployee) {
-                writeOtherEmployee((OtherEmployee) employee, document, rootElement);
-            } else if (employee != null) {
-                writeEmployee(employee, document, rootElement);
-            }
+        if (employees == null) {
+            String message = "List cannot be null";
+            log.warn("Message: " + message);
+            throw new NullPointerException(message);
         }
+
+        saveBinary(employees, path, new EmployeeBinaryCodec.Header(0, 0, 0));
+        log.info("Binary file was written successfully");
     }
 
-    private Element writeEmployee(Employee employee, Document document, Element root) {
-        Element element = document.createElement(employee.getClass().getSimpleName().toLowerCase());
-        element.setAttribute("id", employee.getId().toString());
-        root.appendChild(element);
+    /**
+     * Writes the binary snapshot of the given version of a file, the snapshot is created if needed
+     */
+    @SneakyThrows
+    public void writeSnapshot(Path snapshot, List<Employee> employees, FileFingerprint source) {
+        saveBinary(employees, snapshot, new EmployeeBinaryCodec.Header(source.getSize(),
+                source.getLastModified().to(TimeUnit.NANOSECONDS), source.getChecksum()));
+    }
 
-        Element fullName = document.createElement("fullName");
-        fullName.appendChild(document.createTextNode(employee.getFullName()));
-        element.appendChild(fullName);
+    /**
+     * @return document with the employees, in the same format as the file
+     */
+    @SneakyThrows
+    public String toXML(List<Employee> employees) {
+        StringWriter writer = new StringWriter();
+        write(employees, writer);
+        return writer.toString();
+    }
 
-        Element birthdayDate = document.createElement("birthdayDate");
-        birthdayDate.appendChild(document.createTextNode(employee.getBirthdayDate().toString()));
-        element.appendChild(birthdayDate);
+    private static FileFingerprint save(List<Employee> employees, Path path) throws IOException {
+        CRC32 checksum = new CRC32();
 
-        Element hiringDate = document.createElement("hiringDate");
-        hiringDate.appendChild(document.createTextNode(employee.getHiringDate().toString()));
-        element.appendChild(hiringDate);
+        DurableFiles.replace(path, outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new CheckedOutputStream(outputStream, checksum), StandardCharsets.UTF_8), BUFFER_SIZE);
+            write(employees, writer);
+            writer.flush();
+        });
 
-        return element;
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return new FileFingerprint(attributes.size(), attributes.lastModifiedTime(),
+                attributes.fileKey(), checksum.getValue());
     }
 
-    private void writeManager(Manager manager, Document document, Element root) {
-        Element element = writeEmployee(manager, document, root);
+    private static void saveBinary(List<Employee> employees, Path path,
+                                   EmployeeBinaryCodec.Header header) throws IOException {
+        DurableFiles.replace(path, outputStream -> {
+            CRC32 checksum = new CRC32();
+            DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(outputStream, BUFFER_SIZE), checksum));
 
-        List<Employee> employees = manager.getSubordinates();
-        Element subordinates = document.createElement("subordinates");
+            Predicate<Employee> referable = SubordinateReferences.getReferable(employees);
 
-        write(document, employees, subordinates);
+            EmployeeBinaryCodec.writeHeader(output, header);
+            for (Employee employee : employees) {
+                if (employee != null) {
+                    EmployeeBinaryCodec.write(output, employee, referable);
+                }
+            }
+            EmployeeBinaryCodec.writeEnd(output);
 
-        element.appendChild(subordinates);
+            output.writeLong(checksum.getValue());
+            output.flush();
+        });
     }
 
-    private void writeOtherEmployee(OtherEmployee otherEmployee, Document document, Element root) {
-        Element element = writeEmployee(otherEmployee, document, root);
-
-        Element description = document.createElement("description");
-        description.appendChild(document.createTextNode(otherEmployee.getDescription()));
-        element.appendChild(description);
-    }
+    private static void write(List<Employee> employees, Writer writer) throws IOException {
+        EmployeeXmlEmitter emitter = new EmployeeXmlEmitter(writer, SubordinateReferences.getReferable(employees));
 
-    private static void save(Document document, Path path) throws IOException, TransformerException {
-        document.getDocumentElement().normalize();
-        DOMSource dom = new DOMSource(document);
-        Transformer transformer = TransformerFactory.newInstance()
-                .newTransformer();
-
-        Properties outFormat = new Properties();
-        outFormat.setProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperties(outFormat);
-
-        StreamResult result = new StreamResult(Files.newOutputStream(
-                path,
-                StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.WRITE));
-        transformer.transform(dom, result);
+        emitter.start();
+        for (Employee employee : employees) {
+            emitter.write(employee);
+        }
+        emitter.end();
     }
 
 }
@@ -0,0 +1,213 @@
+package com.skodin.util;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.function.Predicate;
+
+/**
+ * Writes employees straight to the underlying writer, one record at a time.
+ * The output is byte-for-byte the indented format the identity transformer used to produce.
+ * A subordinate that is also a referable top-level record, or a placeholder of an unresolved reference,
+ * is written as {@code <subordinate ref="id"/>}.
+ * Managers whose subordinates are being written are kept on the heap, so a deep hierarchy does not exhaust the stack.
+ */
+class EmployeeXmlEmitter {
+
+    private static final String INDENT = "    ";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Writer writer;
+    private final Predicate<Employee> isReference;
+
+    private boolean rootIsOpen;
+
+    EmployeeXmlEmitter(Writer writer) {
+        this(writer, subordinate -> false);
+    }
+
+    EmployeeXmlEmitter(Writer writer, Predicate<Employee> isReference) {
+        this.writer = writer;
+        this.isReference = isReference;
+    }
+
+    void start() throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+        writer.write(LINE_SEPARATOR);
+        // the root start tag is completed lazily, an empty list is written as <employees/>
+        writer.write("<employees");
+    }
+
+    void write(Employee employee) throws IOException {
+        if (employee == null) {
+            return;
+        }
+
+        if (!rootIsOpen) {
+            writer.write(">");
+            writer.write(LINE_SEPARATOR);
+            rootIsOpen = true;
+        }
+
+        writeRecord(employee, 1);
+    }
+
+    void end() throws IOException {
+        writer.write(rootIsOpen ? "</employees>" : "/>");
+        writer.write(LINE_SEPARATOR);
+    }
+
+    private void writeRecord(Employee employee, int depth) throws IOException {
+        Deque<Manager> managers = new ArrayDeque<>();
+        Deque<Iterator<Employee>> path = new ArrayDeque<>();
+        Employee next = employee;
+
+        while (true) {
+            if (next != null) {
+                int nextDepth = depth + 2 * managers.size();
+                writeStart(next, nextDepth);
+
+                if (next instanceof Manager manager && manager.getSubordinates().stream().anyMatch(e -> e != null)) {
+                    indent(nextDepth + 1);
+                    writer.write("<subordinates>");
+                    writer.write(LINE_SEPARATOR);
+                    managers.push(manager);
+                    path.push(manager.getSubordinates().iterator());
+                } else {
+                    if (next instanceof Manager) {
+                        indent(nextDepth + 1);
+                        writer.write("<subordinates/>");
+                        writer.write(LINE_SEPARATOR);
+                    }
+                    writeEnd(next, nextDepth);
+                }
+            }
+
+            if (path.isEmpty()) {
+                return;
+            }
+
+            int managerDepth = depth + 2 * (managers.size() - 1);
+            next = path.peek().hasNext() ? path.peek().next() : null;
+            if (next != null && (isReference.test(next) || SubordinateReferences.isPlaceholder(next))) {
+                writeReference(next, managerDepth + 2);
+                next = null;
+            } else if (next == null && !path.peek().hasNext()) {
+                path.pop();
+                indent(managerDepth + 1);
+                writer.write("</subordinates>");
+                writer.write(LINE_SEPARATOR);
+                writeEnd(managers.pop(), managerDepth);
+            }
+        }
+    }
+
+    // the start tag and every field but the subordinates
+    private void writeStart(Employee employee, int depth) throws IOException {
+        indent(depth);
+        writer.write('<');
+        writer.write(getTagName(employee));
+        writer.write(" id=\"");
+        writeEscaped(employee.getId().toString(), true);
+        writer.write("\">");
+        writer.write(LINE_SEPARATOR);
+
+        writeField("fullName", employee.getFullName(), depth + 1);
+        writeField("birthdayDate", employee.getBirthdayDate().toString(), depth + 1);
+        writeField("hiringDate", employee.getHiringDate().toString(), depth + 1);
+
+        if (employee instanceof OtherEmployee otherEmployee) {
+            writeField("description", otherEmployee.getDescription(), depth + 1);
+        }
+    }
+
+    private void writeEnd(Employee employee, int depth) throws IOException {
+        indent(depth);
+        writer.write("</");
+        writer.write(getTagName(employee));
+        writer.write('>');
+        writer.write(LINE_SEPARATOR);
+    }
+
+    private void writeReference(Employee employee, int depth) throws IOException {
+        indent(depth);
+        writer.write("<subordinate ref=\"");
+        writeEscaped(employee.getId().toString(), true);
+        writer.write("\"/>");
+        writer.write(LINE_SEPARATOR);
+    }
+
+    private void writeField(String tagName, String text, int depth) throws IOException {
+        indent(depth);
+        writer.write('<');
+        writer.write(tagName);
+
+        if (text == null || text.isEmpty()) {
+            writer.write("/>");
+        } else {
+            writer.write('>');
+            writeEscaped(text, false);
+            writer.write("</");
+            writer.write(tagName);
+            writer.write('>');
+        }
+
+        writer.write(LINE_SEPARATOR);
+    }
+
+    private void writeEscaped(String text, boolean isAttribute) throws IOException {
+        int length = text.length();
+        int start = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            String replacement = switch (c) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '\r' -> "&#13;";
+                case '"' -> isAttribute ? "&quot;" : null;
+                case '\n' -> isAttribute ? "&#10;" : null;
+                case '\t' -> isAttribute ? "&#9;" : null;
+                default -> null;
+            };
+
+            if (replacement == null && Character.isHighSurrogate(c) && i + 1 < length) {
+                replacement = "&#" + text.codePointAt(i) + ";";
+                writer.write(text, start, i - start);
+                writer.write(replacement);
+                start = ++i + 1;
+                continue;
+            }
+
+            if (replacement != null) {
+                writer.write(text, start, i - start);
+                writer.write(replacement);
+                start = i + 1;
+            }
+        }
+
+        writer.write(text, start, length - start);
+    }
+
+    private void indent(int depth) throws IOException {
+        for (int i = 0; i < depth; i++) {
+            writer.write(INDENT);
+        }
+    }
+
+    private static String getTagName(Employee employee) {
+        if (employee instanceof Manager) {
+            return "manager";
+        } else if (employee instanceof OtherEmployee) {
+            return "otheremployee";
+        }
+        return "employee";
+    }
+}
@@ -0,0 +1,192 @@
+package com.skodin.util;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Single forward pass over an employees document.
+ * Every top-level record is handed to the consumer as soon as its end tag is read,
+ * so no intermediate tree is kept in memory.
+ * Subordinates written as references are linked to the referenced records when the document is read,
+ * until then a placeholder with the id only stands in their place. References left unresolved
+ * keep their placeholders and no record, so records handed out can be dropped while the document is read.
+ * Full names and descriptions go through the string pool, so repeated values share one instance.
+ */
+class EmployeeXmlParser {
+
+    private final XMLStreamReader reader;
+    private final Consumer<Employee> consumer;
+    private final StringPool stringPool;
+    private final SubordinateReferences references;
+
+    private boolean incorrectContent;
+
+    EmployeeXmlParser(XMLStreamReader reader, Consumer<Employee> consumer, StringPool stringPool) {
+        this(reader, consumer, stringPool, new SubordinateReferences());
+    }
+
+    EmployeeXmlParser(XMLStreamReader reader, Consumer<Employee> consumer, StringPool stringPool,
+                      SubordinateReferences references) {
+        this.reader = reader;
+        this.consumer = consumer;
+        this.stringPool = stringPool;
+        this.references = references;
+    }
+
+    /**
+     * Reads the whole document, including the trailing section,
+     * so that a damaged file is always reported before incorrect content
+     *
+     * @return false if at least one record has incorrect content or a reference is broken
+     * @throws XMLStreamException if document is not well-formed
+     */
+    boolean parse() throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == START_ELEMENT) {
+                readRecords(employee -> {
+                    references.register(employee);
+                    consumer.accept(employee);
+                }, null);
+                break;
+            }
+        }
+
+        while (reader.hasNext()) {
+            reader.next();
+        }
+
+        if (!references.resolve()) {
+            incorrectContent = true;
+        }
+
+        return !incorrectContent;
+    }
+
+    // reader is positioned at the start tag of the container, subordinates is null for the root
+    private void readRecords(Consumer<Employee> target, List<Employee> subordinates) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == END_ELEMENT) {
+                return;
+            }
+
+            if (event == START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "employee", "otheremployee", "manager" -> {
+                        Employee employee = readRecord();
+                        if (employee != null) {
+                            target.accept(employee);
+                        }
+                    }
+                    case "subordinate" -> {
+                        if (subordinates != null) {
+                            readReference(subordinates);
+                        } else {
+                            skipElement();
+                        }
+                    }
+                    default -> skipElement();
+                }
+            }
+        }
+    }
+
+    private Employee readRecord() throws XMLStreamException {
+        String tagName = reader.getLocalName();
+        String id = reader.getAttributeValue(null, "id");
+
+        String fullName = null;
+        String birthdayDate = null;
+        String hiringDate = null;
+        String description = null;
+        List<Employee> subordinates = new ArrayList<>();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == END_ELEMENT) {
+                break;
+            }
+
+            if (event == START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "fullName" -> fullName = readText(fullName);
+                    case "birthdayDate" -> birthdayDate = readText(birthdayDate);
+                    case "hiringDate" -> hiringDate = readText(hiringDate);
+                    case "description" -> description = readText(description);
+                    case "subordinates" -> readRecords(subordinates::add, subordinates);
+                    default -> skipElement();
+                }
+            }
+        }
+
+        if (id == null || fullName == null || birthdayDate == null || hiringDate == null
+            || (tagName.equals("otheremployee") && description == null)) {
+            incorrectContent = true;
+            return null;
+        }
+
+        Employee employee;
+        try {
+            employee = new Employee(UUID.fromString(id), stringPool.intern(fullName),
+                    LocalDate.parse(birthdayDate), LocalDate.parse(hiringDate));
+        } catch (IllegalArgumentException | DateTimeException e) {
+            incorrectContent = true;
+            return null;
+        }
+
+        return switch (tagName) {
+            case "otheremployee" -> new OtherEmployee(employee, stringPool.intern(description));
+            case "manager" -> new Manager(employee, subordinates);
+            default -> employee;
+        };
+    }
+
+    private void readReference(List<Employee> subordinates) throws XMLStreamException {
+        String ref = reader.getAttributeValue(null, "ref");
+        skipElement();
+
+        if (ref == null) {
+            incorrectContent = true;
+            return;
+        }
+
+        try {
+            references.add(subordinates, UUID.fromString(ref));
+        } catch (IllegalArgumentException e) {
+            incorrectContent = true;
+        }
+    }
+
+    // the first occurrence wins, as it did with getElementsByTagName
+    private String readText(String current) throws XMLStreamException {
+        String text = reader.getElementText();
+        return current == null ? text : current;
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == START_ELEMENT) {
+                depth++;
+            } else if (event == END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.skodin.util;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Identifies the exact version of a file that was read.
+ * Metadata is enough to tell that the file was replaced or rewritten, unless it was rewritten
+ * within one tick of its modification time, which then stays the same. Until the file is a tick old
+ * its content is compared too, through the checksum taken during the same pass as the parsing.
+ */
+@Getter
+@EqualsAndHashCode
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class FileFingerprint {
+
+    // file systems keeping whole seconds may round to two of them
+    private static final Duration COARSE_TICK = Duration.ofSeconds(2);
+    // finer times still follow the clock of the kernel, which advances a few milliseconds at a time
+    private static final Duration FINE_TICK = Duration.ofMillis(20);
+
+    long size;
+    FileTime lastModified;
+    Object fileKey;
+    long checksum;
+    // once the file is a tick old, a rewrite changes its modification time
+    @NonFinal
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    volatile boolean isSettled;
+
+    FileFingerprint(long size, FileTime lastModified, Object fileKey, long checksum) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+        this.checksum = checksum;
+        this.isSettled = isTickOld(lastModified);
+    }
+
+    /**
+     * @return true if the file still has the same size, modification time and identity
+     * and, while it is not a tick old, the same content
+     */
+    public boolean isCurrent(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (size != attributes.size()
+                || !lastModified.equals(attributes.lastModifiedTime())
+                || !Objects.equals(fileKey, attributes.fileKey())) {
+                return false;
+            }
+
+            if (isSettled) {
+                return true;
+            }
+
+            // taken before reading, the content read is at least as new as the time
+            boolean isTickOld = isTickOld(lastModified);
+            if (checksumOf(path) != checksum) {
+                return false;
+            }
+
+            isSettled = isTickOld;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return checksum of the whole content, as taken while the file is parsed or written
+     */
+    public static long checksumOf(Path path) throws IOException {
+        CRC32 checksum = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.clear();
+            }
+        }
+        return checksum.getValue();
+    }
+
+    private static boolean isTickOld(FileTime lastModified) {
+        Instant modified = lastModified.toInstant();
+        Duration tick = modified.getNano() == 0 ? COARSE_TICK : FINE_TICK;
+        return Duration.between(modified, Instant.now()).compareTo(tick) > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "%d:%s:%08x".formatted(size, lastModified, checksum);
+    }
+}
@@ -0,0 +1,22 @@
+package com.skodin.util;
+
+import com.skodin.entities.Employee;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Result of a single validated pass over an employees file
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StaffFile {
+    Path path;
+    List<Employee> employees;
+    FileFingerprint fingerprint;
+}
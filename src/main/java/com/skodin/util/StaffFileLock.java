@@ -0,0 +1,104 @@
+package com.skodin.util;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.io.Closeable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lock and version of an employees file shared by several processes, kept in a file next to it.
+ * Writers hold the lock while they read, change and commit the file, and advance the version.
+ * Readers never lock, they compare the version, which is mapped, so no system call is made to read it.
+ * <p>
+ * The version is not kept in the employees file itself: with the journal a commit does not rewrite that file,
+ * and the file is replaced rather than changed in place, so neither a lock nor a mapping would outlive a commit.
+ */
+public class StaffFileLock implements Closeable {
+
+    private static final long MAX_PAUSE_MILLIS = 64;
+
+    @Getter
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer version;
+
+    private StaffFileLock(Path path, FileChannel channel, MappedByteBuffer version) {
+        this.path = path;
+        this.channel = channel;
+        this.version = version;
+    }
+
+    public static Path of(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + ".lock");
+    }
+
+    /**
+     * The lock file is created with version zero if there is none
+     */
+    @SneakyThrows
+    public static StaffFileLock open(Path dataFile) {
+        Path path = of(dataFile);
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            return new StaffFileLock(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES));
+        } catch (Exception e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of writes made to the file since the lock file was created
+     */
+    public long getVersion() {
+        return version.getLong(0);
+    }
+
+    /**
+     * Waits until no other process, or other lock of this process, holds the file.
+     * A lock of this process cannot be waited for, so it is tried again after a growing pause
+     */
+    @SneakyThrows
+    public FileLock lock() {
+        long pause = 1;
+
+        while (true) {
+            try {
+                FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    return lock;
+                }
+            } catch (OverlappingFileLockException e) {
+                // held through another channel of this process
+            }
+
+            Thread.sleep(pause);
+            pause = Math.min(pause * 2, MAX_PAUSE_MILLIS);
+        }
+    }
+
+    /**
+     * Must be called while the lock is held
+     *
+     * @return the new version
+     */
+    public long advance() {
+        long next = getVersion() + 1;
+        version.putLong(0, next);
+        return next;
+    }
+
+    @Override
+    @SneakyThrows
+    public void close() {
+        channel.close();
+    }
+}
@@ -0,0 +1,81 @@
+package com.skodin.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool that hands out a single instance for equal strings, so that values repeated across
+ * records, such as common descriptions and the names in copies of subordinates, are kept once.
+ * <p>
+ * Every string maps to one slot by its hash. An equal string found in the slot is returned,
+ * otherwise the new string takes the slot over. The pool never grows past its capacity, and a value
+ * stays only as long as no other value hashes to its slot.
+ * Slots are written without locking: strings are immutable, so a reader sees either the old or the new one.
+ */
+public class StringPool {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final String[] strings;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public StringPool(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be positive and at most 2^30");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        strings = new String[size < capacity ? size << 1 : size];
+    }
+
+    public StringPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return pooled string equal to the text, or the text itself if it was not pooled yet
+     */
+    public String intern(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        lookups.increment();
+
+        int hash = text.hashCode();
+        int slot = (hash ^ hash >>> 16) & (strings.length - 1);
+        String pooled = strings[slot];
+
+        if (text.equals(pooled)) {
+            hits.increment();
+            return pooled;
+        }
+
+        strings[slot] = text;
+        return text;
+    }
+
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return share of lookups that returned a pooled string, 0 before the first lookup
+     */
+    public double getHitRate() {
+        long total = getLookups();
+        return total == 0 ? 0 : (double) getHits() / total;
+    }
+
+    @Override
+    public String toString() {
+        return "%d lookups, %.1f%% hits".formatted(getLookups(), getHitRate() * 100);
+    }
+}
@@ -0,0 +1,208 @@
+package com.skodin.util;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Links subordinates stored as id references to the single loaded instance of the referenced employee.
+ * A reference may point to a record further in the file, so references are resolved once all records are read.
+ * <p>
+ * Only a top-level record with a unique id can be referenced, any other subordinate is stored as a copy.
+ * Subordinates are normalized by id when written: a copy equal to the top-level record with its id
+ * is written as a reference too. A finite record is never equal to one of its own subordinates,
+ * so normalized references never form a cycle.
+ * <p>
+ * References left unresolved keep no records: only the ids of the top-level records and the ids each of them
+ * references are kept, which is enough to report a missing record or a cycle once all records are read.
+ */
+public class SubordinateReferences {
+
+    private final Map<UUID, Employee> topLevel = new HashMap<>();
+    private final List<List<Employee>> lists = new ArrayList<>();
+    private final List<Integer> positions = new ArrayList<>();
+    private final List<UUID> ids = new ArrayList<>();
+    private final Set<UUID> registered = new HashSet<>();
+    private final Map<UUID, List<UUID>> referenced = new HashMap<>();
+    private final List<UUID> referencedByDuplicates = new ArrayList<>();
+    private final boolean isTracking;
+
+    SubordinateReferences() {
+        this(true);
+    }
+
+    private SubordinateReferences(boolean isTracking) {
+        this.isTracking = isTracking;
+    }
+
+    /**
+     * @return references that leave placeholders in place, for records that are read one at a time
+     * and written back with their references; registered records are still checked on resolution
+     */
+    static SubordinateReferences unresolved() {
+        return new SubordinateReferences(false);
+    }
+
+    /**
+     * @return true if the subordinate stands for a reference that is not resolved
+     */
+    public static boolean isPlaceholder(Employee employee) {
+        return employee instanceof Placeholder;
+    }
+
+    /**
+     * @return test of the subordinates that are written as references to the top-level records
+     */
+    static Predicate<Employee> getReferable(Collection<Employee> employees) {
+        Map<UUID, Employee> unique = new HashMap<>();
+        Set<UUID> duplicates = new HashSet<>();
+
+        for (Employee employee : employees) {
+            if (employee != null && unique.putIfAbsent(employee.getId(), employee) != null) {
+                duplicates.add(employee.getId());
+            }
+        }
+        unique.keySet().removeAll(duplicates);
+
+        return subordinate -> {
+            Employee employee = unique.get(subordinate.getId());
+            return employee != null && employee.equals(subordinate);
+        };
+    }
+
+    void register(Employee employee) {
+        if (isTracking) {
+            topLevel.putIfAbsent(employee.getId(), employee);
+            return;
+        }
+
+        // a reference resolves to the first record with the id, the following ones only need their references checked
+        List<UUID> targets = getPlaceholderIds(employee);
+        if (!registered.add(employee.getId())) {
+            referencedByDuplicates.addAll(targets);
+        } else if (!targets.isEmpty()) {
+            referenced.put(employee.getId(), targets);
+        }
+    }
+
+    /**
+     * Adds a placeholder to the subordinates, it is replaced by the referenced record on resolution
+     */
+    void add(List<Employee> subordinates, UUID id) {
+        if (isTracking) {
+            lists.add(subordinates);
+            positions.add(subordinates.size());
+            ids.add(id);
+        }
+        subordinates.add(new Placeholder(id));
+    }
+
+    /**
+     * @return false if a reference points to a missing record or managers reference each other in a cycle
+     */
+    boolean resolve() {
+        if (!isTracking) {
+            return referenced.values().stream().flatMap(List::stream).allMatch(registered::contains)
+                   && registered.containsAll(referencedByDuplicates)
+                   && !hasCycle(referenced.keySet(), id -> referenced.getOrDefault(id, List.of()), new HashMap<>());
+        }
+
+        for (int i = 0; i < ids.size(); i++) {
+            Employee employee = topLevel.get(ids.get(i));
+            if (employee == null) {
+                return false;
+            }
+            lists.get(i).set(positions.get(i), employee);
+        }
+
+        if (ids.isEmpty()) {
+            return true;
+        }
+
+        return !hasCycle(topLevel.values(), employee -> employee instanceof Manager manager
+                ? manager.getSubordinates()
+                : List.of(), new IdentityHashMap<>());
+    }
+
+    /**
+     * @return true if the employee manages the manager, directly or through other managers
+     */
+    public static boolean manages(Employee employee, Manager manager) {
+        Set<Employee> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Employee> pending = new ArrayDeque<>();
+        pending.push(employee);
+
+        while (!pending.isEmpty()) {
+            Employee current = pending.pop();
+            if (current == manager) {
+                return true;
+            }
+            if (current instanceof Manager currentManager && visited.add(current)) {
+                currentManager.getSubordinates().stream().filter(Objects::nonNull).forEach(pending::push);
+            }
+        }
+        return false;
+    }
+
+    // depth-first, with the path kept on the heap; a node that is still on the path is not finished yet
+    private static <T> boolean hasCycle(Collection<T> nodes, Function<T, List<T>> successors,
+                                        Map<T, Boolean> isFinished) {
+        Deque<Iterator<T>> path = new ArrayDeque<>();
+        Deque<T> visiting = new ArrayDeque<>();
+
+        for (T node : nodes) {
+            T next = node;
+
+            while (true) {
+                if (next != null) {
+                    Boolean state = isFinished.get(next);
+                    if (state == null) {
+                        isFinished.put(next, false);
+                        visiting.push(next);
+                        path.push(successors.apply(next).iterator());
+                    } else if (!state) {
+                        return true;
+                    }
+                }
+
+                if (path.isEmpty()) {
+                    break;
+                }
+                if (path.peek().hasNext()) {
+                    next = path.peek().next();
+                } else {
+                    path.pop();
+                    isFinished.put(visiting.pop(), true);
+                    next = null;
+                }
+            }
+        }
+        return false;
+    }
+
+    // ids of the placeholders anywhere under the record, copies of managers included
+    private static List<UUID> getPlaceholderIds(Employee employee) {
+        List<UUID> targets = new ArrayList<>();
+        Deque<Employee> pending = new ArrayDeque<>();
+        pending.push(employee);
+
+        while (!pending.isEmpty()) {
+            Employee current = pending.pop();
+            if (current instanceof Placeholder) {
+                targets.add(current.getId());
+            } else if (current instanceof Manager manager) {
+                manager.getSubordinates().stream().filter(Objects::nonNull).forEach(pending::push);
+            }
+        }
+        return targets;
+    }
+
+    private static class Placeholder extends Employee {
+        Placeholder(UUID id) {
+            super(id, null, null, null);
+        }
+    }
+}
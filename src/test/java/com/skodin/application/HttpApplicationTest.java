@@ -0,0 +1,206 @@
+package com.skodin.application;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skodin.MainXMLTest;
+import com.skodin.entities.Employee;
+import com.skodin.services.EmployeeService;
+import com.skodin.util.EmployeeReader;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpApplicationTest extends MainXMLTest {
+
+    private static final String FIRST_ID = "abd6b899-a798-4a67-8b63-0080af5468c2";
+    private static final String SECOND_ID = "49486d44-a487-4d62-aac7-0171917a3386";
+    private static final String MANAGER_ID = "dd82a20d-a11f-4610-86a1-c8bfc585eb79";
+    private static final String NEW_EMPLOYEE = """
+            [{"type": "EMPLOYEE", "id": "%s", "fullName": "Ann",
+              "birthdayDate": "2024-01-02", "hiringDate": "2024-01-02"}]
+            """.formatted(STRING_ID);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final EmployeeService employeeService = new EmployeeService();
+    private HttpApplication application;
+
+    @BeforeEach
+    @SneakyThrows
+    void startApplication() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        application = new HttpApplication(employeeService, TEMP_FILE_PATH, 0, executor);
+        application.start();
+    }
+
+    @AfterEach
+    void stopApplication() {
+        application.stop();
+        executor.shutdownNow();
+        employeeService.close();
+    }
+
+    @Test
+    @SneakyThrows
+    void get_employees_returnsListInFileOrder() {
+        HttpResponse<String> response = send("GET", "/employees", null);
+
+        assertEquals(200, response.statusCode());
+        JsonNode employees = mapper.readTree(response.body());
+        assertEquals(3, employees.size());
+        assertEquals(FIRST_ID, employees.get(0).get("id").asText());
+        assertEquals("MANAGER", employees.get(2).get("type").asText());
+        assertEquals(FIRST_ID, employees.get(2).get("subordinates").get(0).get("id").asText());
+    }
+
+    @Test
+    @SneakyThrows
+    void get_nestedManagers_listsSubordinatesOneLevelDeep() {
+        employeeService.changeEmployeeType(TEMP_FILE_PATH, FIRST_ID, "manager", "");
+        employeeService.assignEmployeeToManager(TEMP_FILE_PATH, MANAGER_ID, FIRST_ID);
+        employeeService.assignEmployeeToManager(TEMP_FILE_PATH, FIRST_ID, SECOND_ID);
+
+        JsonNode employees = mapper.readTree(send("GET", "/employees", null).body());
+
+        JsonNode manager = null;
+        JsonNode first = null;
+        for (JsonNode employee : employees) {
+            if (employee.get("id").asText().equals(MANAGER_ID)) {
+                manager = employee;
+            } else if (employee.get("id").asText().equals(FIRST_ID)) {
+                first = employee;
+            }
+        }
+        assertNotNull(manager);
+        assertNotNull(first);
+        JsonNode subordinate = manager.get("subordinates").get(manager.get("subordinates").size() - 1);
+        assertEquals(FIRST_ID, subordinate.get("id").asText());
+        assertEquals("MANAGER", subordinate.get("type").asText());
+        assertFalse(subordinate.has("subordinates"));
+        assertEquals(SECOND_ID, first.get("subordinates").get(0).get("id").asText());
+    }
+
+    @Test
+    @SneakyThrows
+    void get_orderedEmployees_returnsListInOrderAndKeepsFile() {
+        String before = Files.readString(TEMP_FILE_PATH);
+
+        HttpResponse<String> response = send("GET", "/employees?order=full_name", null);
+
+        assertEquals(200, response.statusCode());
+        assertEquals(List.of("FirstEmployee", "SecondEmployee", "ThirdEmployee"),
+                mapper.readTree(response.body()).findValuesAsText("fullName").subList(0, 3));
+        assertEquals(before, Files.readString(TEMP_FILE_PATH));
+        assertEquals(400, send("GET", "/employees?order=age", null).statusCode());
+    }
+
+    @Test
+    void post_newEmployees_addsThemOnceOnly() {
+        assertEquals(201, send("POST", "/employees", NEW_EMPLOYEE).statusCode());
+        assertEquals(409, send("POST", "/employees", NEW_EMPLOYEE).statusCode());
+
+        assertEquals(4, new EmployeeReader().readXML(TEMP_FILE_PATH).size());
+    }
+
+    @Test
+    void post_invalidBody_returnsBadRequest() {
+        assertEquals(400, send("POST", "/employees", "[{").statusCode());
+        assertEquals(400, send("POST", "/employees", "null").statusCode());
+        assertEquals(400, send("POST", "/employees", "[{\"type\": \"EMPLOYEE\"}]").statusCode());
+        assertEquals(400, send("POST", "/employees", NEW_EMPLOYEE.replace(STRING_ID, "1")).statusCode());
+    }
+
+    @Test
+    void postSort_order_rewritesFileInOrder() {
+        assertEquals(204, send("POST", "/employees/sort?order=hiring_date", null).statusCode());
+        assertEquals(204, send("POST", "/employees/sort?order=full_name", null).statusCode());
+        assertEquals(400, send("POST", "/employees/sort?order=age", null).statusCode());
+
+        assertEquals(List.of("FirstEmployee", "SecondEmployee", "ThirdEmployee"),
+                new EmployeeReader().readXML(TEMP_FILE_PATH).stream().map(Employee::getFullName).toList());
+    }
+
+    @Test
+    void putType_employee_changesTypeOrReportsWhy() {
+        assertEquals(204, send("PUT", "/employees/" + FIRST_ID + "/type",
+                "{\"type\": \"other_employee\", \"description\": \"d\"}").statusCode());
+        assertEquals(400, send("PUT", "/employees/" + FIRST_ID + "/type",
+                "{\"type\": \"other_employee\"}").statusCode());
+        assertEquals(400, send("PUT", "/employees/" + FIRST_ID + "/type", "{\"type\": \"boss\"}").statusCode());
+        assertEquals(404, send("PUT", "/employees/" + STRING_ID + "/type", "{\"type\": \"manager\"}").statusCode());
+    }
+
+    @Test
+    void putManager_employee_assignsItOnce() {
+        String body = "{\"managerId\": \"%s\"}".formatted(MANAGER_ID);
+
+        assertEquals(204, send("PUT", "/employees/" + SECOND_ID + "/manager", body).statusCode());
+        assertEquals(409, send("PUT", "/employees/" + SECOND_ID + "/manager", body).statusCode());
+        assertEquals(400, send("PUT", "/employees/" + STRING_ID + "/manager", body).statusCode());
+        assertEquals(400, send("PUT", "/employees/" + MANAGER_ID + "/manager",
+                "{\"managerId\": \"%s\"}".formatted(FIRST_ID)).statusCode());
+    }
+
+    @Test
+    void delete_employee_removesItOnce() {
+        assertEquals(204, send("DELETE", "/employees/" + FIRST_ID, null).statusCode());
+        assertEquals(404, send("DELETE", "/employees/" + FIRST_ID, null).statusCode());
+        assertEquals(400, send("DELETE", "/employees/1", null).statusCode());
+
+        assertEquals(2, new EmployeeReader().readXML(TEMP_FILE_PATH).size());
+    }
+
+    @Test
+    void request_unknownOperation_returnsNotFound() {
+        assertEquals(404, send("GET", "/employeesList", null).statusCode());
+        assertEquals(404, send("PATCH", "/employees", null).statusCode());
+        assertEquals(404, send("GET", "/employees/" + FIRST_ID + "/type/x", null).statusCode());
+    }
+
+    @Test
+    @SneakyThrows
+    void request_missingDataFile_returnsNotFound() {
+        Files.delete(TEMP_FILE_PATH);
+
+        assertEquals(404, send("GET", "/employees", null).statusCode());
+    }
+
+    @Test
+    @SneakyThrows
+    void request_damagedDataFile_returnsServerError() {
+        Files.writeString(TEMP_FILE_PATH, "<employees><employee>");
+
+        HttpResponse<String> response = send("GET", "/employees", null);
+
+        assertEquals(500, response.statusCode());
+        assertEquals("Data file is damaged", mapper.readTree(response.body()).get("error").asText());
+        Files.copy(Path.of(ROOT + "/employee.xml"), TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        Files.writeString(TEMP_FILE_PATH, Files.readString(TEMP_FILE_PATH).replace("employee>", "worker>"));
+        assertEquals(500, send("DELETE", "/employees/" + FIRST_ID, null).statusCode());
+    }
+
+    @SneakyThrows
+    private HttpResponse<String> send(String method, String path, String body) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + application.getPort() + path))
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
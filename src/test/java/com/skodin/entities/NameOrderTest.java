@@ -0,0 +1,67 @@
+package com.skodin.entities;
+
+import com.skodin.entities.enums.EmployeeOrder;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameOrderTest {
+
+    private static final LocalDate DATE = LocalDate.parse("2024-01-02");
+
+    private static List<Employee> getEmployees(String... fullNames) {
+        List<Employee> employees = new ArrayList<>();
+        for (String fullName : fullNames) {
+            employees.add(new Employee(UUID.randomUUID(), fullName, DATE, DATE));
+        }
+        return employees;
+    }
+
+    private static List<String> getFullNames(List<Employee> employees) {
+        return employees.stream().map(Employee::getFullName).toList();
+    }
+
+    @Test
+    void compare_cyrillicNames_ordersYoWithYe() {
+        List<Employee> employees = getEmployees("Жуков", "Ёлкин", "Андреев", "Еремеев");
+
+        employees.sort(EmployeeOrder.FULL_NAME.getComparator(Locale.forLanguageTag("ru")));
+
+        assertEquals(List.of("Андреев", "Ёлкин", "Еремеев", "Жуков"), getFullNames(employees));
+    }
+
+    @Test
+    void compare_accentedNames_ordersAccentsWithBaseLetters() {
+        List<Employee> employees = getEmployees("Zoe", "Émile", "Eve", "adam");
+
+        employees.sort(EmployeeOrder.FULL_NAME.getComparator(Locale.FRENCH));
+
+        assertEquals(List.of("adam", "Émile", "Eve", "Zoe"), getFullNames(employees));
+    }
+
+    @Test
+    void getKey_sameNameTwice_reusesCachedKey() {
+        NameOrder order = NameOrder.of(Locale.ROOT);
+        Employee employee = getEmployees("Skodin Nikita Dm").get(0);
+
+        assertSame(order.getKey(employee), order.getKey(employee));
+    }
+
+    @Test
+    void getKey_nameChanged_computesKeyAgain() {
+        NameOrder order = NameOrder.of(Locale.ROOT);
+        List<Employee> employees = getEmployees("b", "c");
+        assertTrue(order.compare(employees.get(0), employees.get(1)) < 0);
+
+        employees.get(0).setFullName("d");
+
+        assertTrue(order.compare(employees.get(0), employees.get(1)) > 0);
+        assertEquals(employees.get(0), new Employee(employees.get(0).getId(), "d", DATE, DATE));
+    }
+}
@@ -0,0 +1,170 @@
+package com.skodin.repositories;
+
+import com.skodin.MainXMLTest;
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
+import com.skodin.entities.enums.EmployeeDate;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.entities.enums.EmployeeType;
+import com.skodin.util.BinarySnapshot;
+import com.skodin.util.EmployeeReader;
+import com.skodin.util.EmployeeWriter;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarStaffStoreTest extends MainXMLTest {
+
+    private static final UUID FIRST_ID = UUID.fromString("abd6b899-a798-4a67-8b63-0080af5468c2");
+    private static final UUID MANAGER_ID = UUID.fromString("dd82a20d-a11f-4610-86a1-c8bfc585eb79");
+
+    private final EmployeeReader employeeReader = new EmployeeReader();
+    private final EmployeeWriter employeeWriter = new EmployeeWriter();
+
+    @SneakyThrows
+    private ColumnarStaffStore openStore() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        return ColumnarStaffStore.open(TEMP_FILE_PATH, employeeReader, employeeWriter, StorageOptions.DEFAULT);
+    }
+
+    @Test
+    void findAll_loadedFile_returnsViewsEqualToRecords() {
+        ColumnarStaffStore store = openStore();
+
+        List<Employee> employees = store.findAll();
+
+        assertEquals(employeeReader.readXML(EMPLOYEES_PATH), employees);
+        assertEquals("de", ((OtherEmployee) employees.get(1)).getDescription());
+        assertSame(employees.get(0), store.findById(FIRST_ID).orElseThrow());
+        assertThrows(UnsupportedOperationException.class, () -> employees.get(0).setFullName("Changed"));
+    }
+
+    @Test
+    @SneakyThrows
+    void findAll_viewsNoLongerHeld_areNotKeptByStore() {
+        ColumnarStaffStore store = openStore();
+        UUID otherId = UUID.fromString("49486d44-a487-4d62-aac7-0171917a3386");
+        WeakReference<Employee> view = new WeakReference<>(store.findAll().get(1));
+
+        for (int i = 0; i < 100 && view.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(view.get());
+        assertEquals(employeeReader.readXML(EMPLOYEES_PATH).get(1), store.findById(otherId).orElseThrow());
+        Manager manager = (Manager) store.findById(MANAGER_ID).orElseThrow();
+        assertSame(manager.getSubordinates().get(0), store.findById(FIRST_ID).orElseThrow());
+    }
+
+    @Test
+    void open_embeddedCopyOfRecord_replacesCopyWithView() {
+        ColumnarStaffStore store = openStore();
+
+        Manager manager = (Manager) store.findById(MANAGER_ID).orElseThrow();
+
+        assertSame(store.findById(FIRST_ID).orElseThrow(), manager.getSubordinates().get(0));
+    }
+
+    @Test
+    @SneakyThrows
+    void open_referencesToLaterRecords_linksViewsFromFileAndSnapshot() {
+        Path snapshot = BinarySnapshot.of(TEMP_FILE_PATH);
+        Employee later = new Employee(UUID.randomUUID(), "Later", DATE, DATE);
+        Employee copy = new Employee(later.getId(), "Changed copy", DATE, DATE);
+        Manager manager = new Manager(MANAGER_ID, "Manager", DATE, DATE, new ArrayList<>(List.of(later, copy)));
+        employeeWriter.writeXML(TEMP_FILE_PATH, List.of(manager, later));
+        StorageOptions options = StorageOptions.builder().binarySnapshotEnabled(true).build();
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                ColumnarStaffStore store = ColumnarStaffStore.open(TEMP_FILE_PATH, employeeReader, employeeWriter,
+                        options);
+                List<Employee> subordinates = ((Manager) store.findById(MANAGER_ID).orElseThrow()).getSubordinates();
+
+                assertTrue(Files.exists(snapshot));
+                assertEquals(List.of(manager, later), store.findAll());
+                assertSame(store.findById(later.getId()).orElseThrow(), subordinates.get(0));
+                assertEquals(copy, subordinates.get(1));
+            }
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    void addAll_bigListOfEmployees_keepsSubordinatesAsViews() {
+        ColumnarStaffStore store = openStore();
+
+        store.addAll(getEmployees());
+
+        List<Employee> employees = store.findAll();
+        Manager manager = (Manager) employees.get(employees.size() - 1);
+        assertEquals(8, store.size());
+        assertEquals(5, store.findByFullName("Skodin Nikita Dm").size());
+        assertSame(employees.get(6), manager.getSubordinates().get(2));
+        assertTrue(store.manages(manager, (Manager) employees.get(5)));
+        assertEquals(8, store.findByDateRange(EmployeeDate.HIRING_DATE, DATE, DATE).size());
+        assertTrue(store.findByDateRange(EmployeeDate.BIRTHDAY_DATE, null, DATE.minusDays(1)).isEmpty());
+    }
+
+    @Test
+    void removeById_duplicatedId_removesEveryRecordAndCompacts() {
+        ColumnarStaffStore store = openStore();
+        store.addAll(getEmployees());
+        Employee first = store.findById(FIRST_ID).orElseThrow();
+
+        assertTrue(store.removeById(ID));
+        assertTrue(store.removeByFullName("SecondEmployee"));
+
+        assertTrue(store.findById(ID).isEmpty());
+        assertEquals(2, store.size());
+        assertEquals(List.of("FirstEmployee", "ThirdEmployee"),
+                store.findAll().stream().map(Employee::getFullName).toList());
+        assertSame(first, store.findById(FIRST_ID).orElseThrow());
+    }
+
+    @Test
+    void changeTypeAndAssign_managerFollowsReplacement() {
+        ColumnarStaffStore store = openStore();
+        Manager manager = (Manager) store.findById(MANAGER_ID).orElseThrow();
+        Employee second = store.findByFullName("SecondEmployee").get(0);
+
+        store.assign(manager, second);
+        store.changeType(second, EmployeeType.EMPLOYEE, null);
+
+        Employee replacement = store.findByFullName("SecondEmployee").get(0);
+        assertEquals(EmployeeType.EMPLOYEE, EmployeeType.of(replacement));
+        assertSame(replacement, manager.getSubordinates().get(1));
+        assertTrue(store.findByType(EmployeeType.OTHER_EMPLOYEE).isEmpty());
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void sortAndCommit_writesFileInOrderAndStaysCurrent() {
+        ColumnarStaffStore store = openStore();
+        List<Employee> employees = new ArrayList<>(getEmployees().subList(0, 2));
+        employees.add(new Employee(UUID.randomUUID(), "Ann", DATE, DATE));
+        store.addAll(employees);
+        Employee first = store.findById(FIRST_ID).orElseThrow();
+
+        store.sort(EmployeeOrder.FULL_NAME);
+        store.commit();
+
+        assertTrue(store.isCurrent());
+        assertEquals(store.findAll(), employeeReader.readXML(TEMP_FILE_PATH));
+        assertEquals("Ann", store.findAll().get(0).getFullName());
+        assertEquals("FirstEmployee", first.getFullName());
+        assertSame(first, store.findById(FIRST_ID).orElseThrow());
+    }
+}
@@ -0,0 +1,54 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.Employee;
+import com.skodin.entities.enums.EmployeeDate;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DateRangeIndexTest {
+
+    private static final Employee FIRST = employee("First", "2020-05-01");
+    private static final Employee SECOND = employee("Second", "2019-03-15");
+    private static final Employee THIRD = employee("Third", "2020-05-01");
+    private static final Employee UNDATED = employee("Undated", null);
+
+    private final DateRangeIndex index = new DateRangeIndex(EmployeeDate.HIRING_DATE,
+            List.of(FIRST, SECOND, THIRD, UNDATED));
+
+    @Test
+    void find_inclusiveBounds_returnsRecordsByDateInFileOrder() {
+        assertEquals(List.of(SECOND, FIRST, THIRD),
+                index.find(LocalDate.parse("2019-03-15"), LocalDate.parse("2020-05-01")));
+        assertEquals(List.of(FIRST, THIRD),
+                index.find(LocalDate.parse("2020-05-01"), LocalDate.parse("2020-05-01")));
+        assertEquals(List.of(), index.find(LocalDate.parse("2019-03-16"), LocalDate.parse("2020-04-30")));
+    }
+
+    @Test
+    void find_openBounds_returnsEveryDatedRecord() {
+        assertEquals(List.of(SECOND, FIRST, THIRD), index.find(null, null));
+        assertEquals(List.of(SECOND), index.find(null, LocalDate.parse("2020-01-01")));
+        assertEquals(List.of(FIRST, THIRD), index.find(LocalDate.parse("2020-01-01"), null));
+    }
+
+    @Test
+    void addAndRemove_keepRecordsInOrder() {
+        Employee fourth = employee("Fourth", "2020-05-01");
+
+        index.add(fourth);
+        index.remove(FIRST);
+        index.remove(employee("First", "2020-05-01"));
+
+        assertEquals(List.of(SECOND, THIRD, fourth), index.find(null, null));
+    }
+
+    private static Employee employee(String fullName, String hiringDate) {
+        return new Employee(UUID.randomUUID(), fullName, LocalDate.parse("2000-01-01"),
+                hiringDate == null ? null : LocalDate.parse(hiringDate));
+    }
+}
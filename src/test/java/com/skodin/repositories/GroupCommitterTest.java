@@ -0,0 +1,71 @@
+package com.skodin.repositories;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitterTest {
+
+    @Test
+    @SneakyThrows
+    void commit_concurrentCallers_shareWrites() {
+        AtomicInteger flushes = new AtomicInteger();
+        GroupCommitter groupCommitter = new GroupCommitter(() -> {
+            flushes.incrementAndGet();
+            sleep(20);
+        }, Duration.ZERO);
+
+        int callers = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < callers; i++) {
+            Thread thread = new Thread(() -> {
+                await(start);
+                groupCommitter.commit();
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(flushes.get() >= 1);
+        assertTrue(flushes.get() < callers);
+    }
+
+    @Test
+    void commit_failedWrite_throwsAndNextCommitWritesAgain() {
+        AtomicInteger flushes = new AtomicInteger();
+        GroupCommitter groupCommitter = new GroupCommitter(() -> {
+            if (flushes.incrementAndGet() == 1) {
+                throw new IllegalStateException("disk is full");
+            }
+        }, Duration.ZERO);
+
+        assertThrows(IllegalStateException.class, groupCommitter::commit);
+        groupCommitter.commit();
+
+        assertEquals(2, flushes.get());
+    }
+
+    @SneakyThrows
+    private static void sleep(long millis) {
+        Thread.sleep(millis);
+    }
+
+    @SneakyThrows
+    private static void await(CountDownLatch latch) {
+        latch.await();
+    }
+}
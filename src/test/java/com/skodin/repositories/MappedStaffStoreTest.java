@@ -0,0 +1,243 @@
+package com.skodin.repositories;
+
+import com.skodin.MainXMLTest;
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.enums.EmployeeDate;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.entities.enums.EmployeeType;
+import com.skodin.util.EmployeeReader;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedStaffStoreTest extends MainXMLTest {
+
+    private static final Path STORE_PATH = Path.of(ROOT + "/temp.staff");
+    private static final Path OVERFLOW_PATH = Path.of(ROOT + "/temp.staff.overflow");
+    private static final Path SECOND_OVERFLOW_PATH = Path.of(ROOT + "/temp.staff.overflow.1");
+    private static final Path INDEX_PATH = Path.of(ROOT + "/temp.staff.index");
+    private static final Path NAMES_PATH = Path.of(ROOT + "/temp.staff.names");
+    private static final UUID FIRST_ID = UUID.fromString("abd6b899-a798-4a67-8b63-0080af5468c2");
+    private static final UUID MANAGER_ID = UUID.fromString("dd82a20d-a11f-4610-86a1-c8bfc585eb79");
+
+    private final EmployeeReader employeeReader = new EmployeeReader();
+
+    @AfterEach
+    @SneakyThrows
+    void deleteStore() {
+        Files.deleteIfExists(STORE_PATH);
+        Files.deleteIfExists(OVERFLOW_PATH);
+        Files.deleteIfExists(SECOND_OVERFLOW_PATH);
+        Files.deleteIfExists(INDEX_PATH);
+        Files.deleteIfExists(NAMES_PATH);
+    }
+
+    @SneakyThrows
+    private MappedStaffStore openStore() {
+        Files.createFile(STORE_PATH);
+        MappedStaffStore store = MappedStaffStore.open(STORE_PATH);
+        store.addAll(employeeReader.readXML(EMPLOYEES_PATH));
+        store.commit();
+        return store;
+    }
+
+    @Test
+    void addAll_bigListOfEmployees_isReadBackAfterReopening() {
+        MappedStaffStore store = openStore();
+
+        store.addAll(getEmployees());
+        store.close();
+
+        MappedStaffStore reopened = MappedStaffStore.open(STORE_PATH);
+        List<Employee> expected = employeeReader.readXML(EMPLOYEES_PATH);
+        expected.addAll(getEmployees());
+
+        assertEquals(expected, reopened.findAll());
+        assertEquals(5, reopened.findByFullName("Skodin Nikita Dm").size());
+        reopened.close();
+    }
+
+    @Test
+    void removeById_duplicatedId_removesEveryRecord() {
+        MappedStaffStore store = openStore();
+        store.addAll(getEmployees());
+
+        assertTrue(store.removeById(ID));
+
+        assertTrue(store.findById(ID).isEmpty());
+        assertEquals(employeeReader.readXML(EMPLOYEES_PATH), store.findAll());
+        store.close();
+    }
+
+    @Test
+    void changeType_employeeToManager_appendsReplacementToTheEnd() {
+        MappedStaffStore store = openStore();
+        Employee employee = store.findById(FIRST_ID).orElseThrow();
+
+        store.changeType(employee, EmployeeType.MANAGER, "");
+
+        List<Employee> employees = store.findAll();
+        assertEquals(Manager.class, employees.get(employees.size() - 1).getClass());
+        assertEquals(2, store.findByType(EmployeeType.MANAGER).size());
+        assertTrue(store.findByType(EmployeeType.EMPLOYEE).isEmpty());
+        store.close();
+    }
+
+    @Test
+    void assign_employeeToManager_rewritesOnlyManagerSubordinates() {
+        MappedStaffStore store = openStore();
+        Manager manager = (Manager) store.findById(MANAGER_ID).orElseThrow();
+        Employee employee = store.findByFullName("SecondEmployee").get(0);
+
+        store.assign(manager, employee);
+
+        Manager stored = (Manager) store.findById(MANAGER_ID).orElseThrow();
+        assertEquals(2, stored.getSubordinates().size());
+        assertEquals(employee, stored.getSubordinates().get(1));
+        store.close();
+    }
+
+    @Test
+    void assign_employeeOfAnotherManager_leavesPreviousManager() {
+        MappedStaffStore store = openStore();
+        Manager newManager = new Manager(UUID.randomUUID(), "NewManager", DATE, DATE, new ArrayList<>());
+        store.addAll(List.of(newManager));
+        Employee employee = store.findById(FIRST_ID).orElseThrow();
+
+        store.assign(newManager, employee);
+
+        assertTrue(((Manager) store.findById(MANAGER_ID).orElseThrow()).getSubordinates().isEmpty());
+        assertEquals(List.of(employee), ((Manager) store.findById(newManager.getId()).orElseThrow()).getSubordinates());
+        assertEquals(1, store.getHeadcount(newManager));
+        assertEquals(1, store.getDepth(employee));
+        store.close();
+    }
+
+    @Test
+    void assign_employeeMovedBetweenManagers_leavesEveryPreviousManager() {
+        MappedStaffStore store = openStore();
+        Manager first = new Manager(UUID.randomUUID(), "FirstManager", DATE, DATE, new ArrayList<>());
+        Manager second = new Manager(UUID.randomUUID(), "SecondManager", DATE, DATE, new ArrayList<>());
+        store.addAll(List.of(first, second));
+        Employee employee = store.findById(FIRST_ID).orElseThrow();
+
+        store.assign(first, employee);
+        store.assign(second, employee);
+        store.sort(EmployeeOrder.FULL_NAME);
+        store.assign((Manager) store.findById(first.getId()).orElseThrow(), employee);
+
+        assertTrue(((Manager) store.findById(MANAGER_ID).orElseThrow()).getSubordinates().isEmpty());
+        assertTrue(((Manager) store.findById(second.getId()).orElseThrow()).getSubordinates().isEmpty());
+        assertEquals(List.of(employee), ((Manager) store.findById(first.getId()).orElseThrow()).getSubordinates());
+        store.close();
+    }
+
+    @Test
+    void assign_referencedEmployeeIsRemoved_managerKeepsItsCopy() {
+        MappedStaffStore store = openStore();
+        Manager manager = (Manager) store.findById(MANAGER_ID).orElseThrow();
+        Employee employee = store.findByFullName("SecondEmployee").get(0);
+        store.assign(manager, employee);
+
+        assertTrue(store.removeByFullName("SecondEmployee"));
+        store.close();
+
+        MappedStaffStore reopened = MappedStaffStore.open(STORE_PATH);
+        Manager stored = (Manager) reopened.findById(MANAGER_ID).orElseThrow();
+        assertEquals(employee, stored.getSubordinates().get(1));
+        assertTrue(reopened.findByFullName("SecondEmployee").isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void sort_byFullName_dropsRemovedSlotsAndKeepsIdLookups() {
+        MappedStaffStore store = openStore();
+        store.removeByFullName("SecondEmployee");
+        store.addAll(getEmployees());
+
+        store.sort(EmployeeOrder.FULL_NAME);
+
+        List<Employee> employees = store.findAll();
+        assertEquals(employees.stream().sorted(EmployeeOrder.FULL_NAME.getComparator()).toList(), employees);
+        assertEquals("ThirdEmployee", employees.get(employees.size() - 1).getFullName());
+        assertEquals("FirstEmployee", store.findById(FIRST_ID).orElseThrow().getFullName());
+        assertEquals(7, store.size());
+        store.close();
+    }
+
+    @Test
+    void findByDateRange_removedAndAddedRecords_returnsLiveRecordsByDate() {
+        MappedStaffStore store = openStore();
+        Employee earlier = new Employee(UUID.randomUUID(), "Earlier", DATE, LocalDate.parse("2023-06-01"));
+        store.removeByFullName("SecondEmployee");
+        store.addAll(List.of(earlier));
+
+        assertEquals(List.of("Earlier", "FirstEmployee", "ThirdEmployee"), store
+                .findByDateRange(EmployeeDate.HIRING_DATE, null, DATE).stream()
+                .map(Employee::getFullName).toList());
+        assertEquals(List.of(), store.findByDateRange(EmployeeDate.BIRTHDAY_DATE, DATE.plusDays(1), null));
+        store.close();
+    }
+
+    @Test
+    @SneakyThrows
+    void open_indexIsLost_rebuildsIndexFromSlots() {
+        openStore().close();
+        Files.delete(INDEX_PATH);
+
+        MappedStaffStore store = MappedStaffStore.open(STORE_PATH);
+
+        assertEquals("ThirdEmployee", store.findById(MANAGER_ID).orElseThrow().getFullName());
+        assertEquals(employeeReader.readXML(EMPLOYEES_PATH), store.findAll());
+        store.close();
+    }
+
+    @Test
+    @SneakyThrows
+    void assign_manySubordinatesCommittedOneByOne_overflowRegionStaysBounded() {
+        MappedStaffStore store = openStore();
+        Manager manager = (Manager) store.findById(MANAGER_ID).orElseThrow();
+
+        for (int i = 0; i < 300; i++) {
+            Employee employee = new Employee(UUID.randomUUID(), "Subordinate " + i, DATE, DATE);
+            store.addAll(List.of(employee));
+            store.assign(manager, employee);
+            store.commit();
+        }
+        store.close();
+
+        long overflowSize = Files.exists(OVERFLOW_PATH) ? Files.size(OVERFLOW_PATH) : Files.size(SECOND_OVERFLOW_PATH);
+        assertTrue(overflowSize < 256 * 1024, "overflow region is " + overflowSize + " bytes");
+        assertNotEquals(Files.exists(OVERFLOW_PATH), Files.exists(SECOND_OVERFLOW_PATH));
+
+        MappedStaffStore reopened = MappedStaffStore.open(STORE_PATH);
+        assertEquals(301, ((Manager) reopened.findById(MANAGER_ID).orElseThrow()).getSubordinates().size());
+        assertEquals(1, reopened.findByFullName("Subordinate 299").size());
+        assertEquals(303, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    @SneakyThrows
+    void open_nameIndexIsLost_rebuildsIndexFromSlots() {
+        openStore().close();
+        Files.delete(NAMES_PATH);
+
+        MappedStaffStore store = MappedStaffStore.open(STORE_PATH);
+
+        assertEquals(MANAGER_ID, store.findByFullName("ThirdEmployee").get(0).getId());
+        assertTrue(store.removeByFullName("SecondEmployee"));
+        assertTrue(store.findByFullName("SecondEmployee").isEmpty());
+        store.close();
+    }
+}
@@ -0,0 +1,45 @@
+package com.skodin.repositories;
+
+import com.skodin.entities.enums.NameMatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameSearchIndexTest {
+
+    private final NameSearchIndex index = new NameSearchIndex(
+            List.of("Skodin Nikita Dm", "Ivanov Ivan", "Иванова Анна", "Nikitin Oleg", "Ann"));
+
+    @Test
+    void search_prefixIgnoringCase_returnsNamesStartingWithText() {
+        assertEquals(List.of("Ivanov Ivan"), index.search("iVa", NameMatch.PREFIX, false, 10));
+        assertEquals(List.of("Ann"), index.search("a", NameMatch.PREFIX, false, 10));
+        assertEquals(List.of("Иванова Анна"), index.search("ива", NameMatch.PREFIX, false, 10));
+    }
+
+    @Test
+    void search_substring_returnsNamesContainingText() {
+        assertEquals(List.of("Skodin Nikita Dm", "Nikitin Oleg"), index.search("nikit", NameMatch.SUBSTRING, false, 10));
+        assertEquals(List.of("Skodin Nikita Dm", "Nikitin Oleg"), index.search("i", NameMatch.SUBSTRING, true, 10));
+        assertEquals(List.of("Skodin Nikita Dm"), index.search("nikit", NameMatch.SUBSTRING, false, 1));
+    }
+
+    @Test
+    void search_caseSensitive_checksCaseOfCandidates() {
+        assertEquals(List.of("Nikitin Oleg"), index.search("Nikitin", NameMatch.SUBSTRING, true, 10));
+        assertTrue(index.search("nikitin", NameMatch.SUBSTRING, true, 10).isEmpty());
+    }
+
+    @Test
+    void remove_mostNames_rebuildsAndKeepsTheRest() {
+        index.remove("Skodin Nikita Dm");
+        index.remove("Ivanov Ivan");
+        index.remove("Иванова Анна");
+        index.add("Ivanov Ivan");
+
+        assertEquals(List.of("Nikitin Oleg"), index.search("nikit", NameMatch.SUBSTRING, false, 10));
+        assertEquals(List.of("Ivanov Ivan"), index.search("ivan", NameMatch.SUBSTRING, false, 10));
+    }
+}
@@ -0,0 +1,101 @@
+package com.skodin.repositories;
+
+import com.skodin.MainXMLTest;
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrgChartTest extends MainXMLTest {
+
+    private final Employee employee = new Employee(UUID.randomUUID(), "Employee", DATE, DATE);
+    private final Manager lead = new Manager(UUID.randomUUID(), "Lead", DATE, DATE,
+            new ArrayList<>(List.of(employee)));
+    private final Manager head = new Manager(UUID.randomUUID(), "Head", DATE, DATE,
+            new ArrayList<>(List.of(lead)));
+    private final Manager other = new Manager(UUID.randomUUID(), "Other", DATE, DATE, new ArrayList<>());
+
+    @Test
+    void isUnder_nestedManagers_answersTransitively() {
+        OrgChart orgChart = new OrgChart(List.of(employee, lead, head, other));
+
+        assertTrue(orgChart.isUnder(employee, head));
+        assertTrue(orgChart.isUnder(employee, lead));
+        assertFalse(orgChart.isUnder(head, employee));
+        assertFalse(orgChart.isUnder(employee, other));
+        assertEquals(2, orgChart.getHeadcount(head));
+        assertEquals(2, orgChart.getDepth(employee));
+        assertEquals(lead, orgChart.getManager(employee).orElseThrow());
+        assertTrue(orgChart.getManager(head).isEmpty());
+    }
+
+    @Test
+    void orgChart_deepChainOfManagers_labelsEveryLevel() {
+        List<Employee> chain = new ArrayList<>(List.of(employee));
+        for (int i = 0; i < 20_000; i++) {
+            chain.add(new Manager(UUID.randomUUID(), "Manager" + i, DATE, DATE,
+                    new ArrayList<>(List.of(chain.get(chain.size() - 1)))));
+        }
+
+        OrgChart orgChart = new OrgChart(chain);
+
+        assertEquals(20_000, orgChart.getDepth(employee));
+        assertEquals(20_000, orgChart.getHeadcount(chain.get(chain.size() - 1)));
+        assertTrue(orgChart.isUnder(employee, chain.get(chain.size() - 1)));
+        assertEquals(0, orgChart.getDepth(chain.get(chain.size() - 1)));
+    }
+
+    @Test
+    void move_subtreeToAnotherManager_updatesLabelsAndHeadcounts() {
+        OrgChart orgChart = new OrgChart(List.of(head, lead, employee, other));
+
+        orgChart.move(lead, other);
+
+        assertTrue(orgChart.isUnder(employee, other));
+        assertFalse(orgChart.isUnder(employee, head));
+        assertEquals(0, orgChart.getHeadcount(head));
+        assertEquals(2, orgChart.getHeadcount(other));
+        assertEquals(1, orgChart.getDepth(lead));
+    }
+
+    @Test
+    void move_managerUnderOwnReport_throwsIllegalArgumentException() {
+        OrgChart orgChart = new OrgChart(List.of(head, lead, employee));
+
+        assertThrows(IllegalArgumentException.class, () -> orgChart.move(head, lead));
+        assertThrows(IllegalArgumentException.class, () -> orgChart.move(lead, lead));
+    }
+
+    @Test
+    void move_manyEmployeesUnderOneManager_keepsLabelsNested() {
+        OrgChart orgChart = new OrgChart(List.of(head, lead, employee, other));
+        List<Employee> added = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            Employee newEmployee = new Employee(UUID.randomUUID(), "Employee" + i, DATE, DATE);
+            added.add(newEmployee);
+            orgChart.add(List.of(newEmployee));
+            orgChart.move(newEmployee, lead);
+        }
+
+        assertEquals(102, orgChart.getHeadcount(head));
+        assertTrue(added.stream().allMatch(e -> orgChart.isUnder(e, head) && !orgChart.isUnder(e, other)));
+        assertFalse(orgChart.isUnder(other, head));
+    }
+
+    @Test
+    void remove_manager_directReportsReportToNobody() {
+        OrgChart orgChart = new OrgChart(List.of(head, lead, employee));
+
+        orgChart.remove(lead);
+
+        assertFalse(orgChart.isUnder(employee, head));
+        assertEquals(0, orgChart.getDepth(employee));
+        assertEquals(0, orgChart.getHeadcount(head));
+    }
+}
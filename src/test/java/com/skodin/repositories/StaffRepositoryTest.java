@@ -0,0 +1,361 @@
+package com.skodin.repositories;
+
+import com.skodin.MainXMLTest;
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.enums.EmployeeDate;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.entities.enums.EmployeeType;
+import com.skodin.entities.enums.NameMatch;
+import com.skodin.exceptions.DamagedFileException;
+import com.skodin.util.BinarySnapshot;
+import com.skodin.util.EmployeeReader;
+import com.skodin.util.EmployeeWriter;
+import com.skodin.util.FileFingerprint;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StaffRepositoryTest extends MainXMLTest {
+
+    private static final UUID FIRST_ID = UUID.fromString("abd6b899-a798-4a67-8b63-0080af5468c2");
+    private static final UUID MANAGER_ID = UUID.fromString("dd82a20d-a11f-4610-86a1-c8bfc585eb79");
+
+    private final EmployeeReader employeeReader = new EmployeeReader();
+    private final EmployeeWriter employeeWriter = new EmployeeWriter();
+
+    @SneakyThrows
+    private StaffRepository openRepository() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        return new StaffRepository(employeeReader.open(TEMP_FILE_PATH), employeeWriter);
+    }
+
+    @Test
+    void findById_existingId_returnsEmployee() {
+        StaffRepository repository = openRepository();
+
+        assertEquals("FirstEmployee", repository.findById(FIRST_ID).orElseThrow().getFullName());
+        assertTrue(repository.findById(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    void removeById_existingId_updatesAllIndexes() {
+        StaffRepository repository = openRepository();
+
+        assertTrue(repository.removeById(FIRST_ID));
+
+        assertTrue(repository.findById(FIRST_ID).isEmpty());
+        assertTrue(repository.findByFullName("FirstEmployee").isEmpty());
+        assertTrue(repository.findByType(EmployeeType.EMPLOYEE).isEmpty());
+        assertEquals(2, repository.size());
+    }
+
+    @Test
+    void replace_employeeWithManager_movesEmployeeToManagerType() {
+        StaffRepository repository = openRepository();
+        Employee employee = repository.findById(FIRST_ID).orElseThrow();
+
+        repository.changeType(employee, EmployeeType.MANAGER, "");
+
+        assertEquals(2, repository.findByType(EmployeeType.MANAGER).size());
+        assertEquals(Manager.class, repository.findById(FIRST_ID).orElseThrow().getClass());
+    }
+
+    @Test
+    void assign_employeeOfAnotherManager_movesEmployee() {
+        StaffRepository repository = openRepository();
+        Employee employee = repository.findById(FIRST_ID).orElseThrow();
+        Manager manager = (Manager) repository.findById(MANAGER_ID).orElseThrow();
+        repository.changeType(repository.findByFullName("SecondEmployee").get(0), EmployeeType.MANAGER, "");
+        Manager newManager = (Manager) repository.findByFullName("SecondEmployee").get(0);
+
+        repository.assign(manager, employee);
+        repository.assign(newManager, employee);
+
+        assertFalse(manager.getSubordinates().stream().anyMatch(e -> e == employee));
+        assertTrue(repository.getOrgChart().isUnder(employee, newManager));
+        assertFalse(repository.getOrgChart().isUnder(employee, manager));
+        assertTrue(repository.manages(newManager, newManager));
+    }
+
+    @Test
+    void commit_changedRepository_writesFileAndStaysCurrent() {
+        StaffRepository repository = openRepository();
+        Manager manager = (Manager) repository.findById(MANAGER_ID).orElseThrow();
+
+        repository.assign(manager, repository.findById(FIRST_ID).orElseThrow());
+        repository.commit();
+
+        assertTrue(repository.isCurrent());
+        assertEquals(repository.findAll(), employeeReader.readXML(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void commit_writeFails_repositoryIsNoLongerCurrent() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        EmployeeWriter failingWriter = new EmployeeWriter() {
+            @Override
+            public FileFingerprint writeXML(Path path, List<Employee> employees) {
+                throw new DamagedFileException("Device is full");
+            }
+        };
+        StaffRepository repository = new StaffRepository(employeeReader.open(TEMP_FILE_PATH), failingWriter);
+
+        assertTrue(repository.removeById(FIRST_ID));
+
+        assertThrows(DamagedFileException.class, repository::commit);
+        assertFalse(repository.isCurrent());
+        assertEquals(employeeReader.readXML(EMPLOYEES_PATH), employeeReader.readXML(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void commit_afterFailedCommit_throwsAndWritesNeitherChange() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        // fails once, like a device that is full for a moment
+        EmployeeWriter failingWriter = new EmployeeWriter() {
+            private boolean isFailed;
+
+            @Override
+            public FileFingerprint writeXML(Path path, List<Employee> employees) {
+                if (!isFailed) {
+                    isFailed = true;
+                    throw new DamagedFileException("Device is full");
+                }
+                return super.writeXML(path, employees);
+            }
+        };
+        StaffRepository repository = new StaffRepository(employeeReader.open(TEMP_FILE_PATH), failingWriter);
+
+        assertTrue(repository.removeById(FIRST_ID));
+        assertThrows(DamagedFileException.class, repository::commit);
+        assertTrue(repository.removeById(MANAGER_ID));
+
+        assertThrows(IllegalStateException.class, repository::commit);
+        assertEquals(employeeReader.readXML(EMPLOYEES_PATH), employeeReader.readXML(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void commit_journalEnabled_appendsToJournalAndReplaysItOnLoad() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        StorageOptions options = StorageOptions.builder().journalEnabled(true).build();
+
+        try {
+            StaffRepository repository = openRepository(options);
+            repository.removeById(FIRST_ID);
+            repository.commit();
+
+            assertEquals(Files.readString(EMPLOYEES_PATH), Files.readString(TEMP_FILE_PATH));
+
+            StaffRepository reloaded = openRepository(options);
+            assertTrue(reloaded.findById(FIRST_ID).isEmpty());
+            assertEquals(2, reloaded.size());
+
+            reloaded.close();
+            assertEquals(reloaded.findAll(), employeeReader.readXML(TEMP_FILE_PATH));
+        } finally {
+            Files.deleteIfExists(StaffJournal.of(TEMP_FILE_PATH));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void open_sharedJournalWithTornTail_leavesJournalToFirstCommit() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        StorageOptions options = StorageOptions.builder().journalEnabled(true).fileLockingEnabled(true).build();
+        Path journal = StaffJournal.of(TEMP_FILE_PATH);
+
+        try {
+            StaffRepository repository = openRepository(options);
+            repository.removeById(FIRST_ID);
+            repository.commit();
+            repository.close();
+            Files.writeString(journal, "torn", StandardOpenOption.APPEND);
+            String torn = Files.readString(journal);
+
+            StaffRepository reloaded = openRepository(options);
+            assertEquals(2, reloaded.size());
+            assertEquals(torn, Files.readString(journal));
+
+            reloaded.removeByFullName("SecondEmployee");
+            reloaded.commit();
+            reloaded.close();
+
+            assertEquals(Files.readString(EMPLOYEES_PATH), Files.readString(TEMP_FILE_PATH));
+            assertEquals(3, Files.readAllLines(journal).size());
+            assertEquals(1, openRepository(options).size());
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void commit_journalOverThreshold_compactsJournalIntoFile() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        StorageOptions options = StorageOptions.builder()
+                .journalEnabled(true)
+                .journalCompactionThreshold(0)
+                .build();
+
+        try {
+            StaffRepository repository = openRepository(options);
+            repository.removeById(FIRST_ID);
+            repository.commit();
+
+            assertEquals(repository.findAll(), employeeReader.readXML(TEMP_FILE_PATH));
+            assertEquals(1, Files.readAllLines(StaffJournal.of(TEMP_FILE_PATH)).size());
+        } finally {
+            Files.deleteIfExists(StaffJournal.of(TEMP_FILE_PATH));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void findAll_orderIndexesEnabled_keepsOrdersAcrossChangesAndReloads() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        StorageOptions options = StorageOptions.builder().orderIndexesEnabled(true).build();
+
+        try {
+            StaffRepository repository = openRepository(options);
+            repository.addAll(getEmployees());
+            repository.removeById(FIRST_ID);
+            repository.changeType(repository.findByFullName("SecondEmployee").get(0), EmployeeType.MANAGER, "");
+            repository.commit();
+
+            for (EmployeeOrder order : EmployeeOrder.values()) {
+                List<Employee> expected = repository.findAll();
+                expected.sort(order.getComparator());
+                assertEquals(expected, repository.findAll(order));
+            }
+
+            assertTrue(Files.exists(OrderIndexes.of(TEMP_FILE_PATH)));
+            repository.close();
+            String file = Files.readString(TEMP_FILE_PATH);
+            StaffRepository reloaded = openRepository(options);
+
+            assertEquals(repository.findAll(EmployeeOrder.HIRING_DATE), reloaded.findAll(EmployeeOrder.HIRING_DATE));
+            assertEquals(repository.findAll(EmployeeOrder.FULL_NAME), reloaded.findAll(EmployeeOrder.FULL_NAME));
+            assertEquals(file, Files.readString(TEMP_FILE_PATH));
+        } finally {
+            Files.deleteIfExists(OrderIndexes.of(TEMP_FILE_PATH));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void commit_binarySnapshotEnabled_writesSnapshotOnCloseOnly() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        StorageOptions options = StorageOptions.builder().binarySnapshotEnabled(true).build();
+        Path snapshot = BinarySnapshot.of(TEMP_FILE_PATH);
+
+        try {
+            StaffRepository repository = openRepository(options);
+
+            repository.removeById(FIRST_ID);
+            repository.commit();
+
+            assertFalse(Files.exists(snapshot));
+
+            repository.close();
+
+            assertEquals(repository.findAll(),
+                    employeeReader.openSnapshot(TEMP_FILE_PATH, snapshot).orElseThrow().getEmployees());
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void commit_orderIndexesEnabled_writesOrdersOnCloseOnly() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        StorageOptions options = StorageOptions.builder().orderIndexesEnabled(true).build();
+
+        try {
+            StaffRepository repository = openRepository(options);
+            byte[] orders = Files.readAllBytes(OrderIndexes.of(TEMP_FILE_PATH));
+
+            repository.removeById(FIRST_ID);
+            repository.commit();
+
+            assertArrayEquals(orders, Files.readAllBytes(OrderIndexes.of(TEMP_FILE_PATH)));
+
+            repository.close();
+
+            assertTrue(OrderIndexes.load(OrderIndexes.of(TEMP_FILE_PATH), FileFingerprint.checksumOf(TEMP_FILE_PATH),
+                    repository.findAll(), options.getNameLocale()).isPresent());
+        } finally {
+            Files.deleteIfExists(OrderIndexes.of(TEMP_FILE_PATH));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void open_orderSidecarOfAnotherFile_sortsAgain() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        StorageOptions options = StorageOptions.builder().orderIndexesEnabled(true).build();
+
+        try {
+            openRepository(options);
+            employeeWriter.writeXML(TEMP_FILE_PATH, getEmployees().subList(0, 3));
+
+            StaffRepository repository = openRepository(options);
+
+            List<Employee> expected = employeeReader.readXML(TEMP_FILE_PATH);
+            expected.sort(EmployeeOrder.FULL_NAME.getComparator());
+            assertEquals(expected, repository.findAll(EmployeeOrder.FULL_NAME));
+        } finally {
+            Files.deleteIfExists(OrderIndexes.of(TEMP_FILE_PATH));
+        }
+    }
+
+    @Test
+    void searchByFullName_afterChanges_findsOnlyStoredNames() {
+        StaffRepository repository = openRepository();
+        assertEquals(3, repository.searchByFullName("employee", NameMatch.SUBSTRING, false, 10).size());
+
+        repository.addAll(getEmployees());
+        repository.removeByFullName("SecondEmployee");
+
+        assertEquals(List.of("FirstEmployee", "ThirdEmployee"), repository
+                .searchByFullName("employee", NameMatch.SUBSTRING, false, 10).stream()
+                .map(Employee::getFullName).sorted().toList());
+        assertEquals(5, repository.searchByFullName("Skodin", NameMatch.PREFIX, true, 10).size());
+        assertEquals(2, repository.searchByFullName("sko", NameMatch.PREFIX, false, 2).size());
+    }
+
+    @Test
+    void findByDateRange_afterChanges_returnsStoredRecordsByDate() {
+        StaffRepository repository = openRepository();
+        assertEquals(3, repository.findByDateRange(EmployeeDate.HIRING_DATE, DATE, DATE).size());
+
+        Employee earlier = new Employee(UUID.randomUUID(), "Earlier", DATE, DATE.minusYears(1));
+        Employee later = new Employee(UUID.randomUUID(), "Later", DATE, DATE.plusDays(1));
+        repository.addAll(List.of(later, earlier));
+        repository.removeByFullName("SecondEmployee");
+
+        assertEquals(List.of("Earlier", "FirstEmployee", "ThirdEmployee"), repository
+                .findByDateRange(EmployeeDate.HIRING_DATE, null, DATE).stream()
+                .map(Employee::getFullName).toList());
+        assertEquals(List.of(later), repository.findByDateRange(EmployeeDate.HIRING_DATE, DATE.plusDays(1), null));
+        assertEquals(List.of(), repository.findByDateRange(EmployeeDate.BIRTHDAY_DATE,
+                LocalDate.parse("1990-01-01"), LocalDate.parse("2000-01-01")));
+    }
+
+    private StaffRepository openRepository(StorageOptions options) {
+        return new StaffRepository(employeeReader.open(TEMP_FILE_PATH), employeeReader, employeeWriter,
+                options, Runnable::run);
+    }
+}
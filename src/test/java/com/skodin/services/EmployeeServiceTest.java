@@ -4,17 +4,31 @@ import com.skodin.entities.Employee;
 import com.skodin.entities.Manager;
 import com.skodin.entities.enums.EmployeeType;
 import com.skodin.exceptions.*;
+import com.skodin.repositories.StaffJournal;
+import com.skodin.repositories.StorageOptions;
+import com.skodin.services.enums.EmployeeEventType;
+import com.skodin.services.enums.ImportStatus;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
 import com.skodin.MainXMLTest;
 import com.skodin.util.EmployeeReader;
 import com.skodin.util.EmployeeWriter;
+import com.skodin.util.StaffFileLock;
 
 import java.nio.file.*;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -71,6 +85,69 @@ class EmployeeServiceTest extends MainXMLTest {
                 () -> employeeService.addNewEmployers(TEMP_FILE_PATH, path));
     }
 
+    @Test
+    @SneakyThrows
+    void importEmployers_directory_reportsEveryFileAndAddsOnlyNewEmployees() {
+        Files.copy(EMPLOYEE_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        Path directory = Files.createTempDirectory("import");
+        Employee newEmployee = new Employee(UUID.randomUUID(), "New", DATE, DATE);
+
+        employeeWriter.writeXML(Files.createFile(directory.resolve("a.xml")), List.of(newEmployee));
+        employeeWriter.writeXML(Files.createFile(directory.resolve("b.xml")), List.of(EMPLOYEE));
+        Files.writeString(directory.resolve("c.xml"), "invalid text");
+        employeeWriter.writeXML(Files.createFile(directory.resolve("d.xml")), List.of(newEmployee));
+
+        List<ImportResult> results = employeeService.importEmployers(directory.toString(), TEMP_FILE_PATH);
+
+        assertEquals(List.of(ImportStatus.SUCCESS, ImportStatus.DUPLICATE, ImportStatus.ERROR, ImportStatus.DUPLICATE),
+                results.stream().map(ImportResult::getStatus).toList());
+        assertEquals(1, results.get(0).getCount());
+        assertEquals(List.of(EMPLOYEE, newEmployee), employeeReader.readXML(TEMP_FILE_PATH));
+
+        deleteDirectory(directory);
+    }
+
+    @Test
+    @SneakyThrows
+    void importEmployers_glob_importsOnlyMatchingFiles() {
+        Path directory = Files.createTempDirectory("import");
+        Employee newEmployee = new Employee(UUID.randomUUID(), "New", DATE, DATE);
+
+        employeeWriter.writeXML(Files.createFile(directory.resolve("first.xml")), List.of(EMPLOYEE));
+        employeeWriter.writeXML(Files.createFile(directory.resolve("second.xml")), List.of(newEmployee));
+        Files.writeString(directory.resolve("notes.txt"), "invalid text");
+
+        assertTrue(EmployeeService.isBatchSource(directory + "/*.xml"));
+        List<ImportResult> results = employeeService.importEmployers(directory + "/*.xml", TEMP_FILE_PATH);
+
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch(result -> result.getStatus() == ImportStatus.SUCCESS));
+        assertEquals(List.of(EMPLOYEE, newEmployee), employeeReader.readXML(TEMP_FILE_PATH));
+
+        deleteDirectory(directory);
+    }
+
+    @Test
+    @SneakyThrows
+    void importEmployers_nothingMatches_throwsFileNotFoundException() {
+        Path directory = Files.createTempDirectory("import");
+
+        assertThrows(FileNotFoundException.class,
+                () -> employeeService.importEmployers(directory + "/*.xml", TEMP_FILE_PATH));
+
+        deleteDirectory(directory);
+    }
+
+    @SneakyThrows
+    private static void deleteDirectory(Path directory) {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
     @Test
     @SneakyThrows
     void addNewEmployers_nullSourceFile_throwsPathIsNullException() {
@@ -85,7 +162,7 @@ class EmployeeServiceTest extends MainXMLTest {
 
         employeeService.addNewEmployers(EMPLOYEES_PATH, TEMP_FILE_PATH);
 
-        String expected = Files.readString(EMPLOYEES_PATH);
+        String expected = getNormalizedEmployees();
         String actual = Files.readString(TEMP_FILE_PATH);
 
         assertEquals(expected, actual);
@@ -96,7 +173,7 @@ class EmployeeServiceTest extends MainXMLTest {
     void addNewEmployers_emptySourceFileAndValidSourceFile_addNewEmployeeToEmptyFile() {
         employeeService.addNewEmployers(EMPLOYEES_PATH, TEMP_FILE_PATH);
 
-        String expected = Files.readString(EMPLOYEES_PATH);
+        String expected = getNormalizedEmployees();
         String actual = Files.readString(TEMP_FILE_PATH);
 
         assertEquals(expected, actual);
@@ -155,6 +232,54 @@ class EmployeeServiceTest extends MainXMLTest {
         assertEquals(2, list.size());
     }
 
+    @Test
+    @SneakyThrows
+    void addNewEmployers_sourceWithExistingEmployeeInTheMiddle_addsNothing() {
+        Files.copy(EMPLOYEE_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        String expected = Files.readString(EMPLOYEE_PATH);
+
+        Path tempFile = Files.createTempFile("temp", ".xml");
+        Employee newEmployee = new Employee(UUID.randomUUID(), "name", DATE, DATE);
+        employeeWriter.writeXML(tempFile, List.of(newEmployee, EMPLOYEE, newEmployee));
+
+        assertFalse(employeeService.addNewEmployers(tempFile, TEMP_FILE_PATH));
+        assertEquals(expected, Files.readString(TEMP_FILE_PATH));
+        Files.delete(tempFile);
+    }
+
+    @Test
+    @SneakyThrows
+    void addNewEmployers_largeBatch_addsEveryEmployee() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        Path tempFile = Files.createTempFile("temp", ".xml");
+        List<Employee> batch = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            batch.add(new Employee(UUID.randomUUID(), "Employee" + i, DATE, DATE));
+        }
+        employeeWriter.writeXML(tempFile, batch);
+
+        assertTrue(employeeService.addNewEmployers(tempFile, TEMP_FILE_PATH));
+        assertEquals(20_003, employeeReader.readXML(TEMP_FILE_PATH).size());
+        Files.delete(tempFile);
+    }
+
+    @Test
+    @SneakyThrows
+    void getDepth_deepChainOfManagers_readsEveryLevel() {
+        List<Employee> chain = new ArrayList<>(List.of(new Employee(UUID.randomUUID(), "Employee", DATE, DATE)));
+        for (int i = 0; i < 20_000; i++) {
+            chain.add(new Manager(UUID.randomUUID(), "Manager" + i, DATE, DATE,
+                    new ArrayList<>(List.of(chain.get(chain.size() - 1)))));
+        }
+        employeeWriter.writeXML(TEMP_FILE_PATH, chain);
+
+        assertEquals(20_001, employeeService.getAllEmployees(TEMP_FILE_PATH).size());
+        assertEquals(20_000, employeeService.getDepth(TEMP_FILE_PATH, chain.get(0).getId().toString()));
+        assertEquals(20_000, employeeService.getHeadcount(TEMP_FILE_PATH,
+                chain.get(chain.size() - 1).getId().toString()));
+    }
+
     @Test
     @SneakyThrows
     void addNewEmployers_bothValidFiles_addSomeNewEmployees() {
@@ -323,6 +448,42 @@ class EmployeeServiceTest extends MainXMLTest {
         assertTrue(isLinked);
     }
 
+    @Test
+    @SneakyThrows
+    void assignEmployeeToManager_managerOfTheManager_throwsInvalidInputDataExceptions() {
+        String managerStringId = "dd82a20d-a11f-4610-86a1-c8bfc585eb79";
+        String employeeStringId = "abd6b899-a798-4a67-8b63-0080af5468c2";
+
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        employeeService.changeEmployeeType(TEMP_FILE_PATH, employeeStringId, EmployeeType.MANAGER.toString(), "");
+        employeeService.assignEmployeeToManager(TEMP_FILE_PATH, employeeStringId, managerStringId);
+
+        assertThrows(InvalidInputDataExceptions.class,
+                () -> employeeService.assignEmployeeToManager(TEMP_FILE_PATH, managerStringId, employeeStringId));
+    }
+
+    @Test
+    @SneakyThrows
+    void getHeadcount_chainOfManagers_countsEveryLevel() {
+        String managerStringId = "dd82a20d-a11f-4610-86a1-c8bfc585eb79";
+        String employeeStringId = "abd6b899-a798-4a67-8b63-0080af5468c2";
+        String otherEmployeeStringId = "49486d44-a487-4d62-aac7-0171917a3386";
+
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        employeeService.changeEmployeeType(TEMP_FILE_PATH, employeeStringId, EmployeeType.MANAGER.toString(), "");
+        employeeService.assignEmployeeToManager(TEMP_FILE_PATH, managerStringId, employeeStringId);
+        employeeService.assignEmployeeToManager(TEMP_FILE_PATH, employeeStringId, otherEmployeeStringId);
+
+        assertEquals(2, employeeService.getHeadcount(TEMP_FILE_PATH, managerStringId));
+        assertEquals(1, employeeService.getHeadcount(TEMP_FILE_PATH, employeeStringId));
+        assertEquals(2, employeeService.getDepth(TEMP_FILE_PATH, otherEmployeeStringId));
+        assertEquals(0, employeeService.getDepth(TEMP_FILE_PATH, managerStringId));
+        assertThrows(InvalidTypeException.class,
+                () -> employeeService.getHeadcount(TEMP_FILE_PATH, otherEmployeeStringId));
+        assertThrows(InvalidIdException.class,
+                () -> employeeService.getDepth(TEMP_FILE_PATH, UUID.randomUUID().toString()));
+    }
+
     @Test
     @SneakyThrows
     void sortByFullName_ValidFile_rewritesSortedList() {
@@ -350,4 +511,645 @@ class EmployeeServiceTest extends MainXMLTest {
 
         assertEquals(expected, actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    @SneakyThrows
+    void addNewEmployers_columnarEnabled_writesFileLikeObjectStore() {
+        EmployeeService service = new EmployeeService(StorageOptions.builder().columnarEnabled(true).build());
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        assertTrue(service.addNewEmployers(BIG_LIST_OF_EMPLOYEES_PATH, TEMP_FILE_PATH));
+
+        List<Employee> expected = employeeReader.readXML(EMPLOYEES_PATH);
+        expected.addAll(getEmployees());
+        assertEquals(expected, employeeReader.readXML(TEMP_FILE_PATH));
+        assertEquals(expected, service.getAllEmployees(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void changeEmployeeType_columnarEnabled_checksTypeOfViews() {
+        EmployeeService service = new EmployeeService(StorageOptions.builder().columnarEnabled(true).build());
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        assertThrows(InvalidTypeException.class, () -> service.changeEmployeeType(TEMP_FILE_PATH,
+                "abd6b899-a798-4a67-8b63-0080af5468c2", EmployeeType.EMPLOYEE.toString(), ""));
+        assertThrows(InvalidTypeException.class, () -> service.changeEmployeeType(TEMP_FILE_PATH,
+                "dd82a20d-a11f-4610-86a1-c8bfc585eb79", EmployeeType.MANAGER.toString(), ""));
+        assertTrue(service.changeEmployeeType(TEMP_FILE_PATH, "abd6b899-a798-4a67-8b63-0080af5468c2",
+                EmployeeType.OTHER_EMPLOYEE.toString(), "description"));
+        assertThrows(InvalidTypeException.class, () -> service.changeEmployeeType(TEMP_FILE_PATH,
+                "abd6b899-a798-4a67-8b63-0080af5468c2", EmployeeType.OTHER_EMPLOYEE.toString(), ""));
+    }
+
+    @Test
+    @SneakyThrows
+    void getHeadcount_columnarEnabled_assignsAndCountsThroughViews() {
+        EmployeeService service = new EmployeeService(StorageOptions.builder().columnarEnabled(true).build());
+        String managerStringId = "dd82a20d-a11f-4610-86a1-c8bfc585eb79";
+        String employeeStringId = "abd6b899-a798-4a67-8b63-0080af5468c2";
+        String otherEmployeeStringId = "49486d44-a487-4d62-aac7-0171917a3386";
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        assertTrue(service.changeEmployeeType(TEMP_FILE_PATH, employeeStringId, EmployeeType.MANAGER.toString(), ""));
+        assertFalse(service.assignEmployeeToManager(TEMP_FILE_PATH, managerStringId, employeeStringId));
+        assertTrue(service.assignEmployeeToManager(TEMP_FILE_PATH, employeeStringId, otherEmployeeStringId));
+
+        assertEquals(2, service.getHeadcount(TEMP_FILE_PATH, managerStringId));
+        assertEquals(1, service.getHeadcount(TEMP_FILE_PATH, employeeStringId));
+        assertEquals(2, service.getDepth(TEMP_FILE_PATH, otherEmployeeStringId));
+        assertThrows(InvalidTypeException.class, () -> service.getHeadcount(TEMP_FILE_PATH, otherEmployeeStringId));
+        assertThrows(InvalidTypeException.class,
+                () -> service.assignEmployeeToManager(TEMP_FILE_PATH, otherEmployeeStringId, managerStringId));
+    }
+
+    @Test
+    @SneakyThrows
+    void sortByFullName_fileOverMemoryBudget_sortsOnDiskAndReloads() {
+        EmployeeService service = new EmployeeService(StorageOptions.builder()
+                .journalEnabled(true)
+                .sortMemoryBudget(1)
+                .build());
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        service.addNewEmployers(BIG_LIST_OF_EMPLOYEES_PATH, TEMP_FILE_PATH);
+
+        service.sortByFullName(TEMP_FILE_PATH);
+
+        List<Employee> expected = employeeReader.readXML(EMPLOYEES_PATH);
+        expected.addAll(getEmployees());
+        expected.sort(Comparator.comparing(Employee::getFullName));
+
+        assertEquals(expected, employeeReader.readXML(TEMP_FILE_PATH));
+        assertEquals(expected, service.getAllEmployees(TEMP_FILE_PATH));
+        Files.deleteIfExists(Path.of(TEMP_FILE_PATH + ".journal"));
+    }
+
+    @Test
+    @SneakyThrows
+    void searchEmployees_substring_returnsMatchingEmployees() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Employee> employees = employeeService.searchEmployees(TEMP_FILE_PATH, "third", "substring", false, 10);
+
+        assertEquals(List.of("ThirdEmployee"), employees.stream().map(Employee::getFullName).toList());
+    }
+
+    @Test
+    void searchEmployees_blankTextOrUnknownMatch_throwsInvalidInputDataExceptions() {
+        assertThrows(InvalidInputDataExceptions.class,
+                () -> employeeService.searchEmployees(TEMP_FILE_PATH, " ", "prefix", false, 10));
+        assertThrows(InvalidInputDataExceptions.class,
+                () -> employeeService.searchEmployees(TEMP_FILE_PATH, "Third", "exact", false, 10));
+    }
+
+    @Test
+    @SneakyThrows
+    void findByHiringDate_range_returnsEmployeesHiredInRange() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        assertEquals(3, employeeService.findByHiringDate(TEMP_FILE_PATH, DATE, null).size());
+        assertEquals(List.of(), employeeService.findByBirthdayDate(TEMP_FILE_PATH, null, DATE.minusDays(1)));
+    }
+
+    @Test
+    void findByHiringDate_startAfterEnd_throwsInvalidInputDataExceptions() {
+        assertThrows(InvalidInputDataExceptions.class,
+                () -> employeeService.findByHiringDate(TEMP_FILE_PATH, DATE, DATE.minusDays(1)));
+    }
+
+    @Test
+    @SneakyThrows
+    void getAllEmployees_fileChangedAfterLoading_readsFileAgain() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        assertEquals(3, employeeService.getAllEmployees(TEMP_FILE_PATH).size());
+
+        employeeWriter.writeXML(TEMP_FILE_PATH, List.of(EMPLOYEE));
+
+        assertEquals(List.of(EMPLOYEE), employeeService.getAllEmployees(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void addNewEmployers_storeTarget_keepsEmployeesInMappedStore() {
+        Path store = Path.of(ROOT + "/temp.staff");
+        EmployeeService service = new EmployeeService();
+
+        try {
+            assertTrue(service.addNewEmployers(EMPLOYEES_PATH, store));
+            assertFalse(service.addNewEmployers(EMPLOYEES_PATH, store));
+            assertTrue(service.removeEmployerByFullName(store, "SecondEmployee"));
+            service.close();
+
+            List<Employee> expected = employeeReader.readXML(EMPLOYEES_PATH);
+            expected.remove(1);
+            assertEquals(expected, new EmployeeService().getAllEmployees(store));
+        } finally {
+            Files.deleteIfExists(store);
+            Files.deleteIfExists(Path.of(ROOT + "/temp.staff.overflow"));
+            Files.deleteIfExists(Path.of(ROOT + "/temp.staff.index"));
+            Files.deleteIfExists(Path.of(ROOT + "/temp.staff.names"));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void changeEmployeeType_concurrentReadsAndWrites_readersSeeEveryRecord() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        String firstId = "abd6b899-a798-4a67-8b63-0080af5468c2";
+        String secondId = "49486d44-a487-4d62-aac7-0171917a3386";
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        AtomicBoolean isWriting = new AtomicBoolean(true);
+
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                readers.add(executor.submit(() -> {
+                    do {
+                        assertEquals(3, employeeService.getAllEmployees(TEMP_FILE_PATH).size());
+                        assertEquals(3, employeeService.searchEmployees(TEMP_FILE_PATH, "employee", "substring",
+                                false, 10).size());
+                    } while (isWriting.get());
+                }));
+            }
+
+            Future<?> firstWriter = executor.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    EmployeeType type = i % 2 == 0 ? EmployeeType.OTHER_EMPLOYEE : EmployeeType.EMPLOYEE;
+                    assertTrue(employeeService.changeEmployeeType(TEMP_FILE_PATH, firstId, type.toString(), "d"));
+                }
+            });
+            Future<?> secondWriter = executor.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    EmployeeType type = i % 2 == 0 ? EmployeeType.EMPLOYEE : EmployeeType.OTHER_EMPLOYEE;
+                    assertTrue(employeeService.changeEmployeeType(TEMP_FILE_PATH, secondId, type.toString(), "d"));
+                }
+            });
+
+            try {
+                firstWriter.get();
+                secondWriter.get();
+            } finally {
+                isWriting.set(false);
+            }
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Employee> employees = employeeService.getAllEmployees(TEMP_FILE_PATH);
+        assertEquals(employeeReader.readXML(TEMP_FILE_PATH), employees);
+        assertEquals(List.of(EmployeeType.MANAGER, EmployeeType.EMPLOYEE, EmployeeType.OTHER_EMPLOYEE),
+                employees.stream().map(EmployeeType::of).sorted().toList());
+    }
+
+    @Test
+    @SneakyThrows
+    void addEmployers_concurrentWritesWithGroupCommitWindow_shareDurableWrites() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        Duration window = Duration.ofMillis(500);
+        EmployeeService service = new EmployeeService(StorageOptions.builder()
+                .journalEnabled(true)
+                .groupCommitWindow(window)
+                .build());
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+
+        try {
+            assertEquals(3, service.getAllEmployees(TEMP_FILE_PATH).size());
+
+            long start = System.nanoTime();
+            List<Future<Boolean>> writers = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Employee employee = new Employee(UUID.randomUUID(), "Employee " + i, DATE, DATE);
+                writers.add(executor.submit(() -> service.addEmployers(List.of(employee), TEMP_FILE_PATH)));
+            }
+            for (Future<Boolean> writer : writers) {
+                assertTrue(writer.get());
+            }
+
+            // one durable write per operation would take six windows
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(window.multipliedBy(4)) < 0);
+        } finally {
+            executor.shutdownNow();
+            service.close();
+            Files.deleteIfExists(StaffJournal.of(TEMP_FILE_PATH));
+        }
+
+        assertEquals(9, employeeReader.readXML(TEMP_FILE_PATH).size());
+    }
+
+    @Test
+    @SneakyThrows
+    void getAllEmployees_writeStillCommitting_waitsForDurableWrite() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        EmployeeService service = new EmployeeService(StorageOptions.builder()
+                .groupCommitWindow(Duration.ofMillis(500))
+                .build());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            assertEquals(3, service.getAllEmployees(TEMP_FILE_PATH).size());
+            Employee employee = new Employee(UUID.randomUUID(), "FourthEmployee", DATE, DATE);
+            Future<Boolean> writer = executor.submit(() -> service.addEmployers(List.of(employee), TEMP_FILE_PATH));
+            Thread.sleep(100);
+
+            List<Employee> employees = service.getAllEmployees(TEMP_FILE_PATH);
+
+            assertEquals(employeeReader.readXML(TEMP_FILE_PATH), employees);
+            assertEquals(4, employees.size());
+            assertTrue(writer.get());
+        } finally {
+            executor.shutdownNow();
+            service.close();
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void close_sharedJournalAppendedByAnotherService_foldsEveryChangeIntoFile() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        StorageOptions options = StorageOptions.builder().journalEnabled(true).fileLockingEnabled(true).build();
+        EmployeeService first = new EmployeeService(options);
+        EmployeeService second = new EmployeeService(options);
+
+        try {
+            assertTrue(first.removeEmployerByFullName(TEMP_FILE_PATH, "ThirdEmployee"));
+            assertTrue(second.removeEmployerByFullName(TEMP_FILE_PATH, "SecondEmployee"));
+
+            first.close();
+
+            assertEquals(List.of("FirstEmployee"),
+                    employeeReader.readXML(TEMP_FILE_PATH).stream().map(Employee::getFullName).toList());
+            assertFalse(StaffJournal.hasRecords(StaffJournal.of(TEMP_FILE_PATH)));
+        } finally {
+            first.close();
+            second.close();
+            Files.deleteIfExists(StaffFileLock.of(TEMP_FILE_PATH));
+            Files.deleteIfExists(StaffJournal.of(TEMP_FILE_PATH));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void changeEmployeeType_twoServicesWithSharedJournal_loseNoChanges() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        StorageOptions options = StorageOptions.builder().journalEnabled(true).fileLockingEnabled(true).build();
+        EmployeeService first = new EmployeeService(options);
+        EmployeeService second = new EmployeeService(options);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<?> firstWriter = executor.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    EmployeeType type = i % 2 == 0 ? EmployeeType.OTHER_EMPLOYEE : EmployeeType.EMPLOYEE;
+                    assertTrue(first.changeEmployeeType(TEMP_FILE_PATH, "abd6b899-a798-4a67-8b63-0080af5468c2",
+                            type.toString(), "d"));
+                }
+            });
+            Future<?> secondWriter = executor.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    EmployeeType type = i % 2 == 0 ? EmployeeType.EMPLOYEE : EmployeeType.OTHER_EMPLOYEE;
+                    assertTrue(second.changeEmployeeType(TEMP_FILE_PATH, "49486d44-a487-4d62-aac7-0171917a3386",
+                            type.toString(), "d"));
+                }
+            });
+            firstWriter.get();
+            secondWriter.get();
+
+            List<Employee> employees = first.getAllEmployees(TEMP_FILE_PATH);
+            assertEquals(employees, second.getAllEmployees(TEMP_FILE_PATH));
+            assertEquals(List.of(EmployeeType.MANAGER, EmployeeType.EMPLOYEE, EmployeeType.OTHER_EMPLOYEE),
+                    employees.stream().map(EmployeeType::of).sorted().toList());
+
+            // the first to close folds the shared journal, changes of the other process included
+            first.close();
+            assertEquals(employees, employeeReader.readXML(TEMP_FILE_PATH));
+            second.close();
+            assertEquals(employees, employeeReader.readXML(TEMP_FILE_PATH));
+
+            EmployeeService next = new EmployeeService(options);
+            assertEquals(employees, next.getAllEmployees(TEMP_FILE_PATH));
+            next.close();
+        } finally {
+            executor.shutdownNow();
+            first.close();
+            second.close();
+            Files.deleteIfExists(StaffFileLock.of(TEMP_FILE_PATH));
+            Files.deleteIfExists(StaffJournal.of(TEMP_FILE_PATH));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void changeEmployeeType_twoServicesWithFileLocking_loseNoChanges() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        StorageOptions options = StorageOptions.builder().fileLockingEnabled(true).build();
+        EmployeeService first = new EmployeeService(options);
+        EmployeeService second = new EmployeeService(options);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            assertEquals(3, first.getAllEmployees(TEMP_FILE_PATH).size());
+            assertEquals(3, second.getAllEmployees(TEMP_FILE_PATH).size());
+
+            Future<?> firstWriter = executor.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    EmployeeType type = i % 2 == 0 ? EmployeeType.OTHER_EMPLOYEE : EmployeeType.EMPLOYEE;
+                    assertTrue(first.changeEmployeeType(TEMP_FILE_PATH, "abd6b899-a798-4a67-8b63-0080af5468c2",
+                            type.toString(), "d"));
+                }
+            });
+            Future<?> secondWriter = executor.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    EmployeeType type = i % 2 == 0 ? EmployeeType.EMPLOYEE : EmployeeType.OTHER_EMPLOYEE;
+                    assertTrue(second.changeEmployeeType(TEMP_FILE_PATH, "49486d44-a487-4d62-aac7-0171917a3386",
+                            type.toString(), "d"));
+                }
+            });
+            firstWriter.get();
+            secondWriter.get();
+
+            List<Employee> employees = employeeReader.readXML(TEMP_FILE_PATH);
+            assertEquals(employees, first.getAllEmployees(TEMP_FILE_PATH));
+            assertEquals(employees, second.getAllEmployees(TEMP_FILE_PATH));
+            assertEquals(List.of(EmployeeType.MANAGER, EmployeeType.EMPLOYEE, EmployeeType.OTHER_EMPLOYEE),
+                    employees.stream().map(EmployeeType::of).sorted().toList());
+
+            try (StaffFileLock fileLock = StaffFileLock.open(TEMP_FILE_PATH)) {
+                assertEquals(40, fileLock.getVersion());
+            }
+        } finally {
+            executor.shutdownNow();
+            first.close();
+            second.close();
+            Files.deleteIfExists(StaffFileLock.of(TEMP_FILE_PATH));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void addEmployers_listWithExistingEmployee_addsNothing() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        List<Employee> existing = employeeReader.readXML(EMPLOYEES_PATH);
+
+        assertFalse(employeeService.addEmployers(List.of(EMPLOYEE, existing.get(1)), TEMP_FILE_PATH));
+        assertTrue(employeeService.addEmployers(List.of(EMPLOYEE), TEMP_FILE_PATH));
+
+        existing.add(EMPLOYEE);
+        assertEquals(existing, employeeReader.readXML(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void batch_severalOperations_writesFileOnceAtTheEnd() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        employeeService.batch(TEMP_FILE_PATH, () -> {
+            assertTrue(employeeService.changeEmployeeType(TEMP_FILE_PATH, "abd6b899-a798-4a67-8b63-0080af5468c2",
+                    EmployeeType.MANAGER.toString(), ""));
+            assertTrue(employeeService.assignEmployeeToManager(TEMP_FILE_PATH,
+                    "abd6b899-a798-4a67-8b63-0080af5468c2", "49486d44-a487-4d62-aac7-0171917a3386"));
+            assertThrows(InvalidIdException.class, () -> employeeService.removeEmployerById(TEMP_FILE_PATH, "id"));
+            assertTrue(employeeService.removeEmployerByFullName(TEMP_FILE_PATH, "ThirdEmployee"));
+            employeeService.sortByFullName(TEMP_FILE_PATH);
+
+            assertEquals(2, employeeService.getAllEmployees(TEMP_FILE_PATH).size());
+            assertEquals(employeeReader.readXML(EMPLOYEES_PATH), employeeReader.readXML(TEMP_FILE_PATH));
+        });
+
+        List<Employee> employees = employeeReader.readXML(TEMP_FILE_PATH);
+        assertEquals(employees, employeeService.getAllEmployees(TEMP_FILE_PATH));
+        assertEquals(List.of("FirstEmployee", "SecondEmployee"), employees.stream().map(Employee::getFullName).toList());
+        assertEquals(List.of(employees.get(1)), ((Manager) employees.get(0)).getSubordinates());
+    }
+
+    @Test
+    @SneakyThrows
+    void begin_operationsAndCommit_otherThreadsSeeChangesAfterCommitOnly() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        List<Employee> before = employeeReader.readXML(EMPLOYEES_PATH);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (StaffTransaction transaction = employeeService.begin(TEMP_FILE_PATH)) {
+            assertTrue(employeeService.changeEmployeeType(TEMP_FILE_PATH, "abd6b899-a798-4a67-8b63-0080af5468c2",
+                    EmployeeType.MANAGER.toString(), ""));
+            assertTrue(employeeService.assignEmployeeToManager(TEMP_FILE_PATH,
+                    "abd6b899-a798-4a67-8b63-0080af5468c2", "49486d44-a487-4d62-aac7-0171917a3386"));
+            assertTrue(employeeService.removeEmployerByFullName(TEMP_FILE_PATH, "ThirdEmployee"));
+
+            assertEquals(2, employeeService.getAllEmployees(TEMP_FILE_PATH).size());
+            assertEquals(before, executor.submit(() -> employeeService.getAllEmployees(TEMP_FILE_PATH)).get());
+            assertEquals(before, employeeReader.readXML(TEMP_FILE_PATH));
+
+            transaction.commit();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Employee> employees = employeeReader.readXML(TEMP_FILE_PATH);
+        assertEquals(employees, employeeService.getAllEmployees(TEMP_FILE_PATH));
+        assertEquals(List.of("SecondEmployee", "FirstEmployee"), employees.stream().map(Employee::getFullName).toList());
+        assertEquals(List.of(employees.get(0)), ((Manager) employees.get(1)).getSubordinates());
+    }
+
+    @Test
+    @SneakyThrows
+    void begin_failedStep_rollbackLeavesFileUnchanged() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        List<Employee> before = employeeReader.readXML(EMPLOYEES_PATH);
+
+        try (StaffTransaction ignored = employeeService.begin(TEMP_FILE_PATH)) {
+            assertTrue(employeeService.removeEmployerByFullName(TEMP_FILE_PATH, "SecondEmployee"));
+            assertThrows(InvalidTypeException.class, () -> employeeService.changeEmployeeType(TEMP_FILE_PATH,
+                    "abd6b899-a798-4a67-8b63-0080af5468c2", EmployeeType.EMPLOYEE.toString(), ""));
+            assertThrows(IllegalStateException.class, () -> employeeService.begin(TEMP_FILE_PATH));
+        }
+
+        assertEquals(before, employeeReader.readXML(TEMP_FILE_PATH));
+        assertEquals(before, employeeService.getAllEmployees(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void commit_fileWrittenAfterBegin_throwsStaleTransactionException() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (StaffTransaction transaction = employeeService.begin(TEMP_FILE_PATH)) {
+            assertTrue(employeeService.removeEmployerByFullName(TEMP_FILE_PATH, "FirstEmployee"));
+            assertTrue(executor.submit(() -> employeeService.removeEmployerByFullName(TEMP_FILE_PATH,
+                    "SecondEmployee")).get());
+
+            assertThrows(StaleTransactionException.class, transaction::commit);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(List.of("FirstEmployee", "ThirdEmployee"),
+                employeeReader.readXML(TEMP_FILE_PATH).stream().map(Employee::getFullName).toList());
+    }
+
+    @Test
+    @SneakyThrows
+    void getAllEmployees_returnedEmployeeChanged_loadedListStaysUnchanged() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Employee> employees = employeeService.getAllEmployees(TEMP_FILE_PATH);
+        employees.get(0).setFullName("Changed");
+        ((Manager) employees.get(2)).getSubordinates().clear();
+
+        assertEquals(employeeReader.readXML(EMPLOYEES_PATH), employeeService.getAllEmployees(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void getEvents_committedOperations_subscriberGetsEventsInOrder() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        List<EmployeeEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(5);
+        employeeService.getEvents().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(EmployeeEvent item) {
+                events.add(item);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertTrue(employeeService.changeEmployeeType(TEMP_FILE_PATH, "abd6b899-a798-4a67-8b63-0080af5468c2",
+                EmployeeType.MANAGER.toString(), ""));
+        assertTrue(employeeService.assignEmployeeToManager(TEMP_FILE_PATH,
+                "abd6b899-a798-4a67-8b63-0080af5468c2", "49486d44-a487-4d62-aac7-0171917a3386"));
+        try (StaffTransaction ignored = employeeService.begin(TEMP_FILE_PATH)) {
+            assertTrue(employeeService.removeEmployerByFullName(TEMP_FILE_PATH, "SecondEmployee"));
+        }
+        assertTrue(employeeService.removeEmployerByFullName(TEMP_FILE_PATH, "ThirdEmployee"));
+        employeeService.batch(TEMP_FILE_PATH, () -> employeeService.sortByFullName(TEMP_FILE_PATH));
+        assertTrue(employeeService.addEmployers(List.of(new Employee(UUID.randomUUID(), "FourthEmployee", DATE, DATE)),
+                TEMP_FILE_PATH));
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of(EmployeeEventType.TYPE_CHANGED, EmployeeEventType.ASSIGNED, EmployeeEventType.REMOVED,
+                        EmployeeEventType.REORDERED, EmployeeEventType.ADDED),
+                events.stream().map(EmployeeEvent::getType).toList());
+        assertEquals("ThirdEmployee", events.get(2).getEmployees().get(0).getFullName());
+        assertEquals(UUID.fromString("abd6b899-a798-4a67-8b63-0080af5468c2"), events.get(1).getManager().getId());
+    }
+
+    @Test
+    @SneakyThrows
+    void batch_writeFails_publishesNoEvents() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        List<EmployeeEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        employeeService.getEvents().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(EmployeeEvent item) {
+                events.add(item);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        // a directory in place of the file cannot be replaced by the written one
+        assertThrows(FileSystemException.class, () -> employeeService.batch(TEMP_FILE_PATH, () -> {
+            assertTrue(employeeService.removeEmployerByFullName(TEMP_FILE_PATH, "ThirdEmployee"));
+            assertTrue(TEMP_FILE_PATH.toFile().delete());
+            assertTrue(TEMP_FILE_PATH.resolve("child").toFile().mkdirs());
+        }));
+        Files.delete(TEMP_FILE_PATH.resolve("child"));
+        Files.delete(TEMP_FILE_PATH);
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        assertTrue(employeeService.removeEmployerByFullName(TEMP_FILE_PATH, "SecondEmployee"));
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, events.size());
+        assertEquals("SecondEmployee", events.get(0).getEmployees().get(0).getFullName());
+    }
+
+    @Test
+    @SneakyThrows
+    void getEvents_assignments_eventsHoldCopiesTakenAtTheChange() {
+        String managerStringId = "dd82a20d-a11f-4610-86a1-c8bfc585eb79";
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        List<EmployeeEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        employeeService.getEvents().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(EmployeeEvent item) {
+                events.add(item);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertTrue(employeeService.assignEmployeeToManager(TEMP_FILE_PATH, managerStringId,
+                "49486d44-a487-4d62-aac7-0171917a3386"));
+        assertTrue(employeeService.addEmployers(List.of(new Employee(UUID.randomUUID(), "FourthEmployee", DATE, DATE)),
+                TEMP_FILE_PATH));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(employeeService.assignEmployeeToManager(TEMP_FILE_PATH, managerStringId,
+                events.get(1).getEmployees().get(0).getId().toString()));
+        List<Employee> before = employeeService.getAllEmployees(TEMP_FILE_PATH);
+
+        assertEquals(2, events.get(0).getManager().getSubordinates().size());
+        assertSame(events.get(0).getEmployees().get(0), events.get(0).getManager().getSubordinates().get(1));
+        events.get(0).getManager().setFullName("Changed");
+        events.get(1).getEmployees().get(0).setFullName("Changed");
+        assertEquals(before, employeeService.getAllEmployees(TEMP_FILE_PATH));
+    }
+
+    // the copy of FirstEmployee under the manager is equal to the top-level record, so it is written as a reference
+    @SneakyThrows
+    private static String getNormalizedEmployees() {
+        String copy = """
+                            <employee id="abd6b899-a798-4a67-8b63-0080af5468c2">
+                                <fullName>FirstEmployee</fullName>
+                                <birthdayDate>2024-01-02</birthdayDate>
+                                <hiringDate>2024-01-02</hiringDate>
+                            </employee>
+                """;
+        String reference = """
+                            <subordinate ref="abd6b899-a798-4a67-8b63-0080af5468c2"/>
+                """;
+        String source = Files.readString(EMPLOYEES_PATH);
+        assertTrue(source.contains(copy));
+        return source.replace(copy, reference);
+    }
+}
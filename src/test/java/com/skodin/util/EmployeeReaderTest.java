@@ -1,6 +1,8 @@
 package com.skodin.util;
 
 import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
 import com.skodin.exceptions.*;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
@@ -10,7 +12,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,6 +32,19 @@ class EmployeeReaderTest extends MainXMLTest {
         assertEquals(getEmployees(), list);
     }
 
+    @Test
+    void readXML_repeatedValues_sharesOneInstance() {
+        List<Employee> list = employeeReader.readXML(BIG_LIST_OF_EMPLOYEES_PATH);
+        Manager manager = (Manager) list.get(list.size() - 1);
+        OtherEmployee nested = (OtherEmployee) manager.getSubordinates().get(1);
+
+        assertSame(list.get(0).getFullName(), manager.getSubordinates().get(0).getFullName());
+        assertSame(((OtherEmployee) list.get(1)).getDescription(), nested.getDescription());
+        // one name and one description in the whole file
+        StringPool pool = employeeReader.getStringPool();
+        assertEquals(pool.getLookups() - 2, pool.getHits());
+    }
+
     @Test
     void readXML_nonExistentFile_throwsFileNotFoundException() {
         Path nonExistentPath = Path.of("non/existent/path");
@@ -109,4 +127,231 @@ class EmployeeReaderTest extends MainXMLTest {
         assertThrows(PathIsNullException.class,
                 () -> employeeReader.pathValidate(null));
     }
-}
\ No newline at end of file
+
+    @Test
+    @SneakyThrows
+    void open_validSourceFile_returnsEmployeesAndCurrentFingerprint() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        StaffFile staffFile = employeeReader.open(TEMP_FILE_PATH);
+
+        assertEquals(employeeReader.readXML(EMPLOYEES_PATH), staffFile.getEmployees());
+        assertEquals(Files.size(EMPLOYEES_PATH), staffFile.getFingerprint().getSize());
+        assertEquals(FileFingerprint.checksumOf(TEMP_FILE_PATH), staffFile.getFingerprint().getChecksum());
+        assertTrue(staffFile.getFingerprint().isCurrent(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void open_fileChangedAfterReading_fingerprintIsNotCurrent() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        StaffFile staffFile = employeeReader.open(TEMP_FILE_PATH);
+        new EmployeeWriter().writeXML(TEMP_FILE_PATH, List.of(EMPLOYEE));
+
+        assertFalse(staffFile.getFingerprint().isCurrent(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void open_sameSizeRewriteWithinTick_fingerprintIsNotCurrent() {
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        StaffFile staffFile = employeeReader.open(TEMP_FILE_PATH);
+        rewriteKeepingSizeAndTime(TEMP_FILE_PATH);
+
+        assertFalse(staffFile.getFingerprint().isCurrent(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void readBinary_exportedEmployees_returnsTheSameEmployees() {
+        new EmployeeWriter().writeBinary(TEMP_FILE_PATH, getEmployees());
+
+        assertEquals(getEmployees(), employeeReader.readBinary(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void readBinary_damagedFile_throwsDamagedFileException() {
+        new EmployeeWriter().writeBinary(TEMP_FILE_PATH, getEmployees());
+
+        byte[] bytes = Files.readAllBytes(TEMP_FILE_PATH);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(TEMP_FILE_PATH, bytes);
+
+        assertThrows(DamagedFileException.class,
+                () -> employeeReader.readBinary(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void openSnapshot_snapshotOfCurrentFile_returnsTheSameStaffFile() {
+        Path snapshot = BinarySnapshot.of(TEMP_FILE_PATH);
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        try {
+            StaffFile staffFile = employeeReader.open(TEMP_FILE_PATH);
+            new EmployeeWriter().writeSnapshot(snapshot, staffFile.getEmployees(), staffFile.getFingerprint());
+
+            StaffFile fromSnapshot = employeeReader.openSnapshot(TEMP_FILE_PATH, snapshot).orElseThrow();
+
+            assertEquals(staffFile.getEmployees(), fromSnapshot.getEmployees());
+            assertEquals(staffFile.getFingerprint(), fromSnapshot.getFingerprint());
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void openSnapshot_fileChangedAfterSnapshot_returnsEmpty() {
+        Path snapshot = BinarySnapshot.of(TEMP_FILE_PATH);
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        try {
+            StaffFile staffFile = employeeReader.open(TEMP_FILE_PATH);
+            new EmployeeWriter().writeSnapshot(snapshot, staffFile.getEmployees(), staffFile.getFingerprint());
+            new EmployeeWriter().writeXML(TEMP_FILE_PATH, List.of(EMPLOYEE));
+
+            assertTrue(employeeReader.openSnapshot(TEMP_FILE_PATH, snapshot).isEmpty());
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void openSnapshot_sameSizeRewriteAfterSnapshot_returnsEmpty() {
+        Path snapshot = BinarySnapshot.of(TEMP_FILE_PATH);
+        Files.copy(EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        try {
+            StaffFile staffFile = employeeReader.open(TEMP_FILE_PATH);
+            new EmployeeWriter().writeSnapshot(snapshot, staffFile.getEmployees(), staffFile.getFingerprint());
+            rewriteKeepingSizeAndTime(TEMP_FILE_PATH);
+
+            assertTrue(employeeReader.openSnapshot(TEMP_FILE_PATH, snapshot).isEmpty());
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    void fromXML_referenceToMissingEmployee_throwsIncorrectContentException() {
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8" standalone="no"?>
+                <employees>
+                    <manager id="dd82a20d-a11f-4610-86a1-c8bfc585eb79">
+                        <fullName>Manager</fullName>
+                        <birthdayDate>2024-01-02</birthdayDate>
+                        <hiringDate>2024-01-02</hiringDate>
+                        <subordinates>
+                            <subordinate ref="abd6b899-a798-4a67-8b63-0080af5468c2"/>
+                        </subordinates>
+                    </manager>
+                </employees>
+                """;
+
+        assertThrows(IncorrectContentException.class, () -> employeeReader.fromXML(xml));
+    }
+
+    @Test
+    void fromXML_managersReferenceEachOther_throwsIncorrectContentException() {
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8" standalone="no"?>
+                <employees>
+                    <manager id="dd82a20d-a11f-4610-86a1-c8bfc585eb79">
+                        <fullName>FirstManager</fullName>
+                        <birthdayDate>2024-01-02</birthdayDate>
+                        <hiringDate>2024-01-02</hiringDate>
+                        <subordinates>
+                            <subordinate ref="abd6b899-a798-4a67-8b63-0080af5468c2"/>
+                        </subordinates>
+                    </manager>
+                    <manager id="abd6b899-a798-4a67-8b63-0080af5468c2">
+                        <fullName>SecondManager</fullName>
+                        <birthdayDate>2024-01-02</birthdayDate>
+                        <hiringDate>2024-01-02</hiringDate>
+                        <subordinates>
+                            <subordinate ref="dd82a20d-a11f-4610-86a1-c8bfc585eb79"/>
+                        </subordinates>
+                    </manager>
+                </employees>
+                """;
+
+        assertThrows(IncorrectContentException.class, () -> employeeReader.fromXML(xml));
+    }
+
+    @Test
+    @SneakyThrows
+    void readUnresolved_managersReferenceEachOther_throwsIncorrectContentException() {
+        Files.writeString(TEMP_FILE_PATH, """
+                <?xml version="1.0" encoding="UTF-8" standalone="no"?>
+                <employees>
+                    <manager id="dd82a20d-a11f-4610-86a1-c8bfc585eb79">
+                        <fullName>FirstManager</fullName>
+                        <birthdayDate>2024-01-02</birthdayDate>
+                        <hiringDate>2024-01-02</hiringDate>
+                        <subordinates>
+                            <subordinate ref="abd6b899-a798-4a67-8b63-0080af5468c2"/>
+                        </subordinates>
+                    </manager>
+                    <manager id="abd6b899-a798-4a67-8b63-0080af5468c2">
+                        <fullName>SecondManager</fullName>
+                        <birthdayDate>2024-01-02</birthdayDate>
+                        <hiringDate>2024-01-02</hiringDate>
+                        <subordinates>
+                            <manager id="49486d44-a487-4d62-aac7-0171917a3386">
+                                <fullName>Copy</fullName>
+                                <birthdayDate>2024-01-02</birthdayDate>
+                                <hiringDate>2024-01-02</hiringDate>
+                                <subordinates>
+                                    <subordinate ref="dd82a20d-a11f-4610-86a1-c8bfc585eb79"/>
+                                </subordinates>
+                            </manager>
+                        </subordinates>
+                    </manager>
+                </employees>
+                """);
+
+        assertThrows(IncorrectContentException.class, () -> employeeReader.readUnresolved(TEMP_FILE_PATH, e -> true));
+    }
+
+    @Test
+    @SneakyThrows
+    void readUnresolved_referenceToTopLevelEmployee_leavesIdOnly() {
+        Employee employee = new Employee(UUID.randomUUID(), "Employee", DATE, DATE);
+        new EmployeeWriter().writeXML(TEMP_FILE_PATH, List.of(
+                new Manager(UUID.randomUUID(), "Manager", DATE, DATE, new ArrayList<>(List.of(employee))), employee));
+        List<Employee> list = new ArrayList<>();
+
+        assertTrue(employeeReader.readUnresolved(TEMP_FILE_PATH, list::add));
+
+        Employee subordinate = ((Manager) list.get(0)).getSubordinates().get(0);
+        assertEquals(employee.getId(), subordinate.getId());
+        assertNull(subordinate.getFullName());
+    }
+
+    @Test
+    void read_consumerStopsPass_returnsFalseAfterFirstRecord() {
+        List<Employee> list = new ArrayList<>();
+
+        boolean isComplete = employeeReader.read(EMPLOYEES_PATH, employee -> {
+            list.add(employee);
+            return false;
+        });
+
+        assertFalse(isComplete);
+        assertEquals(1, list.size());
+    }
+
+    // as a second write within the resolution of the modification time leaves the file
+    @SneakyThrows
+    private static void rewriteKeepingSizeAndTime(Path path) {
+        FileTime lastModified = Files.getLastModifiedTime(path);
+        String content = Files.readString(path);
+        Files.writeString(path, content.replace("FirstEmployee", "FirstEmployeX"));
+        Files.setLastModifiedTime(path, lastModified);
+    }
+}
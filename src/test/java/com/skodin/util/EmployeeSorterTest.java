@@ -0,0 +1,130 @@
+package com.skodin.util;
+
+import com.skodin.MainXMLTest;
+import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.enums.EmployeeOrder;
+import com.skodin.exceptions.DamagedFileException;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmployeeSorterTest extends MainXMLTest {
+
+    private final EmployeeReader employeeReader = new EmployeeReader();
+    private final EmployeeWriter employeeWriter = new EmployeeWriter();
+
+    private static List<Employee> getStaff() {
+        List<Employee> employees = new ArrayList<>(getEmployees());
+
+        for (int i = 0; i < 50; i++) {
+            employees.add(new Employee(UUID.randomUUID(), "Employee " + (i * 7 % 50),
+                    DATE, LocalDate.ofEpochDay(19000 + i * 13 % 40)));
+        }
+
+        Employee subordinate = employees.get(10);
+        employees.add(new Manager(UUID.randomUUID(), "Manager", DATE, DATE,
+                new ArrayList<>(List.of(subordinate, EMPLOYEE))));
+        return employees;
+    }
+
+    @Test
+    @SneakyThrows
+    void sort_budgetOfOneRecord_mergesRunsIntoTheSameFileAsInMemorySort() {
+        List<Employee> employees = getStaff();
+        employeeWriter.writeXML(TEMP_FILE_PATH, employees);
+
+        new EmployeeSorter(1).sort(TEMP_FILE_PATH, EmployeeOrder.HIRING_DATE.getComparator());
+
+        List<Employee> expected = new ArrayList<>(employees);
+        expected.sort(EmployeeOrder.HIRING_DATE.getComparator());
+        assertEquals(employeeWriter.toXML(expected), Files.readString(TEMP_FILE_PATH));
+        assertTrue(Files.readString(TEMP_FILE_PATH).contains("<subordinate ref="));
+    }
+
+    @Test
+    @SneakyThrows
+    void sort_smallBudget_keepsAtMostOneChunkOfRecordsAlive() {
+        Employee employee = new Employee(UUID.randomUUID(), "Employee", DATE, DATE);
+        List<Employee> employees = new ArrayList<>(List.of(employee));
+        for (int i = 0; i < 3000; i++) {
+            employees.add(new Manager(UUID.randomUUID(), "Manager " + i, DATE, DATE,
+                    new ArrayList<>(List.of(employee))));
+        }
+        employeeWriter.writeXML(TEMP_FILE_PATH, employees);
+
+        // every manager read from the file holds its own placeholder of the reference, nothing else refers to it
+        Map<UUID, WeakReference<Employee>> placeholders = new HashMap<>();
+        int[] maxAlive = {0};
+        Comparator<Employee> names = EmployeeOrder.FULL_NAME.getComparator();
+        Comparator<Employee> comparator = (left, right) -> {
+            for (Employee record : List.of(left, right)) {
+                if (record instanceof Manager manager && !placeholders.containsKey(manager.getId())) {
+                    placeholders.put(manager.getId(), new WeakReference<>(manager.getSubordinates().get(0)));
+                    if (placeholders.size() % 500 == 0) {
+                        System.gc();
+                        int alive = (int) placeholders.values().stream().filter(e -> e.get() != null).count();
+                        maxAlive[0] = Math.max(maxAlive[0], alive);
+                    }
+                }
+            }
+            return names.compare(left, right);
+        };
+
+        // about 50 managers with their placeholders
+        new EmployeeSorter(50 * 344).sort(TEMP_FILE_PATH, comparator);
+
+        assertEquals(3000, placeholders.size());
+        assertTrue(maxAlive[0] <= 100, maxAlive[0] + " records were alive");
+        assertEquals(3001, employeeReader.readXML(TEMP_FILE_PATH).size());
+    }
+
+    @Test
+    @SneakyThrows
+    void sort_budgetOverFileSize_sortsInMemory() {
+        List<Employee> employees = getStaff();
+        employeeWriter.writeXML(TEMP_FILE_PATH, employees);
+
+        new EmployeeSorter(Long.MAX_VALUE).sort(TEMP_FILE_PATH, EmployeeOrder.FULL_NAME.getComparator());
+
+        List<Employee> expected = new ArrayList<>(employees);
+        expected.sort(EmployeeOrder.FULL_NAME.getComparator());
+        assertEquals(employeeWriter.toXML(expected), Files.readString(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void sort_damagedFile_keepsFileAndRemovesRuns() {
+        employeeWriter.writeXML(TEMP_FILE_PATH, getStaff());
+        Files.writeString(TEMP_FILE_PATH, "invalid text", StandardOpenOption.APPEND);
+        String expected = Files.readString(TEMP_FILE_PATH);
+
+        assertThrows(DamagedFileException.class,
+                () -> new EmployeeSorter(1).sort(TEMP_FILE_PATH, EmployeeOrder.FULL_NAME.getComparator()));
+
+        assertEquals(expected, Files.readString(TEMP_FILE_PATH));
+        try (Stream<Path> files = Files.list(Path.of(ROOT))) {
+            assertTrue(files.noneMatch(path -> path.toString().endsWith(".run")));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void sort_bigListOfEmployees_keepsEqualRecordsInFileOrder() {
+        Files.copy(BIG_LIST_OF_EMPLOYEES_PATH, TEMP_FILE_PATH, StandardCopyOption.REPLACE_EXISTING);
+
+        new EmployeeSorter(1).sort(TEMP_FILE_PATH, EmployeeOrder.FULL_NAME.getComparator());
+
+        assertEquals(employeeReader.readXML(BIG_LIST_OF_EMPLOYEES_PATH), employeeReader.readXML(TEMP_FILE_PATH));
+    }
+}
@@ -1,6 +1,8 @@
 package com.skodin.util;
 
 import com.skodin.entities.Employee;
+import com.skodin.entities.Manager;
+import com.skodin.entities.OtherEmployee;
 import com.skodin.exceptions.FileNotFoundException;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
@@ -10,9 +12,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class EmployeeWriterTest extends MainXMLTest {
     private final EmployeeWriter employeeWriter = new EmployeeWriter();
@@ -69,4 +75,104 @@ class EmployeeWriterTest extends MainXMLTest {
 
         assertEquals(expected, actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    @SneakyThrows
+    void writeXML_specialCharactersInText_readsTheSameEmployees() {
+        List<Employee> employees = List.of(
+                new OtherEmployee(UUID.randomUUID(), "A & <B> \"C\"\r\n\uD83D\uDE00", DATE, DATE, "]]> description"),
+                new OtherEmployee(UUID.randomUUID(), "Empty description", DATE, DATE, ""));
+
+        employeeWriter.writeXML(TEMP_FILE_PATH, employees);
+
+        assertEquals(employees, new EmployeeReader().readXML(TEMP_FILE_PATH));
+    }
+
+    @Test
+    @SneakyThrows
+    void writeXML_validTargetFile_leavesNoTemporaryFiles() {
+        employeeWriter.writeXML(TEMP_FILE_PATH, getEmployees());
+
+        try (var files = Files.list(TEMP_FILE_PATH.getParent())) {
+            assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    void toXML_subordinateIsTopLevelEmployee_writesReferenceAndReadsSameInstance() {
+        Employee employee = new Employee(UUID.randomUUID(), "Employee", DATE, DATE);
+        Manager manager = new Manager(UUID.randomUUID(), "Manager", DATE, DATE, new ArrayList<>(List.of(employee)));
+
+        String xml = employeeWriter.toXML(List.of(manager, employee));
+        List<Employee> list = new EmployeeReader().fromXML(xml);
+
+        assertTrue(xml.contains("<subordinate ref=\"%s\"/>".formatted(employee.getId())));
+        assertEquals(List.of(manager, employee), list);
+        assertSame(list.get(1), ((Manager) list.get(0)).getSubordinates().get(0));
+    }
+
+    @Test
+    @SneakyThrows
+    void writeBinary_subordinateIsTopLevelEmployee_readsSameInstance() {
+        Employee employee = new Employee(UUID.randomUUID(), "Employee", DATE, DATE);
+        Manager manager = new Manager(UUID.randomUUID(), "Manager", DATE, DATE, new ArrayList<>(List.of(employee)));
+
+        employeeWriter.writeBinary(TEMP_FILE_PATH, List.of(manager, employee));
+        List<Employee> list = new EmployeeReader().readBinary(TEMP_FILE_PATH);
+
+        assertEquals(List.of(manager, employee), list);
+        assertSame(list.get(1), ((Manager) list.get(0)).getSubordinates().get(0));
+    }
+
+    @Test
+    void toXML_subordinateIsEqualCopyOfTopLevelEmployee_writesReference() {
+        Employee employee = new Employee(UUID.randomUUID(), "Employee", DATE, DATE);
+        Employee copy = new Employee(employee.getId(), "Employee", DATE, DATE);
+        Manager manager = new Manager(UUID.randomUUID(), "Manager", DATE, DATE, new ArrayList<>(List.of(copy)));
+
+        String xml = employeeWriter.toXML(List.of(manager, employee));
+        List<Employee> list = new EmployeeReader().fromXML(xml);
+
+        assertTrue(xml.contains("<subordinate ref=\"%s\"/>".formatted(employee.getId())));
+        assertSame(list.get(1), ((Manager) list.get(0)).getSubordinates().get(0));
+    }
+
+    @Test
+    void toXML_subordinateDiffersFromTopLevelEmployee_writesCopy() {
+        Employee employee = new Employee(UUID.randomUUID(), "Employee", DATE, DATE);
+        Employee renamed = new Employee(employee.getId(), "Renamed", DATE, DATE);
+        Manager manager = new Manager(UUID.randomUUID(), "Manager", DATE, DATE, new ArrayList<>(List.of(renamed)));
+
+        String xml = employeeWriter.toXML(List.of(manager, employee));
+
+        assertFalse(xml.contains("ref="));
+        assertEquals("Renamed", ((Manager) new EmployeeReader().fromXML(xml).get(0)).getSubordinates().get(0)
+                .getFullName());
+    }
+
+    @Test
+    @SneakyThrows
+    void writeBinary_deepHierarchyOfManagers_readsEveryLevel() {
+        Employee employee = new Employee(UUID.randomUUID(), "Employee", DATE, DATE);
+        Manager root = new Manager(UUID.randomUUID(), "Manager 0", DATE, DATE, new ArrayList<>());
+        Manager current = root;
+        for (int i = 1; i < 100_000; i++) {
+            Manager next = new Manager(UUID.randomUUID(), "Manager " + i, DATE, DATE, new ArrayList<>());
+            current.getSubordinates().add(next);
+            current = next;
+        }
+        current.getSubordinates().add(employee);
+
+        employeeWriter.writeBinary(TEMP_FILE_PATH, List.of(root, employee));
+        List<Employee> list = new EmployeeReader().readBinary(TEMP_FILE_PATH);
+
+        Employee read = list.get(0);
+        int depth = 0;
+        while (read instanceof Manager manager) {
+            read = manager.getSubordinates().get(0);
+            depth++;
+        }
+        assertEquals(100_000, depth);
+        assertSame(list.get(1), read);
+    }
+}
@@ -0,0 +1,38 @@
+package com.skodin.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringPoolTest {
+
+    @Test
+    void intern_equalStrings_returnsFirstInstance() {
+        StringPool pool = new StringPool(16);
+        String first = new String("Skodin Nikita Dm");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(new String("Skodin Nikita Dm")));
+        assertNull(pool.intern(null));
+        assertEquals(2, pool.getLookups());
+        assertEquals(0.5, pool.getHitRate());
+    }
+
+    @Test
+    void intern_collidingStrings_keepsOnlyTheLastOne() {
+        StringPool pool = new StringPool(1);
+        String first = new String("first");
+        String second = new String("second");
+
+        pool.intern(first);
+        pool.intern(second);
+
+        assertNotSame(first, pool.intern(new String("first")));
+        assertEquals(0, pool.getHits());
+    }
+
+    @Test
+    void constructor_nonPositiveCapacity_throwsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new StringPool(0));
+    }
+}